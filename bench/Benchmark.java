@@ -0,0 +1,89 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A benchmark times one operation on a hot path of the engine, such as
+ * building the quadtree or a full collision pass. The benchmark runner calls
+ * setUp() once, then run() over and over for a set time to warm up, then over
+ * and over again while timing it, then tearDown().
+ *
+ * Each benchmark is created with its parameters (e.g. the number of entities),
+ * which are reported alongside its results so different sizes of the same
+ * benchmark can be compared.
+ *
+ * @author Andrew
+ *
+ */
+public abstract class Benchmark {
+
+	// The name of this benchmark, in the form Class.operation
+	private String name;
+	// The parameters this benchmark was created with, in the order they were
+	// added
+	private Map<String, String> params = new LinkedHashMap<String, String>();
+
+	/**
+	 * Creates a benchmark with the given name.
+	 *
+	 * @param name
+	 *            The name of the benchmark, in the form Class.operation
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Adds a parameter to the results of this benchmark.
+	 *
+	 * @param key
+	 *            The name of the parameter
+	 * @param value
+	 *            The value of the parameter
+	 */
+	protected void addParam(String key, Object value) {
+		params.put(key, String.valueOf(value));
+	}
+
+	/**
+	 * @return the name of this benchmark
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the parameters of this benchmark
+	 */
+	public Map<String, String> getParams() {
+		return params;
+	}
+
+	/**
+	 * Builds everything the operation needs. Not timed.
+	 *
+	 * @throws Exception
+	 *             if the benchmark can't be set up
+	 */
+	public void setUp() throws Exception {
+	}
+
+	/**
+	 * Runs the operation being timed once. Returns something worked out by the
+	 * operation, which the runner keeps hold of so the JIT compiler can't
+	 * throw the work away.
+	 *
+	 * @return a value depending on the work done
+	 */
+	public abstract long run();
+
+	/**
+	 * Lets go of everything built by setUp(). Not timed.
+	 */
+	public void tearDown() {
+	}
+
+	@Override
+	public String toString() {
+		return name + (params.isEmpty() ? "" : " " + params);
+	}
+}
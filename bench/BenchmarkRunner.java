@@ -0,0 +1,338 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks for the hot paths of the engine and writes the results
+ * out as JSON, so the results from before and after a change to the broad
+ * phase or the rendering can be diffed.
+ *
+ * Each benchmark is warmed up for a few iterations so the JIT compiler has
+ * done its work, then timed for a few more. Each iteration runs the operation
+ * over and over for a set time and records the average time per operation.
+ * The JSON is laid out the same way as JMH's, with the average and the 99.9%
+ * confidence interval in nanoseconds per operation, so the same tools can
+ * read it.
+ *
+ * The run is set with system properties:
+ * -Dbench.filter=regex only runs benchmarks whose names or parameters match
+ * the regex,
+ * -Dbench.warmupIterations and -Dbench.iterations set the number of
+ * iterations, -Dbench.iterationMillis sets how long each one lasts, and
+ * -Dbench.output sets the file the JSON is written to.
+ *
+ * e.g. java -cp bin -Dbench.filter=Quadtree BenchmarkRunner
+ *
+ * @author Andrew
+ *
+ */
+public class BenchmarkRunner {
+
+	// The prefix shared by every system property read by the runner
+	private static final String PROPERTY_PREFIX = "bench.";
+	// The 99.95th percentile of Student's t distribution for 1 to 30 degrees
+	// of freedom, which gives the 99.9% confidence interval around the
+	// average of the iterations
+	private static final double[] T_999 = { 636.619, 31.599, 12.924, 8.610,
+			6.869, 5.959, 5.408, 5.041, 4.781, 4.587, 4.437, 4.318, 4.221,
+			4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792,
+			3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+	// The same percentile of the normal distribution, used past 30 degrees
+	// of freedom
+	private static final double Z_999 = 3.291;
+
+	// Stops the JIT compiler throwing away the results of the operations
+	private static volatile long sink;
+
+	/**
+	 * Runs every benchmark matching the filter and writes out the results.
+	 *
+	 * @param args
+	 * @throws IOException
+	 *             if the results can't be written
+	 */
+	public static void main(String[] args) throws IOException {
+		Pattern filter = Pattern.compile(System.getProperty(PROPERTY_PREFIX
+				+ "filter", ".*"));
+		int warmupIterations = readInt("warmupIterations", 3);
+		int iterations = readInt("iterations", 5);
+		long iterationMillis = readInt("iterationMillis", 500);
+		String output = System.getProperty(PROPERTY_PREFIX + "output",
+				"bench-results.json");
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		for (Benchmark benchmark : createBenchmarks()) {
+			if (filter.matcher(benchmark.toString()).find()) {
+				benchmarks.add(benchmark);
+			}
+		}
+		System.out.println("Running " + benchmarks.size() + " benchmarks, "
+				+ warmupIterations + " warmup and " + iterations
+				+ " iterations of " + iterationMillis + " ms each");
+
+		PrintWriter json = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(output), "UTF-8"));
+		try {
+			json.println("[");
+			int written = 0;
+			for (int i = 0; i < benchmarks.size(); i++) {
+				Benchmark benchmark = benchmarks.get(i);
+				double[] scores;
+				try {
+					scores = measure(benchmark, warmupIterations, iterations,
+							iterationMillis * 1000000L);
+				} catch (Exception e) {
+					System.err.println("Failed to run " + benchmark + ": "
+							+ e);
+					continue;
+				}
+				double score = mean(scores);
+				double error = error(scores);
+				System.out.println(String.format(Locale.ROOT,
+						"%-70s %16.1f +- %12.1f ns/op", benchmark, score,
+						error));
+				if (written++ > 0) {
+					json.println(",");
+				}
+				writeResult(json, benchmark, warmupIterations, iterations,
+						iterationMillis, scores, score, error);
+			}
+			json.println();
+			json.println("]");
+		} finally {
+			json.close();
+		}
+		System.out.println("Results written to " + output);
+		System.exit(0);
+	}
+
+	/**
+	 * Creates every benchmark, with each set of parameters it is run with.
+	 *
+	 * @return the benchmarks
+	 */
+	public static List<Benchmark> createBenchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		String[] distributions = { BenchmarkScene.UNIFORM,
+				BenchmarkScene.CLUSTERED };
+		int[] quadtreeSizes = { 100, 1000, 10000, 100000 };
+		for (int size : quadtreeSizes) {
+			for (String distribution : distributions) {
+				benchmarks
+						.add(new QuadtreeBenchmark(false, size, distribution));
+				benchmarks
+						.add(new QuadtreeBenchmark(true, size, distribution));
+			}
+		}
+		String[] broadPhases = { "quadtree", "loose", "tree", "linear",
+				"grid" };
+		int[] collisionSizes = { 100, 1000, 10000 };
+		boolean[] collisionLayers = { true, false };
+		for (String broadPhase : broadPhases) {
+			for (boolean layers : collisionLayers) {
+				for (int size : collisionSizes) {
+					for (String distribution : distributions) {
+						benchmarks.add(new CheckCollisionsBenchmark(
+								broadPhase, layers, size, distribution));
+					}
+				}
+			}
+		}
+		int[] sizes = { 100, 1000, 10000 };
+		for (int size : sizes) {
+			benchmarks.add(new Vector2DBenchmark(size));
+		}
+		for (int size : sizes) {
+			benchmarks.add(new HardPointBenchmark(size));
+		}
+		int[] drawSizes = { 10, 100, 1000 };
+		int[] rotationSteps = { 0, 64 };
+		for (int steps : rotationSteps) {
+			for (int size : drawSizes) {
+				benchmarks.add(new SpriteDrawBenchmark(size, steps));
+			}
+		}
+		for (int size : drawSizes) {
+			benchmarks.add(new StatBarBenchmark(size));
+		}
+		return benchmarks;
+	}
+
+	/**
+	 * Warms up and times a benchmark.
+	 *
+	 * @return the average time per operation in nanoseconds of each timed
+	 *         iteration
+	 */
+	private static double[] measure(Benchmark benchmark, int warmupIterations,
+			int iterations, long iterationNanos) throws Exception {
+		benchmark.setUp();
+		try {
+			for (int i = 0; i < warmupIterations; i++) {
+				iterate(benchmark, iterationNanos);
+			}
+			// Starts the timed iterations with as little garbage about as
+			// possible
+			System.gc();
+			double[] scores = new double[iterations];
+			for (int i = 0; i < iterations; i++) {
+				scores[i] = iterate(benchmark, iterationNanos);
+			}
+			return scores;
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/**
+	 * Runs the operation of a benchmark over and over until the iteration
+	 * time is up, always at least once.
+	 *
+	 * @return the average time per operation in nanoseconds
+	 */
+	private static double iterate(Benchmark benchmark, long iterationNanos) {
+		long operations = 0;
+		long result = 0;
+		long startTime = System.nanoTime();
+		long elapsed;
+		do {
+			result += benchmark.run();
+			operations++;
+			elapsed = System.nanoTime() - startTime;
+		} while (elapsed < iterationNanos);
+		sink = result;
+		return (double) elapsed / operations;
+	}
+
+	/**
+	 * Returns the average of the scores.
+	 */
+	private static double mean(double[] scores) {
+		double sum = 0;
+		for (double score : scores) {
+			sum += score;
+		}
+		return sum / scores.length;
+	}
+
+	/**
+	 * Returns half the width of the 99.9% confidence interval around the
+	 * average of the scores, or NaN if there are too few scores to tell.
+	 */
+	private static double error(double[] scores) {
+		int n = scores.length;
+		if (n < 2) {
+			return Double.NaN;
+		}
+		double mean = mean(scores);
+		double squares = 0;
+		for (double score : scores) {
+			squares += (score - mean) * (score - mean);
+		}
+		double deviation = Math.sqrt(squares / (n - 1));
+		double t = n - 1 <= T_999.length ? T_999[n - 2] : Z_999;
+		return t * deviation / Math.sqrt(n);
+	}
+
+	/**
+	 * Writes the result of one benchmark as a JSON object.
+	 */
+	private static void writeResult(PrintWriter json, Benchmark benchmark,
+			int warmupIterations, int iterations, long iterationMillis,
+			double[] scores, double score, double error) {
+		json.println("    {");
+		json.println("        \"benchmark\" : " + quote(benchmark.getName())
+				+ ",");
+		json.println("        \"mode\" : \"avgt\",");
+		json.println("        \"threads\" : 1,");
+		json.println("        \"forks\" : 0,");
+		json.println("        \"jdkVersion\" : "
+				+ quote(System.getProperty("java.version")) + ",");
+		json.println("        \"vmName\" : "
+				+ quote(System.getProperty("java.vm.name")) + ",");
+		json.println("        \"warmupIterations\" : " + warmupIterations
+				+ ",");
+		json.println("        \"warmupTime\" : \"" + iterationMillis
+				+ " ms\",");
+		json.println("        \"measurementIterations\" : " + iterations
+				+ ",");
+		json.println("        \"measurementTime\" : \"" + iterationMillis
+				+ " ms\",");
+		json.println("        \"params\" : {");
+		int count = 0;
+		for (Map.Entry<String, String> param : benchmark.getParams()
+				.entrySet()) {
+			json.print("            " + quote(param.getKey()) + " : "
+					+ quote(param.getValue()));
+			json.println(++count < benchmark.getParams().size() ? "," : "");
+		}
+		json.println("        },");
+		json.println("        \"primaryMetric\" : {");
+		json.println("            \"score\" : " + number(score) + ",");
+		json.println("            \"scoreError\" : " + number(error) + ",");
+		json.println("            \"scoreConfidence\" : [ "
+				+ number(score - error) + ", " + number(score + error)
+				+ " ],");
+		json.println("            \"scoreUnit\" : \"ns/op\",");
+		json.print("            \"rawData\" : [ [ ");
+		for (int i = 0; i < scores.length; i++) {
+			json.print((i > 0 ? ", " : "") + number(scores[i]));
+		}
+		json.println(" ] ]");
+		json.println("        }");
+		json.print("    }");
+	}
+
+	/**
+	 * Returns a number as JSON. JSON has no NaN, so it is written as a string
+	 * the way JMH does.
+	 */
+	private static String number(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "\"NaN\"";
+		}
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+
+	/**
+	 * Returns a string as a quoted JSON string.
+	 */
+	private static String quote(String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * Reads an integer from the system properties, falling back to the
+	 * default if the property is missing or is not a number.
+	 */
+	private static int readInt(String name, int defaultValue) {
+		String value = System.getProperty(PROPERTY_PREFIX + name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Ignoring bad value for " + PROPERTY_PREFIX
+					+ name + ": " + value);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.Random;
+
+/**
+ * Builds the entities the benchmarks work on. A scene looks like a battle in
+ * progress: one ship in ten, and the rest projectiles from both sides flying
+ * towards random points on the screen.
+ *
+ * Entities are placed in one of two ways. "uniform" spreads them evenly over
+ * the screen. "clustered" gathers them into a few tight fleets, which is
+ * closer to how a real battle looks and is much harder on the broad phases.
+ *
+ * Every scene comes from a fixed seed, so every run of a benchmark works on
+ * exactly the same entities.
+ *
+ * @author Andrew
+ *
+ */
+public class BenchmarkScene {
+
+	// The size of the screen the scenes are laid out on, the same as the game
+	// window
+	public static final int DISPLAY_WIDTH = 1600;
+	public static final int DISPLAY_HEIGHT = 1024;
+	// The names of the ways entities can be placed
+	public static final String UNIFORM = "uniform";
+	public static final String CLUSTERED = "clustered";
+	// The number of fleets in a clustered scene, and how far in pixels their
+	// entities spread from the centre of the fleet
+	private static final int FLEETS = 8;
+	private static final double FLEET_SPREAD = 60;
+	// One entity in this many is a ship
+	private static final int SHIP_RATIO = 10;
+	// The speed projectiles are fired at, the same as the turrets
+	private static final double PROJECTILE_SPEED = 25;
+
+	/**
+	 * Gets the engine ready to create entities without a display. Sprites only
+	 * have their sizes read, and the screen is the size of the game window.
+	 */
+	public static void prepare() {
+		SpriteStore.get().setHeadless(true);
+		GameEngine.displayWidth = DISPLAY_WIDTH;
+		GameEngine.displayHeight = DISPLAY_HEIGHT;
+	}
+
+	/**
+	 * Fills an entity store with a scene.
+	 *
+	 * @param entities
+	 *            The store to add the entities to
+	 * @param count
+	 *            The number of entities to create
+	 * @param distribution
+	 *            How to place the entities, either UNIFORM or CLUSTERED
+	 * @param seed
+	 *            The seed the scene is built from
+	 */
+	public static void populate(EntityStore entities, int count,
+			String distribution, long seed) {
+		prepare();
+		Random random = new Random(seed);
+		double[] fleetX = new double[FLEETS];
+		double[] fleetY = new double[FLEETS];
+		for (int i = 0; i < FLEETS; i++) {
+			fleetX[i] = random.nextDouble() * DISPLAY_WIDTH;
+			fleetY[i] = random.nextDouble() * DISPLAY_HEIGHT;
+		}
+		boolean clustered = CLUSTERED.equals(distribution);
+		for (int i = 0; i < count; i++) {
+			double x;
+			double y;
+			if (clustered) {
+				int fleet = random.nextInt(FLEETS);
+				x = fleetX[fleet] + random.nextGaussian() * FLEET_SPREAD;
+				y = fleetY[fleet] + random.nextGaussian() * FLEET_SPREAD;
+			} else {
+				x = random.nextDouble() * DISPLAY_WIDTH;
+				y = random.nextDouble() * DISPLAY_HEIGHT;
+			}
+			// Keeps everything on the screen
+			x = Math.max(0, Math.min(DISPLAY_WIDTH - 1, x));
+			y = Math.max(0, Math.min(DISPLAY_HEIGHT - 1, y));
+			Entity ent;
+			if (i % SHIP_RATIO == 0) {
+				ent = new Destroyer();
+				ent.resetPosition(x, y);
+			} else {
+				int faction = i % 2 == 0 ? CollisionLayers.PLAYER_FACTION
+						: CollisionLayers.HOSTILE_FACTION;
+				ent = new Projectile(x, y, random.nextDouble()
+						* DISPLAY_WIDTH, random.nextDouble() * DISPLAY_HEIGHT,
+						PROJECTILE_SPEED, faction);
+			}
+			entities.add(ent);
+		}
+	}
+
+	/**
+	 * Makes every ship in an entity store too tough to ever be destroyed, so a
+	 * benchmark can collide the same scene over and over.
+	 *
+	 * @param entities
+	 *            The entity store
+	 */
+	public static void makeIndestructible(EntityStore entities) {
+		for (int i = 0; i < entities.size(); i++) {
+			Entity ent = entities.get(i);
+			if (ent instanceof Ship) {
+				((Ship) ent).setHullIntegrity(Integer.MAX_VALUE);
+			}
+		}
+	}
+
+	/**
+	 * Enables every entity in an entity store again, bringing back any
+	 * projectiles disabled by hitting something.
+	 *
+	 * @param entities
+	 *            The entity store
+	 */
+	public static void enableAll(EntityStore entities) {
+		for (int i = 0; i < entities.size(); i++) {
+			entities.get(i).enable();
+		}
+	}
+}
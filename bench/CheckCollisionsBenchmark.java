@@ -0,0 +1,76 @@
+/**
+ * Times a full collision pass of the game engine,
+ * GameEngine.checkCollisions(): updating the broad phase, finding the
+ * candidate pairs, and running the narrow phase over them. The engine is
+ * created without its game loop, and ships can't be destroyed, so the same
+ * scene is collided every time. Any projectiles disabled by a hit are brought
+ * back before each pass.
+ *
+ * @author Andrew
+ *
+ */
+public class CheckCollisionsBenchmark extends Benchmark {
+
+	// The seed every collision scene is built from
+	private static final long SEED = 7;
+
+	// The settings the engine is created with
+	private GameSettings settings;
+	// The number of entities in the scene and how they are placed
+	private int size;
+	private String distribution;
+	// The engine being timed
+	private GameEngine engine;
+
+	/**
+	 * Creates a collision benchmark.
+	 *
+	 * @param broadPhase
+	 *            The broad phase to use, as named in GameSettings
+	 * @param collisionLayers
+	 *            Whether the broad phase is split up by faction
+	 * @param size
+	 *            The number of entities in the scene
+	 * @param distribution
+	 *            How the entities are placed, see BenchmarkScene
+	 */
+	public CheckCollisionsBenchmark(String broadPhase, boolean collisionLayers,
+			int size, String distribution) {
+		super("GameEngine.checkCollisions");
+		this.size = size;
+		this.distribution = distribution;
+		settings = GameSettings.fromSystemProperties();
+		settings.headless = true;
+		settings.broadPhase = broadPhase;
+		settings.collisionLayers = collisionLayers;
+		settings.randomSeed = (int) SEED;
+		addParam("broadPhase", broadPhase);
+		addParam("collisionLayers", collisionLayers);
+		addParam("size", size);
+		addParam("distribution", distribution);
+	}
+
+	@Override
+	public void setUp() {
+		BenchmarkScene.prepare();
+		engine = new GameEngine(BenchmarkScene.DISPLAY_WIDTH,
+				BenchmarkScene.DISPLAY_HEIGHT, settings, false);
+		// The player ship made by the engine counts as one of the entities
+		BenchmarkScene.populate(GameEngine.entityCache, size - 1,
+				distribution, SEED);
+		BenchmarkScene.makeIndestructible(GameEngine.entityCache);
+	}
+
+	@Override
+	public long run() {
+		BenchmarkScene.enableAll(GameEngine.entityCache);
+		engine.checkCollisions();
+		return (long) GameEngine.collisionsChecked;
+	}
+
+	@Override
+	public void tearDown() {
+		engine.shutdown();
+		engine = null;
+	}
+}
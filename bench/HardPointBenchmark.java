@@ -0,0 +1,67 @@
+import java.util.Arrays;
+
+/**
+ * Times HardPoint.update(), which moves each hardpoint with its ship and
+ * updates the component installed on it. Each operation updates every
+ * hardpoint of a fleet of destroyers, whose turrets are all aimed at a player
+ * ship so they go through the whole of tryToShoot(). Shots are only ever
+ * marked as pending, as nothing commits them.
+ *
+ * @author Andrew
+ *
+ */
+public class HardPointBenchmark extends Benchmark {
+
+	// The number of ships whose hardpoints are updated per operation
+	private int size;
+	// The hardpoints of every ship
+	private HardPoint[] hardpoints;
+
+	/**
+	 * Creates a hardpoint benchmark.
+	 *
+	 * @param size
+	 *            The number of ships whose hardpoints are updated
+	 */
+	public HardPointBenchmark(int size) {
+		super("HardPoint.update");
+		this.size = size;
+		addParam("size", size);
+	}
+
+	@Override
+	public void setUp() {
+		BenchmarkScene.prepare();
+		// Gives the turrets something to aim at
+		GameEngine.player = new PlayerShip();
+		int count = 0;
+		hardpoints = new HardPoint[size];
+		for (int i = 0; i < size; i++) {
+			Destroyer ship = new Destroyer();
+			for (int j = 0; j < ship.hardpoints.size(); j++) {
+				if (count == hardpoints.length) {
+					hardpoints = Arrays.copyOf(hardpoints, count * 2);
+				}
+				hardpoints[count++] = ship.hardpoints.get(j);
+			}
+		}
+		hardpoints = Arrays.copyOf(hardpoints, count);
+	}
+
+	@Override
+	public long run() {
+		long sum = 0;
+		for (int i = 0; i < hardpoints.length; i++) {
+			HardPoint point = hardpoints[i];
+			point.update();
+			sum += (long) point.getX();
+		}
+		return sum;
+	}
+
+	@Override
+	public void tearDown() {
+		hardpoints = null;
+		GameEngine.player = null;
+	}
+}
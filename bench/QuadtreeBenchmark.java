@@ -0,0 +1,88 @@
+import java.awt.Rectangle;
+
+/**
+ * Times the quadtree on its own. "insert" clears the quadtree and inserts
+ * every entity in the scene, which is what the quadtree broad phase does at
+ * the start of every cycle. "retrieve" pulls the neighbours of every entity
+ * back out of a quadtree that was built once in setUp().
+ *
+ * @author Andrew
+ *
+ */
+public class QuadtreeBenchmark extends Benchmark {
+
+	// The seed every quadtree scene is built from
+	private static final long SEED = 42;
+
+	// Whether this benchmark times retrieving rather than inserting
+	private boolean retrieve;
+	// The number of entities in the scene and how they are placed
+	private int size;
+	private String distribution;
+	// The quadtree, and the entities put into it
+	private Quadtree quad;
+	private EntityStore entities;
+
+	/**
+	 * Creates a quadtree benchmark.
+	 *
+	 * @param retrieve
+	 *            Whether to time retrieve() rather than insert()
+	 * @param size
+	 *            The number of entities in the scene
+	 * @param distribution
+	 *            How the entities are placed, see BenchmarkScene
+	 */
+	public QuadtreeBenchmark(boolean retrieve, int size, String distribution) {
+		super(retrieve ? "Quadtree.retrieve" : "Quadtree.insert");
+		this.retrieve = retrieve;
+		this.size = size;
+		this.distribution = distribution;
+		addParam("size", size);
+		addParam("distribution", distribution);
+	}
+
+	@Override
+	public void setUp() {
+		entities = new EntityStore();
+		BenchmarkScene.populate(entities, size, distribution, SEED);
+		// Covers the same area as the quadtree the engine uses
+		quad = new Quadtree(0, new Rectangle(-BenchmarkScene.DISPLAY_WIDTH,
+				-BenchmarkScene.DISPLAY_HEIGHT,
+				BenchmarkScene.DISPLAY_WIDTH * 3,
+				BenchmarkScene.DISPLAY_HEIGHT * 3));
+		if (retrieve) {
+			insertAll();
+		}
+	}
+
+	@Override
+	public long run() {
+		if (!retrieve) {
+			quad.clear();
+			insertAll();
+			return entities.size();
+		}
+		long found = 0;
+		for (int i = 0; i < entities.size(); i++) {
+			found += quad.retrieve(entities.get(i)).size();
+		}
+		return found;
+	}
+
+	@Override
+	public void tearDown() {
+		quad.clear();
+		quad = null;
+		entities = null;
+	}
+
+	/**
+	 * Inserts every entity in the scene into the quadtree.
+	 */
+	private void insertAll() {
+		for (int i = 0; i < entities.size(); i++) {
+			quad.insert(entities.get(i));
+		}
+	}
+}
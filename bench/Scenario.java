@@ -0,0 +1,200 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * A scenario is a whole game set up the same way every time, for the scenario
+ * benchmarks to play out. It is loaded from a properties file:
+ *
+ * destroyers - the number of destroyers fighting the player
+ * playerTurrets - the number of turrets on the player ship
+ * seed - the seed every random number in the game comes from
+ * warmupTicks - the number of cycles run before any are timed
+ * ticks - the number of cycles timed
+ *
+ * Any game setting can be set as well, in the same form as the system
+ * properties (e.g. conquest.broadPhase=grid, or conquest.offscreenRender=true
+ * to draw every cycle into an offscreen image as well). Scenarios should set
+ * conquest.workerThreads, as the engine otherwise starts a worker for every
+ * processor and the results would depend on the machine. The player holds down
+ * the fire button throughout, sweeping its aim around in a circle, and turns
+ * in a slow circle so it stays in the middle of the battle. It is repaired at
+ * the start of every cycle, so the battle never ends early.
+ *
+ * @author Andrew
+ *
+ */
+public class Scenario {
+
+	// How far from the player in pixels it aims, and how far its aim turns
+	// each cycle in radians
+	private static final double AIM_DISTANCE = 400;
+	private static final double AIM_TURN = 0.05;
+
+	/**
+	 * Loads a scenario from a properties file. The name of the scenario is the
+	 * name of the file, without the extension.
+	 *
+	 * @param file
+	 *            The scenario file
+	 * @return the scenario
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static Scenario load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		String name = file.getName();
+		if (name.endsWith(".properties")) {
+			name = name.substring(0, name.length() - ".properties".length());
+		}
+		return new Scenario(name, properties);
+	}
+
+	// The name of this scenario
+	private String name;
+	// The properties the scenario was loaded from, which also hold any game
+	// settings
+	private Properties properties;
+	// The number of destroyers fighting the player
+	private int destroyers;
+	// The number of turrets on the player ship
+	private int playerTurrets;
+	// The seed every random number in the game comes from
+	private int seed;
+	// The number of cycles run before timing starts, and the number timed
+	private int warmupTicks;
+	private int ticks;
+	// The game being played out, and the player's ship in it
+	private GameEngine engine;
+	private PlayerShip player;
+	// The hull the player is repaired to every cycle
+	private int playerHull;
+
+	/**
+	 * Creates a scenario from its properties.
+	 *
+	 * @param name
+	 *            The name of the scenario
+	 * @param properties
+	 *            The properties describing the scenario
+	 */
+	public Scenario(String name, Properties properties) {
+		this.name = name;
+		this.properties = properties;
+		destroyers = readInt("destroyers", 7);
+		playerTurrets = readInt("playerTurrets", 2);
+		seed = readInt("seed", 1);
+		warmupTicks = readInt("warmupTicks", 300);
+		ticks = readInt("ticks", 3000);
+	}
+
+	/**
+	 * @return the name of this scenario
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of cycles run before timing starts
+	 */
+	public int getWarmupTicks() {
+		return warmupTicks;
+	}
+
+	/**
+	 * @return the number of cycles timed
+	 */
+	public int getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Builds the game for this scenario, without starting its game loop. The
+	 * destroyers join the game on the first cycle.
+	 *
+	 * @return the engine running the game
+	 */
+	public GameEngine boot() {
+		GameSettings settings = GameSettings.fromProperties(properties);
+		settings.headless = true;
+		settings.randomSeed = seed;
+		// Every scenario starts from the same ids, whatever ran before it in
+		// this process
+		Entity.resetIds();
+		engine = new GameEngine(BenchmarkScene.DISPLAY_WIDTH,
+				BenchmarkScene.DISPLAY_HEIGHT, settings, false);
+		player = GameEngine.player;
+		playerHull = player.getHullIntegrity();
+		// Swaps the player's usual turrets for the scenario's
+		player.hardpoints.clear();
+		for (int i = 0; i < playerTurrets; i++) {
+			ShipTurret turret = new ShipTurret(player);
+			turret.setFireRate(player.fireRate);
+			turret.setProjectileSpeed(player.projectileSpeed);
+			turret.setPlayer(true);
+			player.hardpoints.add(new HardPoint(player, (i + 1.0)
+					/ (playerTurrets + 1), .5, turret));
+		}
+		for (int i = 0; i < destroyers; i++) {
+			engine.addEntity(new Destroyer());
+		}
+		// Turns the player left for the whole game, and holds the fire button
+		engine.A_pressed = true;
+		GameEngine.mouseDown = true;
+		return engine;
+	}
+
+	/**
+	 * Runs one cycle of the game, after moving the player's aim and repairing
+	 * it.
+	 *
+	 * @param tick
+	 *            The number of the cycle, counting from 0
+	 */
+	public void tick(int tick) {
+		player.setHullIntegrity(playerHull);
+		double aim = tick * AIM_TURN;
+		GameEngine.mouseX = player.getX() + player.getWidth() / 2
+				+ Math.cos(aim) * AIM_DISTANCE;
+		GameEngine.mouseY = player.getY() + player.getHeight() / 2
+				+ Math.sin(aim) * AIM_DISTANCE;
+		engine.headlessCycle();
+	}
+
+	/**
+	 * Lets go of the game once the scenario is done.
+	 */
+	public void shutdown() {
+		engine.shutdown();
+		engine = null;
+		player = null;
+		GameEngine.mouseDown = false;
+	}
+
+	/**
+	 * Reads an integer from the scenario, falling back to the default if it
+	 * is missing or is not a number.
+	 */
+	private int readInt(String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Ignoring bad value for " + key + " in "
+					+ name + ": " + value);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,490 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Plays out whole games from scenario files and checks they haven't got
+ * slower. Each scenario is booted, warmed up, then run for a fixed number of
+ * cycles, timing every one. The results are:
+ *
+ * p50Millis, p99Millis, p999Millis - the 50th, 99th and 99.9th percentile
+ * cycle times
+ * allocatedBytesPerTick - the bytes allocated per cycle by every thread
+ * collisionsPerTick - the collision checks made per cycle
+ *
+ * Every scenario is played through untimed a couple of times to warm up, then
+ * played again for real. Each one is run in a JVM of its own, so the order
+ * the scenarios are run in makes no difference to their results. A single
+ * run is too noisy to check, the tail percentiles especially, so each
+ * scenario is run several times and every result is the median of the runs.
+ *
+ * Each result is compared with the scenario's baseline file, and the run
+ * fails if any of them is worse than the baseline by more than the threshold.
+ * The 99th and 99.9th percentiles are only a handful of cycles each, so they
+ * get a threshold of their own which is much wider. They are also never
+ * counted as worse unless they have gone up by more than a set number of
+ * milliseconds, as one cycle that takes a tenth of a millisecond can double
+ * from nothing more than the thread being scheduled late. The median is taken
+ * over every cycle, so it is held to the threshold however small it is.
+ *
+ * Baselines are written with -Dbench.updateBaselines=true, and should be
+ * written on the machine the checks are run on; the number of processors
+ * they were written with is kept in the baseline, and a warning is printed
+ * if it doesn't match.
+ *
+ * The run is set with system properties: -Dbench.scenarioDir and
+ * -Dbench.baselineDir set where the scenario and baseline files are,
+ * -Dbench.threshold sets how much worse a result can get (0.25 is 25%),
+ * -Dbench.tailThreshold sets the same for the 99th and 99.9th percentiles,
+ * -Dbench.noiseMillis sets how many milliseconds the 99th and 99.9th
+ * percentiles have to go up by before they can count as worse,
+ * -Dbench.runs sets how many times each scenario is run,
+ * -Dbench.warmupRounds sets how many times each scenario is played through to
+ * warm up, -Dbench.fork=false runs every scenario in this JVM, and
+ * -Dbench.output sets the file the results are written to as JSON. Scenarios
+ * are named on the command line, or every scenario is run.
+ *
+ * e.g. java -cp bin ScenarioRunner skirmish
+ *
+ * @author Andrew
+ *
+ */
+public class ScenarioRunner {
+
+	// The prefix shared by every system property read by the runner
+	private static final String PROPERTY_PREFIX = "bench.";
+	// The extension of scenario and baseline files
+	private static final String EXTENSION = ".properties";
+	// The first argument of a JVM started to run a single scenario
+	private static final String CHILD = "-child";
+	// The names of the results, in the order they are reported
+	private static final String[] METRICS = { "p50Millis", "p99Millis",
+			"p999Millis", "allocatedBytesPerTick", "collisionsPerTick" };
+	// The results checked against the tail threshold and the noise instead
+	private static final List<String> TAIL_METRICS = Arrays.asList(
+			"p99Millis", "p999Millis");
+	// The key of a baseline holding the processors it was written with
+	private static final String PROCESSORS = "processors";
+
+	/**
+	 * Runs the scenarios and compares them with their baselines. Exits with 1
+	 * if any scenario got worse.
+	 *
+	 * @param args
+	 *            The names of the scenarios to run, or none to run them all
+	 * @throws IOException
+	 *             if a scenario can't be read or the results can't be written
+	 */
+	public static void main(String[] args) throws IOException,
+			InterruptedException {
+		if (args.length == 3 && args[0].equals(CHILD)) {
+			// Runs a single scenario for the parent process
+			Scenario scenario = Scenario.load(new File(args[1]));
+			writeResults(new File(args[2]), scenario, run(scenario));
+			System.exit(0);
+		}
+		File scenarioDir = new File(System.getProperty(PROPERTY_PREFIX
+				+ "scenarioDir", "bench/scenarios"));
+		File baselineDir = new File(System.getProperty(PROPERTY_PREFIX
+				+ "baselineDir", "bench/baselines"));
+		double threshold = Double.parseDouble(System.getProperty(
+				PROPERTY_PREFIX + "threshold", "0.25"));
+		double tailThreshold = Double.parseDouble(System.getProperty(
+				PROPERTY_PREFIX + "tailThreshold", "1.0"));
+		double noiseMillis = Double.parseDouble(System.getProperty(
+				PROPERTY_PREFIX + "noiseMillis", "0.5"));
+		int runs = Math.max(1, Integer.parseInt(System.getProperty(
+				PROPERTY_PREFIX + "runs", "5")));
+		boolean updateBaselines = Boolean.parseBoolean(System.getProperty(
+				PROPERTY_PREFIX + "updateBaselines", "false"));
+		boolean fork = Boolean.parseBoolean(System.getProperty(
+				PROPERTY_PREFIX + "fork", "true"));
+		String output = System.getProperty(PROPERTY_PREFIX + "output",
+				"scenario-results.json");
+
+		List<File> files = new ArrayList<File>();
+		if (args.length > 0) {
+			for (String name : args) {
+				files.add(new File(scenarioDir, name + EXTENSION));
+			}
+		} else {
+			File[] all = scenarioDir.listFiles();
+			if (all == null) {
+				System.err.println("No scenarios in " + scenarioDir);
+				System.exit(1);
+			}
+			Arrays.sort(all);
+			for (File file : all) {
+				if (file.getName().endsWith(EXTENSION)) {
+					files.add(file);
+				}
+			}
+		}
+
+		boolean regressed = false;
+		PrintWriter json = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(output), "UTF-8"));
+		try {
+			json.println("[");
+			int written = 0;
+			for (int i = 0; i < files.size(); i++) {
+				Scenario scenario = Scenario.load(files.get(i));
+				System.out.println("Running " + scenario.getName() + " "
+						+ runs + " times, " + scenario.getWarmupTicks()
+						+ " warmup and " + scenario.getTicks()
+						+ " timed cycles");
+				List<Map<String, Double>> allRuns =
+						new ArrayList<Map<String, Double>>();
+				for (int run = 0; run < runs; run++) {
+					Map<String, Double> runResults = fork ? runForked(files
+							.get(i)) : run(scenario);
+					if (runResults == null) {
+						allRuns = null;
+						break;
+					}
+					allRuns.add(runResults);
+				}
+				if (allRuns == null) {
+					System.out.println("  failed to run");
+					regressed = true;
+					continue;
+				}
+				File baselineFile = new File(baselineDir, scenario.getName()
+						+ EXTENSION);
+				Properties baseline = null;
+				if (baselineFile.exists()) {
+					baseline = loadProperties(baselineFile);
+					checkProcessors(baseline);
+				}
+				Map<String, Double> results = median(allRuns);
+				List<String> worse = compare(results, baseline, threshold,
+						tailThreshold, noiseMillis);
+				regressed |= !worse.isEmpty() && !updateBaselines;
+				if (updateBaselines) {
+					writeResults(baselineFile, scenario, results);
+					System.out.println("  baseline written to "
+							+ baselineFile);
+				} else if (baseline == null) {
+					System.out.println("  no baseline at " + baselineFile);
+				}
+				if (written++ > 0) {
+					json.println(",");
+				}
+				writeResult(json, scenario, results, baseline, worse);
+			}
+			json.println();
+			json.println("]");
+		} finally {
+			json.close();
+		}
+		System.out.println("Results written to " + output);
+		if (regressed) {
+			System.out.println("FAILED: a scenario failed, or got worse than "
+					+ "its baseline by more than " + Math.round(threshold * 100)
+					+ "% (" + Math.round(tailThreshold * 100)
+					+ "% for the tail percentiles)");
+		}
+		System.exit(regressed ? 1 : 0);
+	}
+
+	/**
+	 * Plays out a scenario, timing each cycle.
+	 *
+	 * @return the results, by name
+	 */
+	private static Map<String, Double> run(Scenario scenario) {
+		// Plays the whole scenario through a few times first, so the JIT
+		// compiler has seen every stage of the battle before any of it is
+		// timed
+		int warmupRounds = Integer.parseInt(System.getProperty(
+				PROPERTY_PREFIX + "warmupRounds", "2"));
+		int allTicks = scenario.getWarmupTicks() + scenario.getTicks();
+		for (int round = 0; round < warmupRounds; round++) {
+			scenario.boot();
+			for (int i = 0; i < allTicks; i++) {
+				scenario.tick(i);
+			}
+			scenario.shutdown();
+		}
+		scenario.boot();
+		for (int i = 0; i < scenario.getWarmupTicks(); i++) {
+			scenario.tick(i);
+		}
+		System.gc();
+		int ticks = scenario.getTicks();
+		long[] tickNanos = new long[ticks];
+		double collisionsBefore = GameEngine.collisionsChecked;
+		long allocatedBefore = allocatedBytes();
+		for (int i = 0; i < ticks; i++) {
+			long startTime = System.nanoTime();
+			scenario.tick(scenario.getWarmupTicks() + i);
+			tickNanos[i] = System.nanoTime() - startTime;
+		}
+		long allocatedAfter = allocatedBytes();
+		double collisions = GameEngine.collisionsChecked - collisionsBefore;
+		scenario.shutdown();
+
+		Arrays.sort(tickNanos);
+		Map<String, Double> results = new LinkedHashMap<String, Double>();
+		results.put("p50Millis", percentile(tickNanos, 0.5) / 1e6);
+		results.put("p99Millis", percentile(tickNanos, 0.99) / 1e6);
+		results.put("p999Millis", percentile(tickNanos, 0.999) / 1e6);
+		if (allocatedBefore < 0 || allocatedAfter < 0) {
+			results.put("allocatedBytesPerTick", Double.NaN);
+		} else {
+			results.put("allocatedBytesPerTick",
+					(double) (allocatedAfter - allocatedBefore) / ticks);
+		}
+		results.put("collisionsPerTick", collisions / ticks);
+		return results;
+	}
+
+	/**
+	 * Plays out a scenario in a new JVM, started with the same class path and
+	 * JVM arguments as this one, so no scenario is affected by what the JIT
+	 * compiler and the garbage collector made of the ones before it.
+	 *
+	 * @return the results, by name, or null if the scenario failed
+	 */
+	private static Map<String, Double> runForked(File scenarioFile)
+			throws IOException, InterruptedException {
+		File resultFile = File.createTempFile("scenario", EXTENSION);
+		try {
+			List<String> command = new ArrayList<String>();
+			command.add(new File(new File(System.getProperty("java.home"),
+					"bin"), "java").getPath());
+			command.addAll(ManagementFactory.getRuntimeMXBean()
+					.getInputArguments());
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(ScenarioRunner.class.getName());
+			command.add(CHILD);
+			command.add(scenarioFile.getPath());
+			command.add(resultFile.getPath());
+			Process process = new ProcessBuilder(command).inheritIO().start();
+			if (process.waitFor() != 0) {
+				return null;
+			}
+			Properties properties = loadProperties(resultFile);
+			Map<String, Double> results = new LinkedHashMap<String, Double>();
+			for (String metric : METRICS) {
+				results.put(metric, readBaseline(properties, metric));
+			}
+			return results;
+		} finally {
+			resultFile.delete();
+		}
+	}
+
+	/**
+	 * Returns the median of each result over every run of a scenario.
+	 *
+	 * @return the median results, by name
+	 */
+	private static Map<String, Double> median(List<Map<String, Double>> runs) {
+		Map<String, Double> results = new LinkedHashMap<String, Double>();
+		double[] values = new double[runs.size()];
+		for (String metric : METRICS) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = runs.get(i).get(metric);
+			}
+			Arrays.sort(values);
+			int middle = values.length / 2;
+			results.put(metric, values.length % 2 == 1 ? values[middle]
+					: (values[middle - 1] + values[middle]) / 2);
+		}
+		return results;
+	}
+
+	/**
+	 * Warns if a baseline was written on a machine with a different number of
+	 * processors to this one, as its timings can't be compared with these.
+	 */
+	private static void checkProcessors(Properties baseline) {
+		String written = baseline.getProperty(PROCESSORS);
+		int processors = Runtime.getRuntime().availableProcessors();
+		if (written != null && !written.trim().equals(
+				Integer.toString(processors))) {
+			System.out.println("  warning: baseline written with "
+					+ written.trim() + " processors, this machine has "
+					+ processors);
+		}
+	}
+
+	/**
+	 * Returns the given percentile of the sorted times.
+	 */
+	private static double percentile(long[] sorted, double fraction) {
+		int index = (int) Math.ceil(fraction * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+	}
+
+	/**
+	 * Returns the total bytes allocated so far by every live thread, or -1 if
+	 * the JVM can't tell. Counts the worker threads the engine splits its
+	 * phases across as well as this one.
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sunThreads =
+				(com.sun.management.ThreadMXBean) threads;
+		if (!sunThreads.isThreadAllocatedMemorySupported()
+				|| !sunThreads.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long total = 0;
+		for (long bytes : sunThreads.getThreadAllocatedBytes(threads
+				.getAllThreadIds())) {
+			// Threads which have died since their ids were taken read as -1
+			if (bytes > 0) {
+				total += bytes;
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Compares results with a baseline.
+	 *
+	 * @return the names of the results worse than the baseline by more than
+	 *         their threshold, and by more than the noise for the tail
+	 *         percentiles
+	 */
+	private static List<String> compare(Map<String, Double> results,
+			Properties baseline, double threshold, double tailThreshold,
+			double noiseMillis) {
+		List<String> worse = new ArrayList<String>();
+		for (String metric : METRICS) {
+			double value = results.get(metric);
+			double base = readBaseline(baseline, metric);
+			double limit = TAIL_METRICS.contains(metric) ? tailThreshold
+					: threshold;
+			String change = "";
+			if (!Double.isNaN(value) && !Double.isNaN(base)) {
+				if (value > base * (1 + limit)
+						&& (!TAIL_METRICS.contains(metric)
+								|| value - base > noiseMillis)) {
+					worse.add(metric);
+				}
+				change = String.format(Locale.ROOT,
+						"  baseline %14.3f %+7.1f%%%s", base,
+						base == 0 ? 0 : (value - base) / base * 100,
+						worse.contains(metric) ? "  REGRESSION" : "");
+			}
+			System.out.println(String.format(Locale.ROOT, "  %-22s %14.3f%s",
+					metric, value, change));
+		}
+		return worse;
+	}
+
+	/**
+	 * Reads one result from a baseline, or NaN if it isn't there.
+	 */
+	private static double readBaseline(Properties baseline, String metric) {
+		if (baseline == null || baseline.getProperty(metric) == null) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(baseline.getProperty(metric).trim());
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Loads a properties file.
+	 */
+	private static Properties loadProperties(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+	/**
+	 * Writes the results of a scenario out as a properties file, one result
+	 * per line in a fixed order so changes to a baseline are easy to diff.
+	 */
+	private static void writeResults(File file, Scenario scenario,
+			Map<String, Double> results) throws IOException {
+		if (file.getParentFile() != null) {
+			file.getParentFile().mkdirs();
+		}
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "ISO-8859-1"));
+		try {
+			out.println("# Results of the " + scenario.getName()
+					+ " scenario, written by ScenarioRunner");
+			out.println("# java " + System.getProperty("java.version"));
+			out.println(PROCESSORS + "="
+					+ Runtime.getRuntime().availableProcessors());
+			for (String metric : METRICS) {
+				out.println(metric + "=" + String.format(Locale.ROOT, "%.3f",
+						results.get(metric)));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes the results of a scenario as a JSON object.
+	 */
+	private static void writeResult(PrintWriter json, Scenario scenario,
+			Map<String, Double> results, Properties baseline,
+			List<String> worse) {
+		json.println("    {");
+		json.println("        \"scenario\" : \"" + scenario.getName() + "\",");
+		json.println("        \"ticks\" : " + scenario.getTicks() + ",");
+		json.println("        \"results\" : {");
+		for (int i = 0; i < METRICS.length; i++) {
+			json.println("            \"" + METRICS[i] + "\" : "
+					+ number(results.get(METRICS[i]))
+					+ (i < METRICS.length - 1 ? "," : ""));
+		}
+		json.println("        },");
+		json.println("        \"baseline\" : {");
+		for (int i = 0; i < METRICS.length; i++) {
+			json.println("            \"" + METRICS[i] + "\" : "
+					+ number(readBaseline(baseline, METRICS[i]))
+					+ (i < METRICS.length - 1 ? "," : ""));
+		}
+		json.println("        },");
+		json.print("        \"regressions\" : [");
+		for (int i = 0; i < worse.size(); i++) {
+			json.print((i > 0 ? ", " : " ") + "\"" + worse.get(i) + "\"");
+		}
+		json.println(worse.isEmpty() ? "]" : " ]");
+		json.print("    }");
+	}
+
+	/**
+	 * Returns a number as JSON, or null if there isn't one.
+	 */
+	private static String number(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			return "null";
+		}
+		return String.format(Locale.ROOT, "%.3f", value);
+	}
+}
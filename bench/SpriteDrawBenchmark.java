@@ -0,0 +1,91 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Times Sprite.draw() into an offscreen image the size of the game window.
+ * Each operation draws a destroyer sprite a number of times, at random
+ * positions and rotations picked in setUp(). The sprite is packed into a
+ * texture atlas first, as the sprite store packs every sprite.
+ *
+ * The sprite is drawn either from its pre-rotated copies, which are all made
+ * during the warmup, or with 0 rotation steps by rotating it as it is drawn.
+ *
+ * @author Andrew
+ *
+ */
+public class SpriteDrawBenchmark extends Benchmark {
+
+	// The seed the positions are picked from
+	private static final long SEED = 3;
+
+	// The number of sprites drawn per operation
+	private int size;
+	// The number of rotated copies of the sprite in a full turn
+	private int rotationSteps;
+	// The handle of the sprite being drawn
+	private SpriteHandle sprite;
+	// Where and at what angle each sprite is drawn
+	private double[] xs;
+	private double[] ys;
+	private double[] thetas;
+	// The image drawn to
+	private BufferedImage target;
+	private Graphics2D g2D;
+
+	/**
+	 * Creates a sprite drawing benchmark.
+	 *
+	 * @param size
+	 *            The number of sprites drawn per operation
+	 * @param rotationSteps
+	 *            The number of rotated copies of the sprite in a full turn,
+	 *            or 0 to rotate it as it is drawn
+	 */
+	public SpriteDrawBenchmark(int size, int rotationSteps) {
+		super("Sprite.draw");
+		this.size = size;
+		this.rotationSteps = rotationSteps;
+		addParam("size", size);
+		addParam("rotationSteps", rotationSteps);
+	}
+
+	@Override
+	public void setUp() throws Exception {
+		BenchmarkScene.prepare();
+		SpriteStore.get().setRotation(rotationSteps, 64L * 1024 * 1024);
+		BufferedImage source = ImageIO.read(getClass().getClassLoader()
+				.getResource("resources/Green_Ship_Small.png"));
+		sprite = new SpriteHandle(new Sprite(new TextureAtlas().add(source)));
+		Random random = new Random(SEED);
+		xs = new double[size];
+		ys = new double[size];
+		thetas = new double[size];
+		for (int i = 0; i < size; i++) {
+			xs[i] = random.nextDouble() * BenchmarkScene.DISPLAY_WIDTH;
+			ys[i] = random.nextDouble() * BenchmarkScene.DISPLAY_HEIGHT;
+			thetas[i] = random.nextDouble() * Math.PI * 2;
+		}
+		target = new BufferedImage(BenchmarkScene.DISPLAY_WIDTH,
+				BenchmarkScene.DISPLAY_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		g2D = target.createGraphics();
+	}
+
+	@Override
+	public long run() {
+		for (int i = 0; i < size; i++) {
+			sprite.draw(g2D, xs[i], ys[i], thetas[i]);
+		}
+		return target.getRGB(BenchmarkScene.DISPLAY_WIDTH / 2,
+				BenchmarkScene.DISPLAY_HEIGHT / 2);
+	}
+
+	@Override
+	public void tearDown() {
+		g2D.dispose();
+		g2D = null;
+		target = null;
+	}
+}
@@ -0,0 +1,71 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Times drawing stat bars into an offscreen image the size of the game
+ * window. Stat bars no longer draw themselves; StatBar.capture() copies a bar
+ * into a render snapshot, and the snapshot draws it from the stat bar atlas.
+ * Each operation does both for the health bars of a fleet of destroyers,
+ * which is everything it takes to get a bar on the screen, so it is reported
+ * under both methods.
+ *
+ * @author Andrew
+ *
+ */
+public class StatBarBenchmark extends Benchmark {
+
+	// The number of stat bars drawn per operation
+	private int size;
+	// The stat bars being drawn
+	private StatBar[] bars;
+	// The snapshot the bars are copied into
+	private RenderSnapshot snapshot = new RenderSnapshot();
+	// The image drawn to
+	private BufferedImage target;
+	private Graphics2D g2D;
+
+	/**
+	 * Creates a stat bar benchmark.
+	 *
+	 * @param size
+	 *            The number of stat bars drawn per operation
+	 */
+	public StatBarBenchmark(int size) {
+		super("StatBar.capture+RenderSnapshot.draw");
+		this.size = size;
+		addParam("size", size);
+	}
+
+	@Override
+	public void setUp() {
+		BenchmarkScene.prepare();
+		bars = new StatBar[size];
+		for (int i = 0; i < size; i++) {
+			bars[i] = new Destroyer().healthBar;
+			// Puts the bar under its ship, as the ship does every cycle
+			bars[i].update();
+		}
+		target = new BufferedImage(BenchmarkScene.DISPLAY_WIDTH,
+				BenchmarkScene.DISPLAY_HEIGHT, BufferedImage.TYPE_INT_RGB);
+		g2D = target.createGraphics();
+	}
+
+	@Override
+	public long run() {
+		snapshot.clear();
+		for (int i = 0; i < size; i++) {
+			bars[i].capture(snapshot);
+		}
+		snapshot.draw(g2D, 1);
+		return target.getRGB(BenchmarkScene.DISPLAY_WIDTH / 2,
+				BenchmarkScene.DISPLAY_HEIGHT / 2);
+	}
+
+	@Override
+	public void tearDown() {
+		g2D.dispose();
+		g2D = null;
+		target = null;
+		bars = null;
+	}
+}
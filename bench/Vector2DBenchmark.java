@@ -0,0 +1,72 @@
+import java.util.Random;
+
+/**
+ * Times Vector2D.step(), which moves every entity once a cycle. Each
+ * operation steps the movement vector of every one of a set of projectiles,
+ * then puts them all back where they started so they never fly off into the
+ * distance.
+ *
+ * @author Andrew
+ *
+ */
+public class Vector2DBenchmark extends Benchmark {
+
+	// The seed the projectiles are placed from
+	private static final long SEED = 11;
+
+	// The number of vectors stepped per operation
+	private int size;
+	// The projectiles whose vectors are stepped, and where each one started
+	private Projectile[] projectiles;
+	private double[] startX;
+	private double[] startY;
+
+	/**
+	 * Creates a vector benchmark.
+	 *
+	 * @param size
+	 *            The number of vectors stepped per operation
+	 */
+	public Vector2DBenchmark(int size) {
+		super("Vector2D.step");
+		this.size = size;
+		addParam("size", size);
+	}
+
+	@Override
+	public void setUp() {
+		BenchmarkScene.prepare();
+		Random random = new Random(SEED);
+		projectiles = new Projectile[size];
+		startX = new double[size];
+		startY = new double[size];
+		for (int i = 0; i < size; i++) {
+			startX[i] = random.nextDouble() * BenchmarkScene.DISPLAY_WIDTH;
+			startY[i] = random.nextDouble() * BenchmarkScene.DISPLAY_HEIGHT;
+			projectiles[i] = new Projectile(startX[i], startY[i],
+					random.nextDouble() * BenchmarkScene.DISPLAY_WIDTH,
+					random.nextDouble() * BenchmarkScene.DISPLAY_HEIGHT, 25,
+					CollisionLayers.PLAYER_FACTION);
+		}
+	}
+
+	@Override
+	public long run() {
+		for (int i = 0; i < size; i++) {
+			projectiles[i].movementVector.step();
+		}
+		long sum = 0;
+		for (int i = 0; i < size; i++) {
+			Vector2D vector = projectiles[i].movementVector;
+			sum += (long) projectiles[i].getX();
+			vector.setX(startX[i]);
+			vector.setY(startY[i]);
+		}
+		return sum;
+	}
+
+	@Override
+	public void tearDown() {
+		projectiles = null;
+	}
+}
@@ -0,0 +1,150 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * An atlas region is the rectangle of a texture atlas page that one image
+ * was packed into. Drawing a region copies just that rectangle of the page,
+ * so every region on a page is drawn from the same surface.
+ *
+ * A region can also cover the whole of an image of its own, for images that
+ * were never packed or are too big for a page.
+ *
+ * @author Andrew
+ *
+ */
+public class AtlasRegion {
+
+	// The page the region is on
+	private final Image page;
+	// Where on the page the region is, and its size
+	private final int x;
+	private final int y;
+	private final int width;
+	private final int height;
+
+	/**
+	 * Creates a region covering part of a page.
+	 *
+	 * @param page
+	 *            The page the region is on
+	 * @param x
+	 *            The X coordinate of the left of the region on the page
+	 * @param y
+	 *            The Y coordinate of the top of the region on the page
+	 * @param width
+	 *            The width of the region
+	 * @param height
+	 *            The height of the region
+	 */
+	public AtlasRegion(Image page, int x, int y, int width, int height) {
+		this.page = page;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Creates a region covering the whole of an image.
+	 *
+	 * @param image
+	 *            The image, which must be loaded
+	 */
+	public AtlasRegion(Image image) {
+		this(image, 0, 0, image.getWidth(null), image.getHeight(null));
+	}
+
+	/**
+	 * Draws the region unscaled with its top left corner at the given point,
+	 * which Java2D can do as a plain blit.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param dx
+	 *            The X coordinate to draw the left of the region at
+	 * @param dy
+	 *            The Y coordinate to draw the top of the region at
+	 */
+	public void draw(Graphics2D g2D, int dx, int dy) {
+		g2D.drawImage(page, dx, dy, dx + width, dy + height, x, y, x + width,
+				y + height, null);
+	}
+
+	/**
+	 * Draws the region through a transform, which maps the top left corner of
+	 * the region to the origin.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param transform
+	 *            The transform from the region to the graphics context
+	 */
+	public void draw(Graphics2D g2D, AffineTransform transform) {
+		if (coversPage()) {
+			g2D.drawImage(page, transform, null);
+			return;
+		}
+		AffineTransform saved = g2D.getTransform();
+		g2D.transform(transform);
+		draw(g2D, 0, 0);
+		g2D.setTransform(saved);
+	}
+
+	/**
+	 * Returns the region as an image of its own. A region on a shared page is
+	 * returned as a view of the page, so no pixels are copied.
+	 *
+	 * @return the image
+	 */
+	public Image getImage() {
+		if (coversPage() || !(page instanceof BufferedImage)) {
+			return page;
+		}
+		return ((BufferedImage) page).getSubimage(x, y, width, height);
+	}
+
+	/**
+	 * @return the page the region is on
+	 */
+	public Image getPage() {
+		return page;
+	}
+
+	/**
+	 * @return the width of the region
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height of the region
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the X coordinate of the left of the region on its page
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * @return the Y coordinate of the top of the region on its page
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Returns whether the region is the whole of its page.
+	 */
+	private boolean coversPage() {
+		return x == 0 && y == 0 && width == page.getWidth(null)
+				&& height == page.getHeight(null);
+	}
+}
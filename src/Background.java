@@ -0,0 +1,49 @@
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The background is drawn behind everything else in the game, as a stack of
+ * background layers from the furthest back to the nearest. Each layer only
+ * draws the tiles the camera can see, at whole pixel positions, so drawing the
+ * background never rotates or scales anything.
+ *
+ * @author Andrew
+ *
+ */
+public class Background {
+
+	// The layers, from the furthest back to the nearest
+	private List<BackgroundLayer> layers = new ArrayList<BackgroundLayer>();
+
+	/**
+	 * Adds a layer in front of the layers added so far.
+	 *
+	 * @param layer
+	 *            The layer to add
+	 */
+	public void addLayer(BackgroundLayer layer) {
+		layers.add(layer);
+	}
+
+	/**
+	 * Draws every layer that can be seen from the camera.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param cameraX
+	 *            The X coordinate of the top left of the view
+	 * @param cameraY
+	 *            The Y coordinate of the top left of the view
+	 * @param viewWidth
+	 *            The width of the view
+	 * @param viewHeight
+	 *            The height of the view
+	 */
+	public void draw(Graphics2D g2D, double cameraX, double cameraY,
+			int viewWidth, int viewHeight) {
+		for (int i = 0; i < layers.size(); i++) {
+			layers.get(i).draw(g2D, cameraX, cameraY, viewWidth, viewHeight);
+		}
+	}
+}
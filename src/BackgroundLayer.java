@@ -0,0 +1,204 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * A background layer is one layer of the background, cut into square tiles.
+ * Each tile is painted once into an image of its own, and is copied into an
+ * accelerated VolatileImage when there is a display, so drawing the layer is
+ * only ever a plain blit of each visible tile at a whole pixel position. The
+ * layer repeats forever in every direction, so the camera can scroll as far as
+ * it likes.
+ *
+ * Each layer moves at a fraction of the speed of the camera, its parallax, so
+ * distant layers drift past slower than near ones.
+ *
+ * VolatileImages can lose their contents at any time (e.g. when the display
+ * mode changes), so each tile keeps the image it was painted into and is
+ * copied back from it whenever that happens.
+ *
+ * @author Andrew
+ *
+ */
+public abstract class BackgroundLayer {
+
+	/**
+	 * A single tile of the layer.
+	 */
+	private static class Tile {
+		// The tile as painted, which is never lost
+		BufferedImage source;
+		// The accelerated copy of the tile, null until it is first drawn or
+		// when there is no display
+		VolatileImage accelerated;
+	}
+
+	// The width and height of each tile, besides the last column and row
+	// which may be narrower
+	private int tileSize;
+	// The width and height of the layer before it repeats
+	private int width;
+	private int height;
+	// The number of columns and rows of tiles
+	private int columns;
+	private int rows;
+	// How far the layer moves for each pixel the camera moves
+	private double parallax;
+	// Whether the layer covers everything behind it
+	private boolean opaque;
+	// The tiles of the layer, row by row, each made the first time it is
+	// drawn
+	private Tile[] tiles;
+	// The display the tiles are accelerated for, or null if there is none
+	private GraphicsConfiguration gc;
+
+	/**
+	 * Creates a background layer.
+	 *
+	 * @param width
+	 *            The width of the layer before it repeats
+	 * @param height
+	 *            The height of the layer before it repeats
+	 * @param tileSize
+	 *            The width and height of each tile
+	 * @param parallax
+	 *            How far the layer moves for each pixel the camera moves
+	 * @param opaque
+	 *            Whether the layer covers everything behind it
+	 * @param gc
+	 *            The display to accelerate the tiles for, or null to draw
+	 *            straight from the painted tiles
+	 */
+	protected BackgroundLayer(int width, int height, int tileSize,
+			double parallax, boolean opaque, GraphicsConfiguration gc) {
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+		this.parallax = parallax;
+		this.opaque = opaque;
+		this.gc = gc;
+		columns = (width + tileSize - 1) / tileSize;
+		rows = (height + tileSize - 1) / tileSize;
+		tiles = new Tile[columns * rows];
+	}
+
+	/**
+	 * Paints the part of the layer covered by a tile. Called once for each
+	 * tile, the first time it is drawn.
+	 *
+	 * @param g2D
+	 *            The graphics context of the tile, with the top left of the
+	 *            layer at the origin
+	 * @param x
+	 *            The X coordinate in the layer of the top left of the tile
+	 * @param y
+	 *            The Y coordinate in the layer of the top left of the tile
+	 * @param tileWidth
+	 *            The width of the tile
+	 * @param tileHeight
+	 *            The height of the tile
+	 */
+	protected abstract void paint(Graphics2D g2D, int x, int y, int tileWidth,
+			int tileHeight);
+
+	/**
+	 * Draws every tile of the layer that can be seen from the camera.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param cameraX
+	 *            The X coordinate of the top left of the view
+	 * @param cameraY
+	 *            The Y coordinate of the top left of the view
+	 * @param viewWidth
+	 *            The width of the view
+	 * @param viewHeight
+	 *            The height of the view
+	 */
+	public void draw(Graphics2D g2D, double cameraX, double cameraY,
+			int viewWidth, int viewHeight) {
+		int offsetX = (int) Math.floor(cameraX * parallax);
+		int offsetY = (int) Math.floor(cameraY * parallax);
+		// The first repeat of the layer that can be seen, and the first
+		// column and row of it
+		int startRepeatX = Math.floorDiv(offsetX, width);
+		int startRepeatY = Math.floorDiv(offsetY, height);
+		int startColumn = (offsetX - startRepeatX * width) / tileSize;
+		int startRow = (offsetY - startRepeatY * height) / tileSize;
+		for (int repeatY = startRepeatY, row = startRow;; row++) {
+			if (row == rows) {
+				repeatY++;
+				row = 0;
+			}
+			int tileY = repeatY * height + row * tileSize - offsetY;
+			if (tileY >= viewHeight) {
+				break;
+			}
+			for (int repeatX = startRepeatX, column = startColumn;; column++) {
+				if (column == columns) {
+					repeatX++;
+					column = 0;
+				}
+				int tileX = repeatX * width + column * tileSize - offsetX;
+				if (tileX >= viewWidth) {
+					break;
+				}
+				g2D.drawImage(getTile(column, row), tileX, tileY, null);
+			}
+		}
+	}
+
+	/**
+	 * Returns the image to draw for a tile, painting it if it hasn't been yet,
+	 * and restoring its accelerated copy if it has been lost.
+	 */
+	private Image getTile(int column, int row) {
+		Tile tile = tiles[row * columns + column];
+		if (tile == null) {
+			tile = new Tile();
+			int x = column * tileSize;
+			int y = row * tileSize;
+			int tileWidth = Math.min(tileSize, width - x);
+			int tileHeight = Math.min(tileSize, height - y);
+			tile.source = new BufferedImage(tileWidth, tileHeight,
+					opaque ? BufferedImage.TYPE_INT_RGB
+							: BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g2D = tile.source.createGraphics();
+			g2D.translate(-x, -y);
+			paint(g2D, x, y, tileWidth, tileHeight);
+			g2D.dispose();
+			tiles[row * columns + column] = tile;
+		}
+		if (gc == null) {
+			return tile.source;
+		}
+		int status = VolatileImage.IMAGE_RESTORED;
+		if (tile.accelerated != null) {
+			status = tile.accelerated.validate(gc);
+		}
+		if (tile.accelerated == null
+				|| status == VolatileImage.IMAGE_INCOMPATIBLE) {
+			tile.accelerated = gc.createCompatibleVolatileImage(
+					tile.source.getWidth(), tile.source.getHeight(),
+					opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT);
+			tile.accelerated.validate(gc);
+			status = VolatileImage.IMAGE_RESTORED;
+		}
+		if (status == VolatileImage.IMAGE_RESTORED) {
+			Graphics2D g2D = tile.accelerated.createGraphics();
+			g2D.setComposite(AlphaComposite.Src);
+			g2D.drawImage(tile.source, 0, 0, null);
+			g2D.dispose();
+		}
+		// Lost again while being restored, so the painted tile is drawn this
+		// frame instead
+		if (tile.accelerated.contentsLost()) {
+			return tile.source;
+		}
+		return tile.accelerated;
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * This interface defines a broad phase for collision detection. A broad phase
+ * is a structure that quickly narrows down which entities are close enough to
+ * each other to possibly collide, so that the game engine only has to run the
+ * exact collision check on those pairs instead of on every pair of entities.
+ * 
+ * @author Andrew
+ * 
+ */
+public interface BroadPhase {
+
+	/**
+	 * Brings this broad phase up to date with the entities this cycle. Called
+	 * by the game engine once per cycle, after all entities have been updated
+	 * and before any pairs are asked for. Disabled entities are left out.
+	 * 
+	 * @param entities
+	 *            All of the entities in the game
+	 */
+	public void update(EntityStore entities);
+
+	/**
+	 * Forgets an entity that has been taken out of the game. Called by the game
+	 * engine whenever it removes a disabled entity from the entity store, so
+	 * broad phases that keep entities from one cycle to the next can drop it.
+	 * 
+	 * @param ent
+	 *            The entity that was removed
+	 */
+	public void remove(Entity ent);
+
+	/**
+	 * Adds every pair of entities that might be colliding this cycle to the
+	 * pair buffer. The first entity of each pair is never a projectile, as
+	 * projectiles are only ever checked against ships.
+	 * 
+	 * @param pairs
+	 *            The buffer to add the candidate pairs to
+	 */
+	public void findPairs(PairBuffer pairs);
+
+	/**
+	 * Adds a pair of the given entity with every entity stored in this broad
+	 * phase that might be touching it. The entity doesn't have to be stored in
+	 * this broad phase itself. Only valid once update() has been called this
+	 * cycle.
+	 * 
+	 * @param ent
+	 *            The entity to find the neighbours of, never a projectile
+	 * @param pairs
+	 *            The buffer to add the candidate pairs to
+	 */
+	public void query(Entity ent, PairBuffer pairs);
+
+	/**
+	 * Returns the number of nodes, cells or buckets this broad phase is using
+	 * this cycle, for profiling. Only valid once update() has been called this
+	 * cycle, and may take time proportional to that number, so it shouldn't
+	 * be called every cycle unless something is recording it.
+	 * 
+	 * @return the number of nodes in use
+	 */
+	public int getNodeCount();
+}
@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event covering the broad phase being brought up to date
+ * and searched for candidate pairs, once per cycle.
+ *
+ * @author Andrew
+ *
+ */
+@Name("conquest.BroadPhase")
+@Label("Broad Phase Build")
+@Category({ "Galactic Conquest", "Collisions" })
+@Description("The broad phase being updated and searched for candidate pairs")
+@StackTrace(false)
+public class BroadPhaseEvent extends Event {
+
+	// The name of the broad phase in use, as given in the settings
+	@Label("Broad Phase")
+	String broadPhase;
+	// The number of entities handed to the broad phase
+	@Label("Entity Count")
+	int entityCount;
+	// The number of nodes, cells or buckets the broad phase is using
+	@Label("Node Count")
+	int nodeCount;
+	// The number of candidate pairs found for the narrow phase
+	@Label("Candidate Pairs")
+	int candidatePairs;
+}
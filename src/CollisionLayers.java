@@ -0,0 +1,118 @@
+/**
+ * The collision layers decide which entities can interact at all, before any
+ * bounding boxes are compared. Every entity sits on a layer (ships or
+ * projectiles) and has a mask of the layers it collides with, and every entity
+ * belongs to a faction. Two entities only interact if each one's mask covers
+ * the other's layer and their factions are hostile to each other in the
+ * faction matrix.
+ *
+ * There is only one set of collision layers for the game, which is retrieved
+ * through get().
+ *
+ * @author Andrew
+ *
+ */
+public class CollisionLayers {
+
+	// The layer ships are on
+	public static final int SHIP_LAYER = 1;
+	// The layer projectiles are on
+	public static final int PROJECTILE_LAYER = 2;
+	// The faction of the player and anything it fires
+	public static final int PLAYER_FACTION = 0;
+	// The faction of hostile ships and anything they fire
+	public static final int HOSTILE_FACTION = 1;
+
+	// The singleton for the collision layers
+	private static CollisionLayers single = new CollisionLayers(2);
+
+	public static CollisionLayers get() {
+		return single;
+	}
+
+	// For each pair of factions, whether they can hurt each other
+	private boolean[][] hostile;
+
+	/**
+	 * Creates collision layers for the given number of factions, each of which
+	 * is hostile to every other faction but not to itself.
+	 *
+	 * @param factionCount
+	 *            The number of factions in the game
+	 */
+	private CollisionLayers(int factionCount) {
+		setFactionCount(factionCount);
+	}
+
+	/**
+	 * Checks whether two entities can interact, going by their layers and
+	 * factions alone.
+	 *
+	 * @param entA
+	 *            The first entity
+	 * @param entB
+	 *            The second entity
+	 * @return true if a collision between the two would do anything
+	 */
+	public boolean canInteract(Entity entA, Entity entB) {
+		return (entA.collisionMask & entB.collisionLayer) != 0
+				&& (entB.collisionMask & entA.collisionLayer) != 0
+				&& hostile[entA.faction][entB.faction];
+	}
+
+	/**
+	 * Returns the number of factions in the game.
+	 *
+	 * @return the number of factions
+	 */
+	public int getFactionCount() {
+		return hostile.length;
+	}
+
+	/**
+	 * Checks whether two factions can hurt each other.
+	 *
+	 * @param factionA
+	 *            The first faction
+	 * @param factionB
+	 *            The second faction
+	 * @return true if the factions are hostile
+	 */
+	public boolean isHostile(int factionA, int factionB) {
+		return hostile[factionA][factionB];
+	}
+
+	/**
+	 * Resets the faction matrix for the given number of factions, with each
+	 * faction hostile to every other faction but not to itself. There are
+	 * always at least the player and hostile factions.
+	 *
+	 * @param factionCount
+	 *            The number of factions in the game
+	 */
+	public void setFactionCount(int factionCount) {
+		factionCount = Math.max(2, factionCount);
+		hostile = new boolean[factionCount][factionCount];
+		for (int a = 0; a < factionCount; a++) {
+			for (int b = 0; b < factionCount; b++) {
+				hostile[a][b] = a != b;
+			}
+		}
+	}
+
+	/**
+	 * Sets whether two factions can hurt each other. Always set both ways, so
+	 * the matrix stays symmetric.
+	 *
+	 * @param factionA
+	 *            The first faction
+	 * @param factionB
+	 *            The second faction
+	 * @param isHostile
+	 *            Whether the factions are hostile
+	 */
+	public void setHostile(int factionA, int factionB, boolean isHostile) {
+		hostile[factionA][factionB] = isHostile;
+		hostile[factionB][factionA] = isHostile;
+	}
+}
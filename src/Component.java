@@ -1,5 +1,3 @@
-import java.awt.Graphics2D;
-
 /**
  * The component class is an abstraction layer which defines exactly what a
  * component is. A component is a piece of "ship hardware" which gives a ship
@@ -17,8 +15,8 @@ public abstract class Component {
 	// interpolation in smooth rendering.
 	protected double lastX;
 	protected double lastY;
-	// The sprite associated with this component
-	protected Sprite sprite;
+	// The sprite associated with this component, through a handle of its own
+	protected SpriteHandle sprite;
 	// The angle of rotation associated with this component. Likely implemented
 	// by turrets and anything else that rotates independent of the ship. At
 	// least that's how I'd like it implemented
@@ -43,36 +41,25 @@ public abstract class Component {
 		// to the position of the ship, amongst other things.
 		this.attachedShip = ship;
 		// Retrieves the sprite from the ~/sprites folder and places it in the
-		// cache
-		this.sprite = SpriteStore.get().getSprite(ref);
-		// Sets the loaded sprite to this component. This line allows the
-		// component to be translated using interpolated values in the
-		// sprite.draw() method in the sprite class
-		this.sprite.setAttachedComponent(this);
+		// cache. The sprite is shared, so the component draws it through a
+		// handle of its own.
+		this.sprite = new SpriteHandle(SpriteStore.get().getSprite(ref));
 	}
 
 	/**
-	 * This method is responsible for drawing the representative sprite of this
-	 * component at an interpolated XY position. It takes the Graphics2D g2D
-	 * object, which is used to draw the image to the graphics context. It also
-	 * takes the double interpolation value, which is the value used to
-	 * interpolate the actual or likely position this object should be rendered
-	 * at to achieve a smooth graphics rendering.
+	 * This method is responsible for capturing the representative sprite of
+	 * this component into the render snapshot, with its last and current XY
+	 * positions so that the render thread can interpolate between them to
+	 * achieve a smooth graphics rendering.
 	 * 
-	 * @param g2D
-	 * @param interp
+	 * @param snapshot
+	 *            The snapshot being filled this cycle
 	 */
-	public void draw(Graphics2D g2D, double interp) {
-		// The interpolated X and Y coordinates the image should be drawn at.
-		double interpX = (x - lastX) * interp + lastX;
-		double interpY = (y - lastY) * interp + lastY;
-		// Does the actual drawing of the sprite to the g2D context at the
-		// interpolated values, with any associated theta rotation.
-		// TODO likely will not behave as expected, given that an
-		// AffineTransform object will likely need to be defined in order to
-		// properly rotate this object. Refer to entity affine transformation
-		// for more info on this.
-		this.sprite.draw(g2D, interpX, interpY, theta);
+	public void capture(RenderSnapshot snapshot) {
+		// TODO theta isn't applied yet, rotating the component will need it
+		// to be rotated about the attached ship rather than itself.
+		snapshot.addSprite(sprite, sprite.getSpriteWidth(),
+				sprite.getSpriteHeight(), lastX, lastY, x, y, 0);
 	}
 
 	/**
@@ -149,4 +136,14 @@ public abstract class Component {
 	 * through to call the update() method of each unique component.
 	 */
 	public abstract void update();
+
+	/**
+	 * Carries out anything this component decided to do in update() that
+	 * affects the rest of the game, like adding a projectile. update() may run
+	 * on a worker thread alongside other entities, so it only records what it
+	 * wants to do, and this method is then called on the game loop thread in a
+	 * fixed order. Does nothing unless overridden.
+	 */
+	public void commit() {
+	}
 }
@@ -17,11 +17,13 @@ public class Destroyer extends Ship {
 	 * destroyer object.
 	 */
 	public Destroyer() {
-		// Calls the superclass constructor to use a specific image, and to
-		// spawn the unit at a random area in the visble field
-		super("Green_Ship_Small",
-				GameEngine.getRNG() * GameEngine.displayWidth,
-				GameEngine.displayHeight * GameEngine.getRNG());
+		// Calls the superclass constructor to use a specific image
+		super("Green_Ship_Small", 0, 0);
+		// Spawns the unit at a random area in the visible field. Destroyers are
+		// built on whichever thread adds them, so the position comes from the
+		// unit's own random numbers rather than the game loop's.
+		resetPosition(rng.nextDouble() * GameEngine.displayWidth,
+				rng.nextDouble() * GameEngine.displayHeight);
 		// Boolean to determine whether this unit is a player. This boolean is
 		// used for specific algorithms to detect player input
 		isPlayer = false;
@@ -32,6 +34,8 @@ public class Destroyer extends Ship {
 		// Whether this unit is an enemy. TODO Seems redundant when consider an
 		// enemy is hostile....
 		isEnemy = true;
+		// The faction this unit fights for, hostile to the player's faction
+		faction = CollisionLayers.HOSTILE_FACTION;
 		// The current magnitude of velocity of this unit. This number is sent
 		// to the Vector2D class to determine X and Y velocities based on a
 		// theta value.
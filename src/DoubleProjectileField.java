@@ -0,0 +1,97 @@
+/**
+ * A projectile field that stores projectile positions, velocities and headings
+ * as doubles, the same precision the entities use.
+ * 
+ * @author Andrew
+ * 
+ */
+public class DoubleProjectileField extends ProjectileField {
+
+	// Current XY position of each projectile
+	private double[] x;
+	private double[] y;
+	// The distance each projectile moves along X and Y each cycle
+	private double[] xVel;
+	private double[] yVel;
+	// The heading of each projectile, used to rotate it when drawn
+	private double[] theta;
+
+	/**
+	 * Creates an empty projectile field with room for the given number of
+	 * projectiles.
+	 * 
+	 * @param capacity
+	 *            How many projectiles to make room for up front
+	 */
+	public DoubleProjectileField(int capacity) {
+		super(capacity);
+		grow(faction.length);
+	}
+
+	@Override
+	protected void grow(int capacity) {
+		x = copy(x, capacity);
+		y = copy(y, capacity);
+		xVel = copy(xVel, capacity);
+		yVel = copy(yVel, capacity);
+		theta = copy(theta, capacity);
+	}
+
+	private double[] copy(double[] old, int capacity) {
+		double[] grown = new double[capacity];
+		if (old != null) {
+			System.arraycopy(old, 0, grown, 0, count);
+		}
+		return grown;
+	}
+
+	@Override
+	protected void store(int i, double x, double y, double xVel, double yVel,
+			double theta) {
+		this.x[i] = x;
+		this.y[i] = y;
+		this.xVel[i] = xVel;
+		this.yVel[i] = yVel;
+		this.theta[i] = theta;
+	}
+
+	@Override
+	protected void moveLast(int i) {
+		x[i] = x[count];
+		y[i] = y[count];
+		xVel[i] = xVel[count];
+		yVel[i] = yVel[count];
+		theta[i] = theta[count];
+	}
+
+	@Override
+	protected double getX(int i) {
+		return x[i];
+	}
+
+	@Override
+	protected double getY(int i) {
+		return y[i];
+	}
+
+	@Override
+	protected double getXVel(int i) {
+		return xVel[i];
+	}
+
+	@Override
+	protected double getYVel(int i) {
+		return yVel[i];
+	}
+
+	@Override
+	protected double getTheta(int i) {
+		return theta[i];
+	}
+
+	@Override
+	protected void setPosition(int i, double x, double y) {
+		this.x[i] = x;
+		this.y[i] = y;
+	}
+}
@@ -0,0 +1,596 @@
+import java.util.Arrays;
+
+/**
+ * A broad phase which uses a dynamic bounding volume tree. Every entity is a
+ * leaf of a binary tree, and every branch holds the box around both of its
+ * children. Instead of each entity's exact bounding box, a leaf holds a "fat"
+ * box which is grown by a margin and stretched in the direction the entity is
+ * moving. An entity is only taken out and put back into the tree once its
+ * bounding box leaves its fat box, so slow ships almost never touch the tree,
+ * and even fast projectiles only do every few cycles.
+ *
+ * The tree is kept balanced by rotating branches as leaves are inserted and
+ * removed, the same way an AVL tree is.
+ *
+ * Candidate pairs are cached from one cycle to the next. Only entities that
+ * were put back into the tree this cycle look for new pairs, and cached pairs
+ * are dropped once their fat boxes stop overlapping, so two ships flying near
+ * each other stay paired without either one searching the tree again. The
+ * cache is only kept while findPairs() is called every cycle, so a tree that
+ * is only ever queried, like each bucket of a layered broad phase, doesn't
+ * spend any time on it.
+ *
+ * The nodes are stored as parallel arrays indexed by node number, so the tree
+ * doesn't allocate anything once it has grown to the size of the battle.
+ *
+ * @author Andrew
+ *
+ */
+public class DynamicAabbTree implements BroadPhase {
+
+	// Stands in for "no node"
+	private static final int NULL_NODE = -1;
+	// Stands in for an empty slot of the pair set
+	private static final long EMPTY_PAIR = -1L;
+	// How many pixels a fat box is grown by on every side
+	private static final double MARGIN = 10;
+	// How many cycles of movement a fat box is stretched ahead of its entity
+	private static final double DISPLACEMENT_MULTIPLIER = 4;
+
+	// The box held by each node, a fat box for leaves
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+	// The links between nodes. For nodes on the free list, parent is the next
+	// free node.
+	private int[] parent;
+	private int[] child1;
+	private int[] child2;
+	// The height of each node above the deepest leaf below it, 0 for leaves
+	// and -1 for free nodes
+	private int[] height;
+	// The entity stored in each leaf, null for branches and free nodes
+	private Entity[] leafEntity;
+	private int root = NULL_NODE;
+	private int freeList = NULL_NODE;
+	// The number of nodes in the tree, branches and leaves both
+	private int nodeCount = 0;
+
+	// The leaves put back into the tree this cycle, which look for new pairs
+	private int[] moved = new int[256];
+	private int movedCount = 0;
+	// The stack used to walk the tree without recursion
+	private int[] stack = new int[64];
+
+	// The cached pairs, as two leaf numbers packed into a long, in the order
+	// they were found
+	private long[] pairList = new long[256];
+	private int pairCount = 0;
+	// An open addressed hash set of the cached pairs, so a pair found twice is
+	// only cached once
+	private long[] pairSet = new long[512];
+	// Whether the cached pairs are up to date, and whether findPairs() has
+	// been called since the last update
+	private boolean pairsCached = false;
+	private boolean pairsRead = false;
+
+	/**
+	 * Creates an empty tree.
+	 */
+	public DynamicAabbTree() {
+		allocateArrays(64);
+		Arrays.fill(pairSet, EMPTY_PAIR);
+	}
+
+	@Override
+	public void update(EntityStore entities) {
+		for (int i = 0; i < entities.size(); i++) {
+			Entity ent = entities.get(i);
+			if (!ent.isEnabled) {
+				continue;
+			}
+			int leaf = ent.treeProxy;
+			if (leaf == NULL_NODE) {
+				leaf = allocateNode();
+				leafEntity[leaf] = ent;
+				height[leaf] = 0;
+				ent.treeProxy = leaf;
+				setFatBox(leaf, ent);
+				insertLeaf(leaf);
+				addMoved(leaf);
+			} else if (ent.getX() < minX[leaf] || ent.getY() < minY[leaf]
+					|| ent.getX() + ent.getWidth() > maxX[leaf]
+					|| ent.getY() + ent.getHeight() > maxY[leaf]) {
+				// The entity has left its fat box, so it gets a new one
+				removeLeaf(leaf);
+				setFatBox(leaf, ent);
+				insertLeaf(leaf);
+				addMoved(leaf);
+			}
+		}
+		if (!pairsRead) {
+			// Nothing read the pairs last cycle, so they are left to go stale
+			// and rebuilt if they are ever asked for
+			pairsCached = false;
+		}
+		pairsRead = false;
+		if (pairsCached) {
+			findNewPairs();
+		} else {
+			movedCount = 0;
+		}
+	}
+
+	@Override
+	public void remove(Entity ent) {
+		int leaf = ent.treeProxy;
+		if (leaf == NULL_NODE) {
+			return;
+		}
+		removeLeaf(leaf);
+		freeNode(leaf);
+		ent.treeProxy = NULL_NODE;
+		// Any cached pairs with this leaf are dropped the next time the pairs
+		// are checked
+	}
+
+	@Override
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		pairsRead = true;
+		if (!pairsCached) {
+			rebuildPairs();
+		}
+		// Drops any pair that no longer overlaps, keeping the rest in order,
+		// and rebuilds the pair set from what is left
+		Arrays.fill(pairSet, EMPTY_PAIR);
+		int kept = 0;
+		for (int i = 0; i < pairCount; i++) {
+			long pair = pairList[i];
+			int leafA = (int) (pair >>> 32);
+			int leafB = (int) pair;
+			Entity entA = leafEntity[leafA];
+			Entity entB = leafEntity[leafB];
+			if (entA == null || entB == null || !overlaps(leafA, leafB)
+					|| (entA.isProjectile && entB.isProjectile)) {
+				continue;
+			}
+			pairList[kept++] = pair;
+			addToSet(pair);
+			if (!entA.isEnabled || !entB.isEnabled) {
+				continue;
+			}
+			// The first entity of a pair is never a projectile
+			if (entA.isProjectile) {
+				pairs.add(entB, entA);
+			} else {
+				pairs.add(entA, entB);
+			}
+		}
+		pairCount = kept;
+	}
+
+	@Override
+	public void query(Entity ent, PairBuffer pairs) {
+		double left = ent.getX();
+		double top = ent.getY();
+		double right = left + ent.getWidth();
+		double bottom = top + ent.getHeight();
+		int stackTop = 0;
+		stack[stackTop++] = root;
+		while (stackTop > 0) {
+			int node = stack[--stackTop];
+			if (node == NULL_NODE || minX[node] > right || maxX[node] < left
+					|| minY[node] > bottom || maxY[node] < top) {
+				continue;
+			}
+			if (height[node] == 0) {
+				Entity other = leafEntity[node];
+				if (other != ent && other.isEnabled) {
+					pairs.add(ent, other);
+				}
+			} else {
+				if (stackTop + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				stack[stackTop++] = child1[node];
+				stack[stackTop++] = child2[node];
+			}
+		}
+	}
+
+	/**
+	 * Throws away the cached pairs and finds them again for every leaf in the
+	 * tree.
+	 */
+	private void rebuildPairs() {
+		pairCount = 0;
+		Arrays.fill(pairSet, EMPTY_PAIR);
+		movedCount = 0;
+		for (int node = 0; node < leafEntity.length; node++) {
+			if (height[node] == 0 && leafEntity[node] != null) {
+				addMoved(node);
+			}
+		}
+		findNewPairs();
+		pairsCached = true;
+	}
+
+	/**
+	 * Looks for new pairs for every leaf that was put back into the tree this
+	 * cycle.
+	 */
+	private void findNewPairs() {
+		for (int m = 0; m < movedCount; m++) {
+			int leaf = moved[m];
+			Entity ent = leafEntity[leaf];
+			if (ent == null || ent.treeProxy != leaf) {
+				// Removed since it moved
+				continue;
+			}
+			int top = 0;
+			stack[top++] = root;
+			while (top > 0) {
+				int node = stack[--top];
+				if (node == NULL_NODE || !overlaps(node, leaf)) {
+					continue;
+				}
+				if (height[node] == 0) {
+					Entity other = leafEntity[node];
+					// Two projectiles are never paired
+					if (node != leaf
+							&& !(ent.isProjectile && other.isProjectile)) {
+						addPair(Math.min(node, leaf), Math.max(node, leaf));
+					}
+				} else {
+					if (top + 2 > stack.length) {
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					stack[top++] = child1[node];
+					stack[top++] = child2[node];
+				}
+			}
+		}
+		movedCount = 0;
+	}
+
+	/**
+	 * Caches a pair of leaves, unless it is already cached.
+	 */
+	private void addPair(int leafA, int leafB) {
+		long pair = ((long) leafA << 32) | leafB;
+		if (!addToSet(pair)) {
+			return;
+		}
+		if (pairCount == pairList.length) {
+			pairList = Arrays.copyOf(pairList, pairCount * 2);
+		}
+		pairList[pairCount++] = pair;
+		// Keeps the set at most half full so probing stays short
+		if (pairCount * 2 > pairSet.length) {
+			pairSet = new long[pairSet.length * 2];
+			Arrays.fill(pairSet, EMPTY_PAIR);
+			for (int i = 0; i < pairCount; i++) {
+				addToSet(pairList[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds a pair to the pair set.
+	 *
+	 * @return false if the pair was already in the set
+	 */
+	private boolean addToSet(long pair) {
+		int mask = pairSet.length - 1;
+		long hash = pair * 0x9E3779B97F4A7C15L;
+		int slot = (int) (hash >>> 32) & mask;
+		while (pairSet[slot] != EMPTY_PAIR) {
+			if (pairSet[slot] == pair) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		pairSet[slot] = pair;
+		return true;
+	}
+
+	private void addMoved(int leaf) {
+		if (movedCount == moved.length) {
+			moved = Arrays.copyOf(moved, movedCount * 2);
+		}
+		moved[movedCount++] = leaf;
+	}
+
+	/**
+	 * Sets the box of a leaf to the bounding box of its entity, grown by the
+	 * margin and stretched in the direction the entity moved last cycle.
+	 */
+	private void setFatBox(int leaf, Entity ent) {
+		minX[leaf] = ent.getX() - MARGIN;
+		minY[leaf] = ent.getY() - MARGIN;
+		maxX[leaf] = ent.getX() + ent.getWidth() + MARGIN;
+		maxY[leaf] = ent.getY() + ent.getHeight() + MARGIN;
+		double deltaX = (ent.getX() - ent.getLastX()) * DISPLACEMENT_MULTIPLIER;
+		double deltaY = (ent.getY() - ent.getLastY()) * DISPLACEMENT_MULTIPLIER;
+		if (deltaX < 0) {
+			minX[leaf] += deltaX;
+		} else {
+			maxX[leaf] += deltaX;
+		}
+		if (deltaY < 0) {
+			minY[leaf] += deltaY;
+		} else {
+			maxY[leaf] += deltaY;
+		}
+	}
+
+	private boolean overlaps(int a, int b) {
+		return minX[a] <= maxX[b] && maxX[a] >= minX[b] && minY[a] <= maxY[b]
+				&& maxY[a] >= minY[b];
+	}
+
+	/**
+	 * Returns the perimeter of the box around two nodes, which is how the cost
+	 * of putting them together is measured.
+	 */
+	private double unionPerimeter(int a, int b) {
+		double width = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+		double tall = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+		return 2 * (width + tall);
+	}
+
+	private double perimeter(int a) {
+		return 2 * (maxX[a] - minX[a] + maxY[a] - minY[a]);
+	}
+
+	/**
+	 * Sets the box of the target node to the box around two other nodes.
+	 */
+	private void setUnion(int target, int a, int b) {
+		minX[target] = Math.min(minX[a], minX[b]);
+		minY[target] = Math.min(minY[a], minY[b]);
+		maxX[target] = Math.max(maxX[a], maxX[b]);
+		maxY[target] = Math.max(maxY[a], maxY[b]);
+	}
+
+	/**
+	 * Inserts a leaf next to whichever node makes the tree grow the least, then
+	 * fixes the boxes and balance of every branch above it.
+	 */
+	private void insertLeaf(int leaf) {
+		if (root == NULL_NODE) {
+			root = leaf;
+			parent[root] = NULL_NODE;
+			return;
+		}
+		// Finds the best sibling for the new leaf
+		int index = root;
+		while (height[index] > 0) {
+			int first = child1[index];
+			int second = child2[index];
+			double area = perimeter(index);
+			double combinedArea = unionPerimeter(index, leaf);
+			// The cost of making a new parent for this node and the leaf
+			double cost = 2 * combinedArea;
+			// The least cost of pushing the leaf further down the tree
+			double inheritanceCost = 2 * (combinedArea - area);
+			double cost1 = descendCost(first, leaf) + inheritanceCost;
+			double cost2 = descendCost(second, leaf) + inheritanceCost;
+			if (cost < cost1 && cost < cost2) {
+				break;
+			}
+			index = cost1 < cost2 ? first : second;
+		}
+		int sibling = index;
+		// Creates a new parent for the sibling and the leaf
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		leafEntity[newParent] = null;
+		setUnion(newParent, leaf, sibling);
+		height[newParent] = height[sibling] + 1;
+		if (oldParent != NULL_NODE) {
+			if (child1[oldParent] == sibling) {
+				child1[oldParent] = newParent;
+			} else {
+				child2[oldParent] = newParent;
+			}
+		} else {
+			root = newParent;
+		}
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+		fixUpwards(parent[leaf]);
+	}
+
+	/**
+	 * Returns the cost of pushing a leaf down into the given child.
+	 */
+	private double descendCost(int child, int leaf) {
+		if (height[child] == 0) {
+			return unionPerimeter(child, leaf);
+		}
+		return unionPerimeter(child, leaf) - perimeter(child);
+	}
+
+	/**
+	 * Takes a leaf out of the tree. The leaf's parent is freed and its sibling
+	 * takes the parent's place.
+	 */
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL_NODE;
+			return;
+		}
+		int oldParent = parent[leaf];
+		int grandParent = parent[oldParent];
+		int sibling = child1[oldParent] == leaf ? child2[oldParent]
+				: child1[oldParent];
+		if (grandParent != NULL_NODE) {
+			if (child1[grandParent] == oldParent) {
+				child1[grandParent] = sibling;
+			} else {
+				child2[grandParent] = sibling;
+			}
+			parent[sibling] = grandParent;
+			freeNode(oldParent);
+			fixUpwards(grandParent);
+		} else {
+			root = sibling;
+			parent[sibling] = NULL_NODE;
+			freeNode(oldParent);
+		}
+	}
+
+	/**
+	 * Walks from a branch up to the root, rebalancing each branch and
+	 * recalculating its box and height.
+	 */
+	private void fixUpwards(int index) {
+		while (index != NULL_NODE) {
+			index = balance(index);
+			int first = child1[index];
+			int second = child2[index];
+			height[index] = 1 + Math.max(height[first], height[second]);
+			setUnion(index, first, second);
+			index = parent[index];
+		}
+	}
+
+	/**
+	 * Rotates the taller child of a branch up into its place if one child is
+	 * more than one level taller than the other.
+	 *
+	 * @return the node now in the branch's place
+	 */
+	private int balance(int a) {
+		if (height[a] < 2) {
+			return a;
+		}
+		int b = child1[a];
+		int c = child2[a];
+		int difference = height[c] - height[b];
+		if (difference > 1) {
+			rotateUp(a, c, b, false);
+			return c;
+		}
+		if (difference < -1) {
+			rotateUp(a, b, c, true);
+			return b;
+		}
+		return a;
+	}
+
+	/**
+	 * Rotates a child up into its parent's place. The parent keeps its other
+	 * child, and takes the shorter of the risen child's two children.
+	 *
+	 * @param a
+	 *            The branch being rotated down
+	 * @param up
+	 *            The taller child of a, which is rotated up
+	 * @param other
+	 *            The other child of a
+	 * @param upIsFirst
+	 *            Whether up was the first child of a
+	 */
+	private void rotateUp(int a, int up, int other, boolean upIsFirst) {
+		int f = child1[up];
+		int g = child2[up];
+		// Swaps a and up
+		child1[up] = a;
+		parent[up] = parent[a];
+		parent[a] = up;
+		if (parent[up] != NULL_NODE) {
+			if (child1[parent[up]] == a) {
+				child1[parent[up]] = up;
+			} else {
+				child2[parent[up]] = up;
+			}
+		} else {
+			root = up;
+		}
+		// The taller grandchild stays with up, the shorter goes to a
+		int taller = height[f] > height[g] ? f : g;
+		int shorter = taller == f ? g : f;
+		child2[up] = taller;
+		if (upIsFirst) {
+			child1[a] = shorter;
+		} else {
+			child2[a] = shorter;
+		}
+		parent[shorter] = a;
+		setUnion(a, other, shorter);
+		setUnion(up, a, taller);
+		height[a] = 1 + Math.max(height[other], height[shorter]);
+		height[up] = 1 + Math.max(height[a], height[taller]);
+	}
+
+	/**
+	 * Takes a node off the free list, growing the node arrays if the list is
+	 * empty.
+	 */
+	private int allocateNode() {
+		if (freeList == NULL_NODE) {
+			allocateArrays(height.length * 2);
+		}
+		int node = freeList;
+		freeList = parent[node];
+		parent[node] = NULL_NODE;
+		child1[node] = NULL_NODE;
+		child2[node] = NULL_NODE;
+		height[node] = 0;
+		nodeCount++;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		parent[node] = freeList;
+		height[node] = -1;
+		leafEntity[node] = null;
+		freeList = node;
+		nodeCount--;
+	}
+
+	/**
+	 * Grows the node arrays to the given capacity, and puts the new nodes on
+	 * the free list.
+	 */
+	private void allocateArrays(int capacity) {
+		int oldCapacity = height == null ? 0 : height.length;
+		if (oldCapacity == 0) {
+			minX = new double[capacity];
+			minY = new double[capacity];
+			maxX = new double[capacity];
+			maxY = new double[capacity];
+			parent = new int[capacity];
+			child1 = new int[capacity];
+			child2 = new int[capacity];
+			height = new int[capacity];
+			leafEntity = new Entity[capacity];
+		} else {
+			minX = Arrays.copyOf(minX, capacity);
+			minY = Arrays.copyOf(minY, capacity);
+			maxX = Arrays.copyOf(maxX, capacity);
+			maxY = Arrays.copyOf(maxY, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			child1 = Arrays.copyOf(child1, capacity);
+			child2 = Arrays.copyOf(child2, capacity);
+			height = Arrays.copyOf(height, capacity);
+			leafEntity = Arrays.copyOf(leafEntity, capacity);
+		}
+		for (int i = capacity - 1; i >= oldCapacity; i--) {
+			parent[i] = freeList;
+			height[i] = -1;
+			freeList = i;
+		}
+	}
+}
@@ -1,7 +1,7 @@
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This abstract class defines what an entity is. An entity is any object that
@@ -13,17 +13,28 @@ import java.util.Vector;
  */
 public abstract class Entity implements EntitySuiteInterface {
 
+	// The id handed to the next entity created. Entities are created on the
+	// main thread as well as the game loop, so ids are handed out atomically
+	// to keep them unique.
+	private static final AtomicInteger nextId = new AtomicInteger();
+
 	// Whether the entity has arrived at its destination
 	private boolean arrived;
 	// TODO The bounding box associated with this entity, may eventually change
 	// to something more accurate
 	private Rectangle2D.Double boundingBox = new Rectangle2D.Double();
+	// The collision layers this entity collides with, as a mask of layer bits
+	protected int collisionMask;
+	// The collision layer this entity is on, see CollisionLayers
+	protected int collisionLayer;
 	// The current speed of this entity, subject to change especially for the
 	// player.
 	protected double currentSpeed;
 	// The current XY coordinate destination of this entity
 	protected double destX = 0;
 	protected double destY = 0;
+	// The faction this entity belongs to, which decides who it can hurt
+	protected int faction;
 	// The vector list of hardpoints associated with this entity. This list is
 	// called in update methods, as each hardpoint knows its attached component,
 	// and how to update it.
@@ -31,6 +42,9 @@ public abstract class Entity implements EntitySuiteInterface {
 	// The health bar associated with this entity, this is drawn to the screen
 	// below the entity
 	protected StatBar healthBar;
+	// A number unique to this entity, used to put entities in a fixed order
+	// (e.g. so a broad phase only reports two ships as a pair once)
+	protected final int id;
 	// Whether the logic of this entity is updated, will be deleted and
 	// garbage-collected if this is false at the end of a game loop cycle
 	protected boolean isEnabled = true;
@@ -47,16 +61,39 @@ public abstract class Entity implements EntitySuiteInterface {
 	protected double lastY;
 	// The maximum speed of this entity
 	protected double maxSpeed;
+	// The random numbers this entity draws from. Each entity has its own,
+	// seeded from the game's seed and its id, so it makes the same choices
+	// however the update is split across threads.
+	protected Random rng;
 	// The vector defining movement for this entity
 	protected Vector2D movementVector;
-	// Graphical sprite associated w/ this entity
-	protected Sprite sprite;
+	// Graphical sprite associated w/ this entity, through a handle of its own
+	// as the sprite is shared with every other entity drawn with it
+	protected SpriteHandle sprite;
 	// The theta value for the movement vector, subject to change depending on
 	// the entity
 	protected double theta;
 	// Current XY cartesian coordinate positioning
 	protected double x;
 	protected double y;
+	// The loose quadtree node this entity is stored in, and its slot in that
+	// node, null if it is not in a loose quadtree
+	LooseQuadtree.Node quadNode;
+	int quadSlot;
+	// The leaf of the dynamic AABB tree holding this entity, -1 if it is not
+	// in a tree
+	int treeProxy = -1;
+
+	/**
+	 * Starts handing out ids from 0 again. Entities take their random numbers
+	 * from their id, so a game built after this plays out the same way as any
+	 * other game built from the same seed in a fresh process. Only for use
+	 * before a new game is built, as ids are no longer unique to entities
+	 * created before this.
+	 */
+	static void resetIds() {
+		nextId.set(0);
+	}
 
 	/**
 	 * The constructor this entity. Takes a filename for the image of the
@@ -71,15 +108,20 @@ public abstract class Entity implements EntitySuiteInterface {
 	 *            The starting Y coordinate for this entity
 	 */
 	public Entity(String ref, double x, double y) {
+		this.id = nextId.getAndIncrement();
+		this.rng = new Random(GameEngine.getSeed() ^ id * 0x9E3779B97F4A7C15L);
 		// Sets the starting position in the XY plane
 		this.x = x;
 		this.y = y;
+		// Starts the last position here too, so the entity doesn't appear to
+		// have moved from the origin on its first cycle
+		this.lastX = x;
+		this.lastY = y;
 		// Sets to true initially and the entity sets a destination
 		this.arrived = true;
 		// The reference to the sprite picture file
 		// Gets the sprite from the ~src/sprites and puts it in the cache
-		this.sprite = SpriteStore.get().getSprite(ref);
-		sprite.setAttachedEnt(this);
+		this.sprite = new SpriteHandle(SpriteStore.get().getSprite(ref));
 		hardpoints = new Vector<HardPoint>();
 		// The initial theta to set for the movement vector for this entity
 		// Creates the bounding box for this entity, based on the size of the
@@ -98,25 +140,34 @@ public abstract class Entity implements EntitySuiteInterface {
 	 *  runs the ifCollided() methods of both entities.
 	 */
 	public void detectCollision(Entity entB) {
+		// Pairs whose layers or factions rule out a collision are dropped
+		// before they are counted or their bounding boxes compared
+		if (!CollisionLayers.get().canInteract(this, entB)) {
+			return;
+		}
 		// A collision counter to check how many times this method was called
 		GameEngine.collisionsChecked++;
 		// This entire block is run only if the bounding boxes for entA and entB
 		// intersect TODO hard code intersection calculations instead?
-		if (this.boundingBox.intersects(entB.boundingBox)) {
-			if (this.isPlayer && entB.isProjectile) {
-				if (!((Projectile) entB).isPlayerProjectile) {
-					this.ifCollided(entB);
-					entB.ifCollided(this);
-				}
-			} else if (((Ship) this).isEnemy && entB.isProjectile) {
-				if (((Projectile) entB).isPlayerProjectile) {
-					this.ifCollided(entB);
-					entB.ifCollided(this);
-				}
-			}
+		if (intersects(entB)) {
+			this.ifCollided(entB);
+			entB.ifCollided(this);
 		}
 	}
 
+	/**
+	 * Checks whether the bounding box of this entity overlaps the bounding box
+	 * of another entity. Changes nothing, so it is safe to call from the
+	 * narrow phase's worker threads.
+	 * 
+	 * @param entB
+	 *            The entity to compare to
+	 * @return true if the bounding boxes intersect
+	 */
+	public boolean intersects(Entity entB) {
+		return boundingBox.intersects(entB.boundingBox);
+	}
+
 	/**
 	 * Disables the entity, which is then deleted from the entity cache and
 	 * garbage collected after one game loop cycle
@@ -126,35 +177,25 @@ public abstract class Entity implements EntitySuiteInterface {
 	}
 
 	/**
-	 * The method for drawing this entity, draws both the sprite and the
-	 * bounding boxes, if that portion of the code is not commented out
+	 * The method for capturing this entity to be drawn. Copies the sprite with
+	 * its last and current positions, then the health bar and any components,
+	 * into the snapshot the render thread draws from.
 	 */
 	@Override
-	public void draw(Graphics2D g2D, float interp) {
-		double interpX = (x - lastX) * interp + lastX;
-		double interpY = (y - lastY) * interp + lastY;
-		// Stores the incoming color of the graphics object
-		Color temp = g2D.getColor();
-		// Draws the sprite associated with this object
+	public void capture(RenderSnapshot snapshot) {
+		// Captures the sprite associated with this object
 		// TODO add a counter and boolean to eventually animate sprites here?
-		sprite.draw(g2D, interpX, interpY, movementVector.getTheta());
+		snapshot.addSprite(sprite, boundingBox.width, boundingBox.height,
+				lastX, lastY, x, y, movementVector.getTheta());
 		if (!this.isProjectile)
-			healthBar.draw(g2D, interp);
-		// Currently, sets the color of the bounding boxes to be drawn
-		g2D.setColor(Color.BLUE);
-		// Draws any components attached to hardpoints on this ship
-		for (HardPoint currPoint : hardpoints) {
+			healthBar.capture(snapshot);
+		// Captures any components attached to hardpoints on this ship
+		for (int i = 0; i < hardpoints.size(); i++) {
+			HardPoint currPoint = hardpoints.get(i);
 			if (currPoint.getComponent() != null) {
-				currPoint.getComponent().draw(g2D, interp);
+				currPoint.getComponent().capture(snapshot);
 			}
 		}
-		// TODO Comment or uncomment to hide or show bounding boxes for all
-		// entities
-		// g2D.draw3DRect((int) boundingBox.x, (int) boundingBox.y,
-		// (int) boundingBox.width, (int) boundingBox.height, true);
-		// Returns the graphics color to the original color so this draw method
-		// does not affect entire game graphics
-		g2D.setColor(temp);
 	}
 
 	/**
@@ -315,8 +356,8 @@ public abstract class Entity implements EntitySuiteInterface {
 		// arrived at its location
 		if (arrived) {
 			// Picks new random XY coordinates to fly to on the visible screen.
-			destX = GameEngine.getRNG() * GameEngine.displayWidth;
-			destY = GameEngine.getRNG() * GameEngine.displayHeight;
+			destX = rng.nextDouble() * GameEngine.displayWidth;
+			destY = rng.nextDouble() * GameEngine.displayHeight;
 			// Sets the destination in the movement vector, which then
 			// recalculates a heading.
 			movementVector.setxDest(destX);
@@ -335,6 +376,25 @@ public abstract class Entity implements EntitySuiteInterface {
 
 	}
 
+	/**
+	 * Moves this entity straight to a new position without stepping it, as if
+	 * it had been created there. The last position used for interpolation and
+	 * the bounding box are moved along with it.
+	 * 
+	 * @param x
+	 *            The new X coordinate for this entity
+	 * @param y
+	 *            The new Y coordinate for this entity
+	 */
+	protected void resetPosition(double x, double y) {
+		this.x = x;
+		this.y = y;
+		this.lastX = x;
+		this.lastY = y;
+		boundingBox.x = x;
+		boundingBox.y = y;
+	}
+
 	/**
 	 * Sets the current theta value for this entity. Currently it is used by the
 	 * movement vector to determine which direction the entity should face, and
@@ -393,6 +453,17 @@ public abstract class Entity implements EntitySuiteInterface {
 	 */
 	@Override
 	public void update() {
+		integrate();
+		commit();
+	}
+
+	/**
+	 * The first half of update(). Moves this entity and its hardpoints, and
+	 * lets its components decide what they want to do this cycle. Only ever
+	 * changes this entity and what is attached to it, so the game engine can
+	 * integrate many entities at once on different threads.
+	 */
+	public void integrate() {
 		// Moves this entity and picks the destination if need be
 		move();
 		// Rotates the bounding box so that collision detection still happens
@@ -401,8 +472,8 @@ public abstract class Entity implements EntitySuiteInterface {
 		// Updates all hardpoints attached to this entity. Each hardpoint has an
 		// update() method, which calls the update() method of the component
 		// attached to it, if there is one.
-		for (HardPoint currPoint : hardpoints) {
-			currPoint.update();
+		for (int i = 0; i < hardpoints.size(); i++) {
+			hardpoints.get(i).update();
 		}
 		// Updates the healthbar associated with this entity, as long as its not
 		// a projectile (projectiles don't have health!)
@@ -410,4 +481,16 @@ public abstract class Entity implements EntitySuiteInterface {
 			healthBar.update();
 		}
 	}
+
+	/**
+	 * The second half of update(). Carries out anything the components of
+	 * this entity asked for while integrating that affects the rest of the
+	 * game, such as firing projectiles. Always called on the game loop thread,
+	 * one entity after the other.
+	 */
+	public void commit() {
+		for (int i = 0; i < hardpoints.size(); i++) {
+			hardpoints.get(i).commit();
+		}
+	}
 }
@@ -0,0 +1,161 @@
+import java.util.Arrays;
+
+/**
+ * The entity store holds every entity in the game in one dense array, in place
+ * of a synchronized Vector. The hot loops walk it by index with no iterator
+ * and no locking, so it must only be changed by the simulation thread.
+ *
+ * The store never changes in the middle of a phase. Entities spawned while
+ * the entities are being walked (e.g. projectiles fired by turrets) go into a
+ * spawn buffer and only join the store when flushSpawns() is called between
+ * phases. Disabled entities are taken out all at once by removeDisabled(),
+ * which fills each hole with the last entity instead of shifting everything
+ * down, so removing an entity is O(1). This means the order of the entities
+ * changes as they are removed.
+ *
+ * @author Andrew
+ *
+ */
+public class EntityStore {
+
+	// The entities in the store
+	private Entity[] entities = new Entity[256];
+	private int count = 0;
+	// The entities spawned since the last flush, waiting to join the store
+	private Entity[] spawned = new Entity[64];
+	private int spawnCount = 0;
+	// The entities taken out by the last call to removeDisabled()
+	private Entity[] removed = new Entity[64];
+	private int removedCount = 0;
+
+	/**
+	 * Adds an entity to the store straight away. Only used while nothing is
+	 * walking the store; anything spawned during a phase should use spawn().
+	 *
+	 * @param ent
+	 *            The entity to add
+	 */
+	public void add(Entity ent) {
+		if (count == entities.length) {
+			entities = Arrays.copyOf(entities, count * 2);
+		}
+		entities[count++] = ent;
+	}
+
+	/**
+	 * Empties the store.
+	 */
+	public void clear() {
+		Arrays.fill(entities, 0, count, null);
+		count = 0;
+	}
+
+	/**
+	 * Moves every spawned entity into the store, after the entities already in
+	 * it, in the order they were spawned.
+	 */
+	public void flushSpawns() {
+		for (int i = 0; i < spawnCount; i++) {
+			add(spawned[i]);
+			spawned[i] = null;
+		}
+		spawnCount = 0;
+	}
+
+	/**
+	 * Returns the entity at the given index.
+	 *
+	 * @param index
+	 *            The index of the entity, from 0 to size() - 1
+	 * @return the entity
+	 */
+	public Entity get(int index) {
+		return entities[index];
+	}
+
+	/**
+	 * Returns the number of entities removed by the last call to
+	 * removeDisabled().
+	 *
+	 * @return the number of removed entities
+	 */
+	public int getRemovedCount() {
+		return removedCount;
+	}
+
+	/**
+	 * Returns one of the entities removed by the last call to
+	 * removeDisabled(), so whatever else was holding onto it can let go.
+	 *
+	 * @param index
+	 *            The index of the removed entity, from 0 to getRemovedCount() -
+	 *            1
+	 * @return the removed entity
+	 */
+	public Entity getRemoved(int index) {
+		return removed[index];
+	}
+
+	/**
+	 * Takes every disabled entity out of the store. Each one is replaced by
+	 * the last entity in the store, so nothing has to be shifted.
+	 */
+	public void removeDisabled() {
+		Arrays.fill(removed, 0, removedCount, null);
+		removedCount = 0;
+		int i = 0;
+		while (i < count) {
+			Entity ent = entities[i];
+			if (ent.isEnabled) {
+				i++;
+				continue;
+			}
+			if (removedCount == removed.length) {
+				removed = Arrays.copyOf(removed, removedCount * 2);
+			}
+			removed[removedCount++] = ent;
+			// The last entity moves into this slot, so the slot is looked at
+			// again
+			count--;
+			entities[i] = entities[count];
+			entities[count] = null;
+		}
+	}
+
+	/**
+	 * Puts an entity at the given index, replacing the one there. Used to
+	 * reorder the store.
+	 *
+	 * @param index
+	 *            The index to put the entity at
+	 * @param ent
+	 *            The entity
+	 */
+	public void set(int index, Entity ent) {
+		entities[index] = ent;
+	}
+
+	/**
+	 * Returns the number of entities in the store, not counting any spawned
+	 * entities still waiting for a flush.
+	 *
+	 * @return the number of entities
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Queues an entity to join the store at the next flushSpawns(). Safe to
+	 * call while the store is being walked.
+	 *
+	 * @param ent
+	 *            The entity to spawn
+	 */
+	public void spawn(Entity ent) {
+		if (spawnCount == spawned.length) {
+			spawned = Arrays.copyOf(spawned, spawnCount * 2);
+		}
+		spawned[spawnCount++] = ent;
+	}
+}
@@ -1,8 +1,6 @@
-import java.awt.Graphics2D;
-
 /**
  * This interface provides functionality commonly found in entities. This
- * includes the ability to draw the entity, a collision detection method, and an
+ * includes the ability to capture the entity for drawing, a collision detection method, and an
  * ifCollided method, which is used by the entity subclasses to determine how
  * that unique entity is affected by collision.
  * 
@@ -12,13 +10,14 @@ import java.awt.Graphics2D;
 public interface EntitySuiteInterface {
 
 	/**
-	 * This method draws the entity. Takes a graphics2D context and a
-	 * interpolation value for smooth rendering.
+	 * This method copies what is needed to draw the entity into a render
+	 * snapshot, which the render thread then draws with an interpolation
+	 * value for smooth rendering.
 	 * 
-	 * @param g2D
-	 * @param interpolation
+	 * @param snapshot
+	 *            The snapshot being filled this cycle
 	 */
-	public abstract void draw(Graphics2D g2D, float interpolation);
+	public abstract void capture(RenderSnapshot snapshot);
 
 	/**
 	 * This method is called by the GameEngine object to detect a collison for
@@ -0,0 +1,98 @@
+/**
+ * A projectile field that stores projectile positions, velocities and headings
+ * as floats, which halves the memory the field streams through each cycle
+ * at the cost of precision far from the origin.
+ * 
+ * @author Andrew
+ * 
+ */
+public class FloatProjectileField extends ProjectileField {
+
+	// Current XY position of each projectile
+	private float[] x;
+	private float[] y;
+	// The distance each projectile moves along X and Y each cycle
+	private float[] xVel;
+	private float[] yVel;
+	// The heading of each projectile, used to rotate it when drawn
+	private float[] theta;
+
+	/**
+	 * Creates an empty projectile field with room for the given number of
+	 * projectiles.
+	 * 
+	 * @param capacity
+	 *            How many projectiles to make room for up front
+	 */
+	public FloatProjectileField(int capacity) {
+		super(capacity);
+		grow(faction.length);
+	}
+
+	@Override
+	protected void grow(int capacity) {
+		x = copy(x, capacity);
+		y = copy(y, capacity);
+		xVel = copy(xVel, capacity);
+		yVel = copy(yVel, capacity);
+		theta = copy(theta, capacity);
+	}
+
+	private float[] copy(float[] old, int capacity) {
+		float[] grown = new float[capacity];
+		if (old != null) {
+			System.arraycopy(old, 0, grown, 0, count);
+		}
+		return grown;
+	}
+
+	@Override
+	protected void store(int i, double x, double y, double xVel, double yVel,
+			double theta) {
+		this.x[i] = (float) x;
+		this.y[i] = (float) y;
+		this.xVel[i] = (float) xVel;
+		this.yVel[i] = (float) yVel;
+		this.theta[i] = (float) theta;
+	}
+
+	@Override
+	protected void moveLast(int i) {
+		x[i] = x[count];
+		y[i] = y[count];
+		xVel[i] = xVel[count];
+		yVel[i] = yVel[count];
+		theta[i] = theta[count];
+	}
+
+	@Override
+	protected double getX(int i) {
+		return x[i];
+	}
+
+	@Override
+	protected double getY(int i) {
+		return y[i];
+	}
+
+	@Override
+	protected double getXVel(int i) {
+		return xVel[i];
+	}
+
+	@Override
+	protected double getYVel(int i) {
+		return yVel[i];
+	}
+
+	@Override
+	protected double getTheta(int i) {
+		return theta[i];
+	}
+
+	@Override
+	protected void setPosition(int i, double x, double y) {
+		this.x[i] = (float) x;
+		this.y[i] = (float) y;
+	}
+}
@@ -3,6 +3,8 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
 import java.awt.Rectangle;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
@@ -12,8 +14,18 @@ import java.awt.event.MouseMotionAdapter;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
-import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -86,6 +98,9 @@ public class GameEngine {
 			if (event.getKeyCode() == KeyEvent.VK_P) {
 				P_pressed = true;
 			}
+			if (event.getKeyCode() == KeyEvent.VK_F3) {
+				profilerVisible = !profilerVisible;
+			}
 		}
 
 		@Override
@@ -156,34 +171,98 @@ public class GameEngine {
 	// per cycle.
 	// This number is averaged against the total number of cycles
 	public static double collisionsChecked = 0;
+	// The seed the random numbers of this game come from, and the random
+	// numbers used on the game loop thread
+	private static long seed = System.nanoTime();
+	private static Random rng = new Random(seed);
 	// The height of the display in pixels
 	public static int displayHeight;
 	// The width of the display in pixels
 	public static int displayWidth;
-	// The Vector list which holds all entities in game
-	public static Vector<Entity> entityCache;
-	// The graphics object for the game...shouldn't need more than one
-	public static Graphics2D g2D;
+	// The store which holds all entities in game. Only touched by the
+	// simulation thread.
+	public static EntityStore entityCache;
+	// How far between the last cycle and the next the latest frame was drawn
 	public static float interpolation = 1;
 	// The X position of the mouse
 	public static double mouseX;
 	// The Y position of the mouse
 	public static double mouseY;
 	private static final int NANOSECONDS_PER_SECOND = 1000000000;
+	// The number of times the game logic is updated per second, and the time
+	// in nanoseconds between updates
+	private static final double GAME_HERTZ = 30.0;
+	private static final long TIME_BETWEEN_UPDATES = (long) (NANOSECONDS_PER_SECOND
+			/ GAME_HERTZ);
+	// The number of frames drawn per second, and the time in nanoseconds
+	// between frames
+	private static final double TARGET_FPS = 60;
+	private static final long TIME_BETWEEN_RENDERS =
+			(long) (NANOSECONDS_PER_SECOND / TARGET_FPS);
+	// The width and height of each tile the background is cut into
+	private static final int BACKGROUND_TILE_SIZE = 256;
+	// How long the first cycle waits on the sprite preload between printing
+	// its progress, in milliseconds
+	private static final long PRELOAD_PROGRESS_MILLIS = 500;
 	// Key to pause the game
 	public static boolean P_pressed;
 	// The player ship
 	public static PlayerShip player;
+	// Recycles disabled projectiles so turrets don't allocate one per shot
+	public static ProjectilePool projectilePool;
+	// Holds every shot fired when projectiles are kept as arrays instead of
+	// entities, null if the projectile field isn't in use
+	public static ProjectileField projectileField;
+	// How many cycles a projectile in the projectile field lives for
+	private static int projectileLifetime;
+
+	/**
+	 * Fires a projectile from a turret. The shot goes into the projectile field
+	 * if it is in use, otherwise a pooled projectile entity is spawned into
+	 * the entity store.
+	 * 
+	 * @param xPos
+	 *            the X coordinate of the source
+	 * @param yPos
+	 *            The Y coordinate of the source
+	 * @param xDest
+	 *            The X coordinate of the destination
+	 * @param yDest
+	 *            The Y coordinate of the destination
+	 * @param speed
+	 *            The speed of the projectile
+	 * @param faction
+	 *            The faction of whoever fired the projectile
+	 */
+	public static void fireProjectile(double xPos, double yPos, double xDest,
+			double yDest, double speed, int faction) {
+		if (projectileField != null) {
+			projectileField.spawn(xPos, yPos, xDest, yDest, speed, faction,
+					projectileLifetime);
+		} else {
+			entityCache.spawn(projectilePool.obtain(xPos, yPos, xDest, yDest,
+					speed, faction));
+		}
+	}
 
 	/**
-	 * A quick random number generator for the game
+	 * A quick random number generator for the game. Only for use on the game
+	 * loop thread; entities use their own random numbers while they update.
 	 * 
 	 * @return a random double between 0 and 1
 	 */
 	public static double getRNG() {
-		Random rng = new Random();
-		double randDouble = rng.nextDouble();
-		return randDouble;
+		return rng.nextDouble();
+	}
+
+	/**
+	 * Returns the seed the game's random numbers come from, which entities
+	 * also seed their own random numbers from.
+	 * 
+	 * @return the seed of this game
+	 */
+	public static long getSeed() {
+		return seed;
 	}
 
 	// Key for leftwards movement
@@ -199,80 +278,345 @@ public class GameEngine {
 	double numberCycles = 0;
 	// Whether the game loop is paused
 	boolean paused = false;
-	// The quadtree for storing entities in a 2D grid spanning the game space
-	Quadtree quad;
+	// Whether the simulation and render threads keep running
+	private volatile boolean running = true;
+	// Entities added from outside the simulation thread, waiting to join the
+	// entity store
+	private ConcurrentLinkedQueue<Entity> incoming =
+			new ConcurrentLinkedQueue<Entity>();
+	// Hands render snapshots from the simulation thread to the render thread
+	private SnapshotExchange snapshots = new SnapshotExchange();
+	// The background drawn behind everything
+	private Background background;
+	// Completes once every sprite has been preloaded, which the first cycle
+	// waits for; null once it has
+	private CompletableFuture<Void> spritesReady;
+	// The HUD drawn over everything, and the labels on it that show the state
+	// of the game
+	private Hud hud;
+	private HudLabel entitiesLabel;
+	private HudLabel cyclesLabel;
+	private HudLabel loseLabel;
+	private HudLabel winLabel;
+	// The number of hostile ships in the entity store, kept up to date as
+	// ships join and leave it so victory is known without searching it
+	private int hostileCount = 0;
+	// Whether every hostile ship has been destroyed
+	private boolean victory = false;
+	// The image a headless game draws each cycle into, null unless the
+	// settings ask for offscreen rendering
+	private BufferedImage offscreen;
+	// How long each cycle of the game logic takes
+	private TickStatistics tickStatistics = new TickStatistics();
+	// Time each phase of the game logic, which has a cycle to get done in
+	private PhaseTimer tickTimer = MetricsRegistry.get().timer("tick",
+			TIME_BETWEEN_UPDATES);
+	private PhaseTimer playerTimer = MetricsRegistry.get().timer(
+			"updatePlayer", TIME_BETWEEN_UPDATES);
+	private PhaseTimer entitiesTimer = MetricsRegistry.get().timer(
+			"updateEntities", TIME_BETWEEN_UPDATES);
+	private PhaseTimer collisionsTimer = MetricsRegistry.get().timer(
+			"checkCollisions", TIME_BETWEEN_UPDATES);
+	private PhaseTimer victoryTimer = MetricsRegistry.get().timer(
+			"checkVictory", TIME_BETWEEN_UPDATES);
+	// Time the frames and each phase of drawing one, which has a frame to get
+	// done in
+	private PhaseTimer frameTimer = MetricsRegistry.get().timer("frame",
+			TIME_BETWEEN_RENDERS);
+	private PhaseTimer renderTimer = MetricsRegistry.get().timer("render",
+			TIME_BETWEEN_RENDERS);
+	private PhaseTimer showTimer = MetricsRegistry.get().timer("show",
+			TIME_BETWEEN_RENDERS);
+	// Picks the quality frames are drawn at from how long they take to draw
+	private QualityGovernor qualityGovernor;
+	// Shows the phase timings over the HUD, and whether it is shown
+	private ProfilerOverlay profilerOverlay = new ProfilerOverlay(frameTimer,
+			tickTimer);
+	private volatile boolean profilerVisible;
+	// The number of entities that joined the entity store this cycle
+	private int spawnedThisCycle;
+	// Serves the metrics to be scraped, null unless the settings give it a
+	// port
+	private MetricsEndpoint metricsEndpoint;
+	// Counted every cycle for the metrics endpoint
+	private AtomicLong candidateCount = MetricsRegistry.get().counter(
+			"conquest_collision_candidates_total",
+			"Candidate pairs found by the broad phase");
+	private AtomicLong hitCount = MetricsRegistry.get().counter(
+			"conquest_collision_hits_total",
+			"Collisions found by the narrow phase and the projectile field");
+	private AtomicLong droppedCount = MetricsRegistry.get().counter(
+			"conquest_dropped_cycles_total",
+			"Game cycles skipped by the catch-up logic after falling behind");
+	// Measured once a second for the metrics endpoint
+	private AtomicLong projectileGauge = MetricsRegistry.get().gauge(
+			"conquest_live_projectiles",
+			"Projectiles in flight, as entities or in the projectile field");
+	private AtomicLong spriteCacheGauge = MetricsRegistry.get().gauge(
+			"conquest_sprite_cache_size", "Sprites in the sprite store cache");
+	private AtomicLong poolGauge = MetricsRegistry.get().gauge(
+			"conquest_projectile_pool_free",
+			"Disabled projectiles waiting in the pool to be reused");
+	// The number of entities of each type, reused each time they are counted
+	private HashMap<String, int[]> typeCounts = new HashMap<String, int[]>();
+	// The settings this engine was started with
+	private GameSettings settings;
+	// Narrows down which pairs of entities are checked for collisions
+	BroadPhase broadPhase;
+	// The candidate pairs found by the broad phase each cycle
+	private PairBuffer pairs = new PairBuffer();
+	// The threads that work is split across
+	private ForkJoinPool workerPool;
+	// Tests the candidate pairs and applies the collisions that happened
+	private NarrowPhase narrowPhase;
+	// Moves the entities each cycle, split across the worker threads
+	private IntegrationPhase integrationPhase;
 	// Key for backwards movement
 	public boolean S_pressed;
 	// Key to fire weapons
 	public boolean space_pressed;
-	int thisSecond;
 	// Key for forward movement
 	public boolean W_pressed;
 
 	/**
-	 * Public constructor for starting the game engine
+	 * Public constructor for starting the game engine, using the default
+	 * settings overridden by any system properties
 	 * 
 	 */
 	public GameEngine(int displayWidth, int displayHeight) {
+		this(displayWidth, displayHeight, GameSettings.fromSystemProperties());
+	}
+
+	/**
+	 * Public constructor for starting the game engine with the given settings
+	 * 
+	 */
+	public GameEngine(int displayWidth, int displayHeight,
+			GameSettings settings) {
+		this(displayWidth, displayHeight, settings, true);
+	}
+
+	/**
+	 * Constructor for starting the game engine with the given settings, which
+	 * can leave the game loop stopped so that a benchmark can drive the phases
+	 * of the engine itself on its own thread
+	 * 
+	 */
+	GameEngine(int displayWidth, int displayHeight, GameSettings settings,
+			boolean startLoop) {
 		GameEngine.displayWidth = displayWidth;
 		GameEngine.displayHeight = displayHeight;
-		display = new GameWindow(displayWidth, displayHeight);
-		quad = new Quadtree(0, new Rectangle(0, 0, displayWidth, displayHeight));
-		entityCache = new Vector<Entity>();
+		this.settings = settings;
+		profilerVisible = settings.profilerOverlay;
+		qualityGovernor = new QualityGovernor(TIME_BETWEEN_RENDERS,
+				settings.renderQuality, settings.adaptiveQuality);
+		if (settings.randomSeed != 0) {
+			seed = settings.randomSeed;
+		}
+		rng = new Random(seed);
+		// Sprites only need their images if something is going to be drawn
+		SpriteStore.get().setHeadless(
+				settings.headless && !settings.offscreenRender);
+		SpriteStore.get().setRotation(Math.max(0, settings.rotationSteps),
+				settings.rotationCacheMegabytes * 1024L * 1024);
+		workerPool = new ForkJoinPool(Math.max(1, settings.workerThreads));
+		// Loads every sprite in the background while the rest of the game is
+		// set up, which waits for any sprite it needs before then
+		spritesReady = SpriteStore.get().preload(workerPool);
+		if (!settings.headless) {
+			display = new GameWindow(displayWidth, displayHeight);
+		} else if (settings.offscreenRender) {
+			offscreen = new BufferedImage(displayWidth, displayHeight,
+					BufferedImage.TYPE_INT_RGB);
+		}
+		if (!settings.headless || settings.offscreenRender) {
+			background = createBackground(settings);
+			hud = createHud();
+		}
+		narrowPhase = new NarrowPhase(workerPool);
+		integrationPhase = new IntegrationPhase(workerPool);
+		CollisionLayers.get().setFactionCount(settings.factionCount);
+		broadPhase = createBroadPhase(settings);
+		entityCache = new EntityStore();
+		projectilePool = new ProjectilePool(settings.projectilePoolHighWater);
+		projectileField = null;
+		if (settings.projectileField) {
+			projectileField = ProjectileField.create(
+					settings.projectileFieldCapacity,
+					settings.projectileFieldSinglePrecision);
+		}
+		projectileLifetime = settings.projectileLifetime;
 		player = new PlayerShip();
 		entityCache.add(player);
-		initGameLoop();
+		if (startLoop) {
+			initGameLoop();
+		}
 	}
 
+	/**
+	 * Adds an entity to the game. Can be called from any thread; the entity
+	 * joins the entity store at the start of the next cycle.
+	 * 
+	 * @param ent
+	 *            The entity to add
+	 */
 	public void addEntity(Entity ent) {
-		entityCache.add(ent);
+		incoming.add(ent);
 	}
 
 	/**
+	 * Creates the background, which is the background image with a
+	 * starfield over it if the settings ask for one. The tiles are kept in
+	 * accelerated images when there is a display.
 	 * 
+	 * @param settings
+	 *            The settings the engine was started with
+	 * @return the background
 	 */
-	private void checkCollisions() {
-		// Clears the quadtree
-		quad.clear();
-		for (Entity currEntity : entityCache) {
-			// Inserts the entity into the quadtree if it is enabled
-			if (currEntity.isEnabled) {
-				quad.insert(currEntity);
-			}
-		}
-		for (Entity currEnt : entityCache) {
-			// Pulls all entities near current non-projectile entity from the
-			// quadtree and checks them
-			if (!currEnt.isProjectile) {
-				Vector<Entity> temp = quad.retrieve(currEnt);
-				for (Entity ent : temp) {
-					if (currEnt != ent) {
-						// Calls the collisions detection method for current
-						// entity against all eligible entities pulled from
-						// quadtree
-						currEnt.detectCollision(ent);
-					}
-				}
-			}
+	private Background createBackground(GameSettings settings) {
+		GraphicsConfiguration gc = null;
+		if (!GraphicsEnvironment.isHeadless()) {
+			gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration();
 		}
+		Background background = new Background();
+		background.addLayer(new ImageLayer(SpriteStore.get()
+				.getSprite("bkgd").getImage(), BACKGROUND_TILE_SIZE, 0.5, gc));
+		if (settings.starfield) {
+			background.addLayer(new StarfieldLayer(BACKGROUND_TILE_SIZE, 12,
+					0.8, seed, gc));
+		}
+		return background;
 	}
 
-	private void gameLoop() {
-		final double GAME_HERTZ = 30.0;
-		boolean running = true;
+	/**
+	 * Creates the HUD, with the labels bound to the state of the game kept so
+	 * their values can be set each frame.
+	 * 
+	 * @return the HUD
+	 */
+	private Hud createHud() {
+		Font font = new Font("Impact", 1, 20);
+		int left = (int) (displayWidth * .01);
+		Hud hud = new Hud();
+		entitiesLabel = hud.addLabel(new HudLabel("Entities on Screen: ",
+				font, Color.WHITE, left, (int) (displayHeight * .03)));
+		cyclesLabel = hud.addLabel(new HudLabel("Number of cycles so far: ",
+				font, Color.WHITE, left, (int) (displayHeight * .05)));
+		hud.addLabel(new HudLabel("Hull Integrity: ", font, Color.WHITE, left,
+				(int) (displayHeight * .96)));
+		loseLabel = hud.addLabel(new HudLabel("You Lose!", font, Color.WHITE,
+				displayWidth / 2, displayHeight / 2));
+		winLabel = hud.addLabel(new HudLabel("You Win!!", font, Color.WHITE,
+				displayWidth / 2, displayHeight / 2));
+		return hud;
+	}
 
-		final double TIME_BETWEEN_UPDATES = NANOSECONDS_PER_SECOND / GAME_HERTZ;
-		// Maximum times a game will update before a new render
+	/**
+	 * Creates the broad phase named in the settings, which is used to narrow
+	 * down the pairs of entities checked for collisions. With collision layers
+	 * on, each faction's projectiles get a broad phase of their own, and ships
+	 * only search the ones belonging to factions hostile to them.
+	 * 
+	 * @param settings
+	 *            The settings the engine was started with
+	 * @return the broad phase to use
+	 */
+	private BroadPhase createBroadPhase(GameSettings settings) {
+		String name = settings.broadPhase.toLowerCase();
+		if (!name.equals("quadtree") && !name.equals("loose")
+				&& !name.equals("tree") && !name.equals("linear")
+				&& !name.equals("grid")) {
+			System.err.println("Unknown broad phase " + settings.broadPhase
+					+ ", using the quadtree");
+			name = "quadtree";
+		}
+		if (!settings.collisionLayers) {
+			return createBroadPhase(name, settings);
+		}
+		BroadPhase[] buckets = new BroadPhase[CollisionLayers.get()
+				.getFactionCount()];
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = createBroadPhase(name, settings);
+		}
+		return new LayeredBroadPhase(buckets);
+	}
+
+	/**
+	 * Creates a single broad phase of the given kind.
+	 * 
+	 * @param name
+	 *            The kind of broad phase, as named in the settings
+	 * @param settings
+	 *            The settings the engine was started with
+	 * @return a new broad phase
+	 */
+	private BroadPhase createBroadPhase(String name, GameSettings settings) {
+		if (name.equals("grid")) {
+			return new SpatialHashGrid(settings.gridCellSize,
+					settings.gridBuckets);
+		}
+		// Entities live out to one display size past every edge before they
+		// are disabled, so the quadtrees cover all of that area
+		Rectangle activeArea = new Rectangle(-displayWidth, -displayHeight,
+				displayWidth * 3, displayHeight * 3);
+		if (name.equals("loose")) {
+			return new LooseQuadtree(activeArea);
+		}
+		if (name.equals("tree")) {
+			return new DynamicAabbTree();
+		}
+		if (name.equals("linear")) {
+			return new LinearQuadtree(activeArea, workerPool);
+		}
+		return new QuadtreeBroadPhase(activeArea);
+	}
+
+	/**
+	 * Checks every entity for collisions. The broad phase finds the pairs of
+	 * entities close enough to possibly collide, and only those pairs get the
+	 * exact collision check, which the narrow phase splits across the worker
+	 * threads. The broad phase itself stays on this thread. Left open to the
+	 * package so the benchmarks can time a whole pass.
+	 */
+	void checkCollisions() {
+		BroadPhaseEvent event = new BroadPhaseEvent();
+		event.begin();
+		broadPhase.update(entityCache);
+		pairs.clear();
+		broadPhase.findPairs(pairs);
+		event.end();
+		if (event.shouldCommit()) {
+			event.broadPhase = settings.broadPhase;
+			event.entityCount = entityCache.size();
+			event.nodeCount = broadPhase.getNodeCount();
+			event.candidatePairs = pairs.size();
+			event.commit();
+		}
+		collisionsChecked += narrowPhase.run(pairs);
+		candidateCount.lazySet(candidateCount.get() + pairs.size());
+		hitCount.lazySet(hitCount.get() + narrowPhase.getHitsLastRun());
+		// Tests all the shots in the projectile field against the ships in one
+		// pass
+		if (projectileField != null) {
+			projectileField.collide(entityCache);
+			hitCount.lazySet(hitCount.get()
+					+ projectileField.getHitsLastCycle());
+		}
+	}
+
+	/**
+	 * The simulation loop, run on its own thread. Updates the game logic at a
+	 * fixed rate, catching up by a few cycles at most if it falls behind, and
+	 * publishes a render snapshot after each batch of updates. It never waits
+	 * on the render thread, so a slow frame can't slow the game down.
+	 */
+	private void gameLoop() {
+		// Maximum times a game will update before a new snapshot is published
 		// TODO Set to 1 if worried about graphical errors more than perfect
 		// timing
 		final int MAX_UPDATES_BEFORE_RENDER = 3;
-		double lastUpdateTime = System.nanoTime();
-		double lastRenderTime = System.nanoTime();
-		final double TARGET_FPS = 60;
-		final double TARGET_TIME_BETWEEN_RENDERS = NANOSECONDS_PER_SECOND
-				/ TARGET_FPS;
-		// Simple way to find the FPS
-		int lastSecondTime = (int) (lastUpdateTime / NANOSECONDS_PER_SECOND);
+		long lastUpdateTime = System.nanoTime();
 		while (running) {
 			long currentTime = System.nanoTime();
 			int updateCount = 0;
@@ -285,173 +629,542 @@ public class GameEngine {
 					lastUpdateTime += TIME_BETWEEN_UPDATES;
 					updateCount++;
 				}
-
 				// If an update takes a long time, limits the number of catchup
 				// cycles
 				// If EXACT time is needed, this if statement should be removed
 				if (currentTime - lastUpdateTime > TIME_BETWEEN_UPDATES) {
+					droppedCount.lazySet(droppedCount.get()
+							+ (currentTime - lastUpdateTime - 1)
+							/ TIME_BETWEEN_UPDATES);
 					lastUpdateTime = currentTime - TIME_BETWEEN_UPDATES;
 				}
-				// The rendering block, interpolation is calculated for a smooth
-				// render of graphics
-				interpolation = Math
-						.min(1.0f,
-								(float) ((currentTime - lastUpdateTime) / TIME_BETWEEN_UPDATES));
-				// Renders all game objects
-				render(g2D);
-				lastRenderTime = currentTime;
-				// Updates the number of frames we got
-				thisSecond = (int) (lastUpdateTime / NANOSECONDS_PER_SECOND);
-				if (thisSecond > lastSecondTime) {
-					lastSecondTime = thisSecond;
+				if (updateCount > 0) {
+					publishSnapshot(lastUpdateTime);
+				}
+			} else {
+				// Time doesn't pass while paused, so there's nothing to catch
+				// up on afterwards
+				lastUpdateTime = currentTime;
+			}
+			// Sleeps until the next cycle is due. Saves on CPU hogging.
+			long sleepMillis = (lastUpdateTime + TIME_BETWEEN_UPDATES - System
+					.nanoTime()) / 1000000;
+			if (sleepMillis > 0) {
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * The render loop, run on its own thread. Draws the newest snapshot the
+	 * simulation has published, interpolated for however far the game is into
+	 * the next cycle, at the target frame rate. It never waits on the
+	 * simulation, so a slow cycle just means the same snapshot is drawn again.
+	 */
+	private void renderLoop() {
+		long nextRenderTime = System.nanoTime();
+		long lastFrameTime = 0;
+		while (running) {
+			RenderSnapshot snapshot = snapshots.getReadSnapshot();
+			// Nothing is drawn until the first cycle has been published
+			if (snapshot.numberCycles > 0) {
+				long currentTime = System.nanoTime();
+				if (lastFrameTime != 0) {
+					frameTimer.record(currentTime - lastFrameTime);
+				}
+				lastFrameTime = currentTime;
+				// The interpolation is calculated for a smooth render of
+				// graphics
+				interpolation = Math.max(0, Math.min(1.0f,
+						(float) (currentTime - snapshot.cycleTime)
+								/ TIME_BETWEEN_UPDATES));
+				render(snapshot, interpolation);
+			}
+			nextRenderTime += TIME_BETWEEN_RENDERS;
+			long sleepMillis = (nextRenderTime - System.nanoTime()) / 1000000;
+			if (sleepMillis > 0) {
+				try {
+					Thread.sleep(sleepMillis);
+				} catch (InterruptedException e) {
 				}
+			} else {
+				// Fell behind, so starts timing frames from now
+				nextRenderTime = System.nanoTime();
+			}
+		}
+	}
 
-				// Garbage collects some objects that aren't being used
-
-				System.gc();
-				// Yields the threat until it has been the target time between
-				// renders. Saves on CPU hogging.
-				while ((currentTime - lastRenderTime < TARGET_TIME_BETWEEN_RENDERS && currentTime
-						- lastUpdateTime < TIME_BETWEEN_UPDATES)
-						&& !paused) {
-					Thread.yield();
-
-					// This stops the app from consuming the entire CPU.
-					// Slightly
-					// less accurate, but worth it.
-					// Removing this line causes the game to work better, but
-					// CPU
-					// starts to work overtime
-					// TODO Causes stuttering on some OS's
-					try { Thread.sleep(1) ; } catch(Exception e) {}
-					numberCycles++;
-					currentTime = System.nanoTime();
+	/**
+	 * The simulation loop for a headless game, run on its own thread. Runs
+	 * cycles one after the other as fast as possible, or at a fixed multiple
+	 * of real time, and prints the cycle statistics every so often. Stops
+	 * after the set number of cycles, if there is one.
+	 */
+	private void headlessLoop() {
+		long cycleTime = 0;
+		if (settings.timeMultiple > 0) {
+			cycleTime = TIME_BETWEEN_UPDATES / settings.timeMultiple;
+		}
+		long statsTime = settings.statsInterval * (long) NANOSECONDS_PER_SECOND;
+		long lastUpdateTime = System.nanoTime();
+		long lastStatsTime = lastUpdateTime;
+		while (running) {
+			headlessCycle();
+			if (settings.maxCycles > 0 && numberCycles >= settings.maxCycles) {
+				running = false;
+			}
+			long currentTime = System.nanoTime();
+			if (statsTime > 0
+					&& (currentTime - lastStatsTime >= statsTime || !running)) {
+				System.out.println("Entities: " + entityCache.size() + " "
+						+ tickStatistics);
+				System.out.println(MetricsRegistry.get());
+				lastStatsTime = currentTime;
+			}
+			if (cycleTime > 0) {
+				// Sleeps until the next cycle is due, without catching up on
+				// more than a few cycles if one runs long
+				long dueTime = lastUpdateTime + cycleTime;
+				long earliestTime = currentTime - cycleTime * 3;
+				if (earliestTime > dueTime) {
+					droppedCount.lazySet(droppedCount.get()
+							+ (earliestTime - dueTime) / cycleTime);
+				}
+				lastUpdateTime = Math.max(dueTime, earliestTime);
+				long sleepNanos = lastUpdateTime - System.nanoTime();
+				if (sleepNanos > 0) {
+					try {
+						Thread.sleep(sleepNanos / 1000000,
+								(int) (sleepNanos % 1000000));
+					} catch (InterruptedException e) {
+					}
 				}
 			}
 		}
+		shutdown();
+	}
+
+	/**
+	 * Stops the worker threads and the metrics endpoint. Called when the
+	 * headless game loop ends, and by anything that built an engine without a
+	 * game loop once it is done with it.
+	 */
+	public void shutdown() {
+		workerPool.shutdown();
+		if (metricsEndpoint != null) {
+			metricsEndpoint.stop();
+			metricsEndpoint = null;
+		}
 	}
 
 	/**
-	 * Initializes a new thread which runs the game loop
+	 * Runs one cycle of a headless game. Updates the game logic, then draws
+	 * the cycle into the offscreen image if the settings ask for it. Left open
+	 * to the package so the scenario benchmarks can run a game one cycle at a
+	 * time.
+	 */
+	void headlessCycle() {
+		updateGameLogic();
+		if (offscreen != null) {
+			publishSnapshot(System.nanoTime());
+			long time = renderTimer.start();
+			Graphics2D g2D = offscreen.createGraphics();
+			draw(g2D, snapshots.getReadSnapshot(), 1);
+			g2D.dispose();
+			renderTimer.stop(time);
+		}
+	}
+
+	/**
+	 * Initializes the simulation thread, which runs the game loop, and the
+	 * render thread, which draws it. A headless game only has the simulation
+	 * thread.
 	 */
 	public void initGameLoop() {
-		Thread gameLoopThread = new Thread() {
+		if (settings.metricsPort > 0) {
+			try {
+				metricsEndpoint = new MetricsEndpoint(settings.metricsPort);
+			} catch (IOException e) {
+				System.err.println("Can't serve metrics on port "
+						+ settings.metricsPort + ": " + e.getMessage());
+			}
+		}
+		if (settings.headless) {
+			new Thread("Simulation") {
+				@Override
+				public void run() {
+					headlessLoop();
+				}
+			}.start();
+			return;
+		}
+		Thread gameLoopThread = new Thread("Simulation") {
 			@Override
 			public void run() {
 				gameLoop();
 			}
 		};
+		Thread renderThread = new Thread("Render") {
+			@Override
+			public void run() {
+				renderLoop();
+			}
+		};
 		gameLoopThread.start();
+		renderThread.start();
 	}
 
-	public void render(Graphics2D g2D) {
-		g2D = (Graphics2D) display.getBufferStrategy().getDrawGraphics();
-		g2D.setColor(Color.BLACK);
-		g2D.draw3DRect(0, 0, displayWidth, displayHeight, true);
-		// Renders the UI of the game (currently not that good obviously
-		renderUI(g2D);
-		g2D.setColor(Color.BLACK);
-		try {
-			for (Entity currEntity : entityCache) {
-				if (currEntity.isVisible()) {
-
-					currEntity.draw(g2D, interpolation);
-				}
+	/**
+	 * Copies everything the render thread needs to draw this cycle into a
+	 * render snapshot, and hands it over. Called on the simulation thread.
+	 * 
+	 * @param cycleTime
+	 *            The time in nanoseconds this cycle was due
+	 */
+	private void publishSnapshot(long cycleTime) {
+		RenderSnapshot snapshot = snapshots.getWriteSnapshot();
+		snapshot.clear();
+		for (int i = 0; i < entityCache.size(); i++) {
+			Entity currEntity = entityCache.get(i);
+			if (currEntity.isVisible()) {
+				currEntity.capture(snapshot);
 			}
-		} catch (NullPointerException e) {
-			return;
 		}
+		if (projectileField != null) {
+			projectileField.capture(snapshot);
+		}
+		// The state shown on the HUD
+		int onScreen = entityCache.size();
+		if (projectileField != null) {
+			onScreen += projectileField.size();
+		}
+		snapshot.entityCount = onScreen;
+		snapshot.numberCycles = numberCycles;
+		snapshot.playerAlive = player.isEnabled();
+		snapshot.victory = victory;
+		snapshot.collisionsChecked = collisionsChecked;
+		snapshot.cycleTime = cycleTime;
+		snapshots.publish();
+	}
+
+	/**
+	 * Draws a snapshot to the screen. Called on the render thread.
+	 * 
+	 * @param snapshot
+	 *            The newest snapshot published by the simulation
+	 * @param interp
+	 *            How far the game is into the next cycle, from 0 to 1
+	 */
+	public void render(RenderSnapshot snapshot, float interp) {
+		long startTime = renderTimer.start();
+		Graphics2D g2D = (Graphics2D) display.getBufferStrategy()
+				.getDrawGraphics();
+		draw(g2D, snapshot, interp);
 		g2D.dispose();
+		renderTimer.stop(startTime);
+		long time = showTimer.start();
 		display.getBufferStrategy().show();
+		time = showTimer.stop(time);
+		// Drawing and showing the frame is the part the quality changes
+		qualityGovernor.recordFrame(time - startTime);
 	}
 
 	/**
+	 * Draws a snapshot, UI and all, to a graphics context.
+	 * 
 	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param snapshot
+	 *            The snapshot to draw
+	 * @param interp
+	 *            How far the game is into the next cycle, from 0 to 1
 	 */
-	private void renderUI(Graphics2D g2D) {
-		g2D.setFont(new Font("Impact", 1, 20));
-		Sprite bkgd;
-		bkgd = SpriteStore.get().getSprite("bkgd");
-		bkgd.draw(g2D, 0, 0, 0);
-		g2D.setColor(Color.WHITE);
-		// UI for entities on screen and collision checks
-		g2D.drawString("Entities on Screen: " + entityCache.size(),
-				(int) (displayWidth * .01), (int) (displayHeight * .03));
+	private void draw(Graphics2D g2D, RenderSnapshot snapshot, float interp) {
+		g2D.setColor(Color.BLACK);
+		g2D.draw3DRect(0, 0, displayWidth, displayHeight, true);
+		// The view doesn't scroll, so the camera stays at the origin
+		background.draw(g2D, 0, 0, displayWidth, displayHeight);
+		snapshot.draw(g2D, interp, qualityGovernor.getTier());
+		// Renders the UI of the game over everything else
+		renderUI(g2D, snapshot);
+		if (profilerVisible) {
+			profilerOverlay.draw(g2D, displayWidth - 390, 10,
+					snapshot.collisionsChecked / snapshot.numberCycles,
+					QualityGovernor.getName(qualityGovernor.getTier()));
+		}
+	}
+
+	/**
+	 * Binds the state of the game in a snapshot to the labels on the HUD, then
+	 * draws it. Only labels whose values changed are drawn again.
+	 * 
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param snapshot
+	 *            The snapshot being drawn
+	 */
+	private void renderUI(Graphics2D g2D, RenderSnapshot snapshot) {
+		entitiesLabel.setValue(snapshot.entityCount);
 		/*g2D.drawString("Average Collision Checks per cycle: "
 				+ (collisionsChecked / numberCycles),
 				(int) (displayWidth * .03), (int) (displayHeight * .05));*/
-		g2D.drawString("Number of cycles so far: " + numberCycles,
-				(int) (displayWidth * .01), (int) (displayHeight * .05));
-		g2D.drawString( "Hull Integrity: ",(int)(displayWidth * .01), (int)(displayHeight * .96) );
-		if (!player.isEnabled()) {
-			g2D.drawString("You Lose!", displayWidth / 2, displayHeight / 2);
-		}
-		
-		if (!checkVictory())
-		{
-			g2D.drawString("You Win!!", displayWidth / 2, displayHeight / 2);
-			
-		}
+		cyclesLabel.setValue((long) snapshot.numberCycles);
+		loseLabel.setVisible(!snapshot.playerAlive);
+		winLabel.setVisible(snapshot.victory);
+		hud.draw(g2D);
 	}
 
 	private void updateEntities() {
-		// The tolerance for how far off screen an entity can go before it is
-		// disabled
-		for (int i = 0; i < entityCache.size(); i++) {
+		// Moves every entity, split across the worker threads. Entities more
+		// than a screen off any side are disabled.
+		integrationPhase.run(entityCache, -displayWidth, -displayHeight,
+				displayWidth * 2, displayHeight * 2);
+		// Carries out what the entities decided to do, one after the other.
+		// Anything fired here is spawned, joins the store once every entity
+		// has committed, and first moves next cycle.
+		int size = entityCache.size();
+		for (int i = 0; i < size; i++) {
 			Entity currEntity = entityCache.get(i);
-			// Disables any entity that goes over the sides of the screen
-			if (currEntity.getX() > displayWidth * 2
-					|| currEntity.getY() > displayHeight * 2
-					|| currEntity.getX() < 0 - displayWidth
-					|| currEntity.getY() < -displayHeight) {
-				//TODO currently commented out so entities aren't disabled when they go off screen 
-				currEntity.disable();
-			}
 			if (currEntity.isEnabled()) {
-				currEntity.update();
+				currEntity.commit();
 			}
-			if (!currEntity.isEnabled()) {
-				entityCache.removeElementAt(i);
-				i--;
+		}
+		int sizeBeforeSpawns = entityCache.size();
+		entityCache.flushSpawns();
+		spawnedThisCycle += entityCache.size() - sizeBeforeSpawns;
+		// Takes out every disabled entity in one pass
+		entityCache.removeDisabled();
+		if (spawnedThisCycle > 0 || entityCache.getRemovedCount() > 0) {
+			SpawnEvent event = new SpawnEvent();
+			if (event.isEnabled()) {
+				event.spawned = spawnedThisCycle;
+				event.despawned = entityCache.getRemovedCount();
+				event.entityCount = entityCache.size();
+				event.commit();
+			}
+		}
+		for (int i = 0; i < entityCache.getRemovedCount(); i++) {
+			Entity currEntity = entityCache.getRemoved(i);
+			broadPhase.remove(currEntity);
+			countHostile(currEntity, -1);
+			// Disabled projectiles go back to the pool to be fired again
+			if (currEntity.isProjectile) {
+				projectilePool.release((Projectile) currEntity);
 			}
 		}
+		// Steps all the shots in the projectile field, which are disabled
+		// using the same bounds as the entities above
+		if (projectileField != null) {
+			projectileField.step(-displayWidth, -displayHeight,
+					displayWidth * 2, displayHeight * 2);
+		}
 		// Run collision detection method
+		long time = collisionsTimer.start();
 		checkCollisions();
+		collisionsTimer.stop(time);
+		if (settings.spatialUpdateOrder) {
+			sortEntityCache();
+		}
+	}
+
+	/**
+	 * Measures the gauges for the metrics endpoint: the number of entities of
+	 * each type, the projectiles in flight, the size of the sprite cache and
+	 * the projectiles waiting in the pool.
+	 */
+	private void updateGauges() {
+		for (int[] count : typeCounts.values()) {
+			count[0] = 0;
+		}
+		int projectiles = 0;
+		for (int i = 0; i < entityCache.size(); i++) {
+			Entity ent = entityCache.get(i);
+			String type = ent.getClass().getSimpleName();
+			int[] count = typeCounts.get(type);
+			if (count == null) {
+				count = new int[1];
+				typeCounts.put(type, count);
+			}
+			count[0]++;
+			if (ent.isProjectile) {
+				projectiles++;
+			}
+		}
+		for (Map.Entry<String, int[]> entry : typeCounts.entrySet()) {
+			MetricsRegistry.get().gauge(
+					"conquest_entities{type=\"" + entry.getKey() + "\"}",
+					"Entities in the entity store by type").lazySet(
+					entry.getValue()[0]);
+		}
+		if (projectileField != null) {
+			projectiles += projectileField.size();
+		}
+		projectileGauge.lazySet(projectiles);
+		spriteCacheGauge.lazySet(SpriteStore.get().getCacheSize());
+		poolGauge.lazySet(projectilePool.getFreeCount());
+	}
+
+	/**
+	 * Puts the entity store into the order the linear quadtree sorted it into,
+	 * so that next cycle entities close to each other are updated one after
+	 * the other. With collision layers on, the ships keep their order and go
+	 * first, followed by the projectiles of each faction in the order their
+	 * own linear quadtree sorted them into. Skipped if any entity came or went
+	 * since the sort, or if the broad phase isn't made of linear quadtrees.
+	 */
+	private void sortEntityCache() {
+		if (broadPhase instanceof LinearQuadtree) {
+			LinearQuadtree linear = (LinearQuadtree) broadPhase;
+			if (linear.getSortedCount() == entityCache.size()) {
+				copySorted(linear, 0);
+			}
+			return;
+		}
+		if (!(broadPhase instanceof LayeredBroadPhase)) {
+			return;
+		}
+		LayeredBroadPhase layered = (LayeredBroadPhase) broadPhase;
+		EntityStore ships = layered.getShips();
+		int size = ships.size();
+		for (int i = 0; i < layered.getBucketCount(); i++) {
+			if (!(layered.getBucket(i) instanceof LinearQuadtree)) {
+				return;
+			}
+			size += ((LinearQuadtree) layered.getBucket(i)).getSortedCount();
+		}
+		if (size != entityCache.size()) {
+			return;
+		}
+		for (int i = 0; i < ships.size(); i++) {
+			entityCache.set(i, ships.get(i));
+		}
+		int next = ships.size();
+		for (int i = 0; i < layered.getBucketCount(); i++) {
+			next = copySorted((LinearQuadtree) layered.getBucket(i), next);
+		}
+	}
+
+	/**
+	 * Copies the sorted order of a linear quadtree into the entity store.
+	 * 
+	 * @param linear
+	 *            The linear quadtree sorted this cycle
+	 * @param start
+	 *            Where in the entity store the first sorted entity goes
+	 * @return the position after the last sorted entity
+	 */
+	private int copySorted(LinearQuadtree linear, int start) {
+		int size = linear.getSortedCount();
+		for (int i = 0; i < size; i++) {
+			entityCache.set(start + i, linear.getSorted(i));
+		}
+		return start + size;
+	}
+
+	/**
+	 * Waits for the sprite preload to finish. A preload that is still going
+	 * after a short while has its progress printed every so often until it
+	 * is done, so a slow start doesn't look like a hung game.
+	 */
+	private void waitForSprites() {
+		SpriteStore store = SpriteStore.get();
+		while (true) {
+			try {
+				spritesReady.get(PRELOAD_PROGRESS_MILLIS,
+						TimeUnit.MILLISECONDS);
+				return;
+			} catch (TimeoutException e) {
+				System.out.println("Loading sprites: "
+						+ store.getPreloadedCount() + "/"
+						+ store.getPreloadTotal());
+			} catch (InterruptedException e) {
+			} catch (ExecutionException e) {
+				// Sprites that fail are already replaced with placeholders,
+				// so this is only ever a bug
+				throw new IllegalStateException(e.getCause());
+			}
+		}
 	}
 
 	/**
 	 * The super method for updating all game logic
 	 */
 	private void updateGameLogic() {
+		if (spritesReady != null) {
+			// Nothing is decoded in the middle of the game, so the first cycle
+			// waits for the preload to finish
+			waitForSprites();
+			spritesReady = null;
+		}
+		long startTime = tickTimer.start();
+		// Brings in any entities added from other threads
+		Entity added;
+		spawnedThisCycle = 0;
+		while ((added = incoming.poll()) != null) {
+			entityCache.add(added);
+			countHostile(added, 1);
+			spawnedThisCycle++;
+		}
 		// Updates the player and checks for input etc
+		long time = playerTimer.start();
 		updatePlayer();
+		playerTimer.stop(time);
 		/*
 		 * Updates all entities in the following manner: 1) Checks for
 		 * collisions 2) Disables any entities that went off screen 3) Calls the
 		 * update method on any entities that are not disabled 4) Removes all
 		 * disabled entities
 		 */
+		time = entitiesTimer.start();
 		updateEntities();
-		checkVictory();
+		entitiesTimer.stop(time);
+		time = victoryTimer.start();
+		victory = checkVictory();
+		victoryTimer.stop(time);
+		numberCycles++;
+		if (metricsEndpoint != null && numberCycles % GAME_HERTZ == 0) {
+			updateGauges();
+		}
+		time = tickTimer.stop(startTime);
+		tickStatistics.record(startTime, time);
 	}
 
-	/**Checks victory conditions by looping through entity cache and seeing if all
-	 * hostile entities were destroyed
+	/**
+	 * Returns the statistics of how long each cycle of the game logic takes,
+	 * which can be read from any thread.
 	 * 
+	 * @return the cycle statistics
+	 */
+	public TickStatistics getTickStatistics() {
+		return tickStatistics;
+	}
+
+	/**
+	 * Checks victory conditions, which are met once every hostile ship has
+	 * been destroyed.
+	 * 
+	 * @return whether the player has won
 	 */
 	private boolean checkVictory() {
-		boolean found = false;
-		for (Entity currEnt : entityCache)
-		{
-			if (!currEnt.isProjectile())
-			{
-				if (((Ship)currEnt).isHostile)
-				{
-					found = true;
-				}
-			}	
+		return hostileCount == 0;
+	}
+
+	/**
+	 * Keeps count of the hostile ships as entities join and leave the entity
+	 * store.
+	 * 
+	 * @param ent
+	 *            The entity joining or leaving
+	 * @param change
+	 *            1 if it is joining, -1 if it is leaving
+	 */
+	private void countHostile(Entity ent, int change) {
+		if (!ent.isProjectile() && ((Ship) ent).isHostile()) {
+			hostileCount += change;
 		}
-		return found; 
 	}
 
 	private void updatePlayer() {
@@ -0,0 +1,240 @@
+import java.awt.GraphicsEnvironment;
+import java.util.Properties;
+
+/**
+ * This class holds the settings the game engine is started with. Every setting
+ * has a sensible default, and any of them can be overridden at startup with a
+ * system property of the form -Dconquest.settingName=value, so different
+ * scenarios can be tried without recompiling the game.
+ *
+ * @author Andrew
+ *
+ */
+public class GameSettings {
+
+	// The prefix shared by every property read by these settings
+	private static final String PROPERTY_PREFIX = "conquest.";
+
+	/**
+	 * Builds a settings object from the defaults, overridden by any matching
+	 * system properties.
+	 *
+	 * @return the settings to start the engine with
+	 */
+	public static GameSettings fromSystemProperties() {
+		return fromProperties(System.getProperties());
+	}
+
+	/**
+	 * Builds a settings object from the defaults, overridden by any matching
+	 * properties, e.g. ones loaded from a scenario file.
+	 *
+	 * @param properties
+	 *            The properties to read the settings from
+	 * @return the settings to start the engine with
+	 */
+	public static GameSettings fromProperties(Properties properties) {
+		GameSettings settings = new GameSettings();
+		settings.projectilePoolHighWater = readInt(properties,
+				"projectilePoolHighWater", settings.projectilePoolHighWater);
+		settings.projectileField = readBoolean(properties, "projectileField",
+				settings.projectileField);
+		settings.projectileFieldCapacity = readInt(properties,
+				"projectileFieldCapacity", settings.projectileFieldCapacity);
+		settings.projectileFieldSinglePrecision = readBoolean(properties,
+				"projectileFieldSinglePrecision",
+				settings.projectileFieldSinglePrecision);
+		settings.projectileLifetime = readInt(properties, "projectileLifetime",
+				settings.projectileLifetime);
+		settings.broadPhase = readString(properties, "broadPhase",
+				settings.broadPhase);
+		settings.gridCellSize = readInt(properties, "gridCellSize",
+				settings.gridCellSize);
+		settings.gridBuckets = readInt(properties, "gridBuckets",
+				settings.gridBuckets);
+		settings.spatialUpdateOrder = readBoolean(properties,
+				"spatialUpdateOrder", settings.spatialUpdateOrder);
+		settings.workerThreads = readInt(properties, "workerThreads",
+				settings.workerThreads);
+		settings.collisionLayers = readBoolean(properties, "collisionLayers",
+				settings.collisionLayers);
+		settings.factionCount = readInt(properties, "factionCount",
+				settings.factionCount);
+		settings.randomSeed = readInt(properties, "randomSeed",
+				settings.randomSeed);
+		settings.headless = readBoolean(properties, "headless",
+				settings.headless);
+		settings.offscreenRender = readBoolean(properties, "offscreenRender",
+				settings.offscreenRender);
+		settings.timeMultiple = readInt(properties, "timeMultiple",
+				settings.timeMultiple);
+		settings.maxCycles = readInt(properties, "maxCycles",
+				settings.maxCycles);
+		settings.statsInterval = readInt(properties, "statsInterval",
+				settings.statsInterval);
+		settings.profilerOverlay = readBoolean(properties, "profilerOverlay",
+				settings.profilerOverlay);
+		settings.metricsPort = readInt(properties, "metricsPort",
+				settings.metricsPort);
+		settings.rotationSteps = readInt(properties, "rotationSteps",
+				settings.rotationSteps);
+		settings.rotationCacheMegabytes = readInt(properties,
+				"rotationCacheMegabytes", settings.rotationCacheMegabytes);
+		settings.renderQuality = readInt(properties, "renderQuality",
+				settings.renderQuality);
+		settings.adaptiveQuality = readBoolean(properties, "adaptiveQuality",
+				settings.adaptiveQuality);
+		settings.starfield = readBoolean(properties, "starfield",
+				settings.starfield);
+		return settings;
+	}
+
+	/**
+	 * Reads a text setting from the properties, falling back to the default
+	 * if the property is missing.
+	 *
+	 * @param properties
+	 *            The properties to read the setting from
+	 * @param name
+	 *            The name of the setting, without the property prefix
+	 * @param defaultValue
+	 *            The value to use if the property is not set
+	 * @return the value of the setting
+	 */
+	protected static String readString(Properties properties, String name,
+			String defaultValue) {
+		String value = properties.getProperty(PROPERTY_PREFIX + name);
+		if (value == null) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	/**
+	 * Reads a true/false setting from the properties, falling back to the
+	 * default if the property is missing.
+	 *
+	 * @param properties
+	 *            The properties to read the setting from
+	 * @param name
+	 *            The name of the setting, without the property prefix
+	 * @param defaultValue
+	 *            The value to use if the property is not set
+	 * @return the value of the setting
+	 */
+	protected static boolean readBoolean(Properties properties, String name,
+			boolean defaultValue) {
+		String value = properties.getProperty(PROPERTY_PREFIX + name);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * Reads an integer setting from the properties, falling back to the
+	 * default if the property is missing or is not a number.
+	 *
+	 * @param properties
+	 *            The properties to read the setting from
+	 * @param name
+	 *            The name of the setting, without the property prefix
+	 * @param defaultValue
+	 *            The value to use if the property is not set
+	 * @return the value of the setting
+	 */
+	protected static int readInt(Properties properties, String name,
+			int defaultValue) {
+		String value = properties.getProperty(PROPERTY_PREFIX + name);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("Ignoring bad value for " + PROPERTY_PREFIX
+					+ name + ": " + value);
+			return defaultValue;
+		}
+	}
+
+	// The most disabled projectiles the projectile pool keeps around for
+	// reuse. Projectiles released beyond this are left to the garbage
+	// collector.
+	public int projectilePoolHighWater = 2048;
+	// Whether turrets fire into the projectile field instead of creating a
+	// projectile entity per shot. Meant for battles with a huge number of
+	// shots in the air.
+	public boolean projectileField = false;
+	// How many projectiles the projectile field makes room for up front
+	public int projectileFieldCapacity = 4096;
+	// Whether the projectile field stores positions as floats instead of
+	// doubles
+	public boolean projectileFieldSinglePrecision = false;
+	// How many cycles a projectile in the projectile field lives for
+	public int projectileLifetime = 300;
+	// Which broad phase narrows down the pairs checked for collisions, either
+	// "quadtree", "loose" for the incremental loose quadtree, "tree" for the
+	// dynamic AABB tree, "linear" for the Morton code linear quadtree, or
+	// "grid" for the spatial hash grid
+	public String broadPhase = "quadtree";
+	// The size in pixels of each cell of the spatial hash grid
+	public int gridCellSize = 128;
+	// The number of buckets the spatial hash grid hashes its cells into
+	public int gridBuckets = 4096;
+	// Whether the entity cache is put into the order of the linear quadtree
+	// each cycle, so entities near each other are updated one after the
+	// other. Only used with the linear quadtree, and not when collision
+	// layers split it up by faction.
+	public boolean spatialUpdateOrder = false;
+	// The number of threads work is split across
+	public int workerThreads = Runtime.getRuntime().availableProcessors();
+	// Whether the broad phase keeps each faction's projectiles apart, so ships
+	// are never paired with projectiles that can't hurt them. The dynamic
+	// AABB tree's pair cache isn't used when this is on.
+	public boolean collisionLayers = true;
+	// The number of factions, each hostile to all the others. There are always
+	// at least the player and hostile factions.
+	public int factionCount = 2;
+	// The seed every random number in the game comes from, so a battle can be
+	// played out the same way again. 0 picks a seed from the clock.
+	public int randomSeed = 0;
+	// Whether the game runs without a window, e.g. on a build or soak server.
+	// Nothing is drawn, and sprites only have their sizes read. On by default
+	// when Java has no display.
+	public boolean headless = GraphicsEnvironment.isHeadless();
+	// Whether a headless game still draws every cycle into an offscreen image
+	// the size of the window, so the cost of rendering can be measured
+	// without a display. Sprites are loaded with their images when this is
+	// on.
+	public boolean offscreenRender = false;
+	// How many times faster than real time a headless game runs, or 0 to run
+	// cycles one after the other as fast as possible
+	public int timeMultiple = 0;
+	// The number of cycles a headless game runs for before stopping, or 0 to
+	// run until the process is stopped
+	public int maxCycles = 0;
+	// How often in seconds a headless game prints its cycle statistics, or 0
+	// to never print them
+	public int statsInterval = 10;
+	// Whether the profiler overlay, which shows how long each phase of the
+	// game is taking, is shown from the start. F3 shows and hides it.
+	public boolean profilerOverlay = false;
+	// The local port the metrics endpoint serves the game's metrics on in the
+	// Prometheus text format, at /metrics, or 0 to not serve them
+	public int metricsPort = 0;
+	// The number of pre-rotated copies of each sprite in a full turn, which
+	// sprites are drawn from instead of being rotated as they are drawn, or 0
+	// to rotate them as they are drawn
+	public int rotationSteps = 64;
+	// The memory in megabytes the pre-rotated copies may take up between them
+	public int rotationCacheMegabytes = 64;
+	// The quality tier frames start out drawn at, from 0 for the best to 3
+	// for the worst. See QualityGovernor.
+	public int renderQuality = 0;
+	// Whether the quality tier drops when frames take too long to draw and
+	// rises again when there is time to spare, or stays where it started
+	public boolean adaptiveQuality = true;
+	// Whether a starfield is drawn over the background image
+	public boolean starfield = true;
+}
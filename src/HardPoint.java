@@ -271,4 +271,14 @@ public class HardPoint {
 		component.update();
 	}
 
+	/**
+	 * Lets the component attached to this hardpoint carry out whatever it
+	 * decided to do during update(). Called on the game loop thread.
+	 */
+	public void commit() {
+		if (component != null) {
+			component.commit();
+		}
+	}
+
 }
@@ -0,0 +1,44 @@
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The HUD is drawn over everything else in the game, as a set of labels which
+ * each keep their text drawn into an image. The values shown are bound to the
+ * labels every frame, but a label's text is only drawn again when its value
+ * changes, so most frames the HUD is nothing but a handful of image copies.
+ *
+ * Only ever used by the thread that draws.
+ *
+ * @author Andrew
+ *
+ */
+public class Hud {
+
+	// Every label, in the order they are drawn
+	private List<HudLabel> labels = new ArrayList<HudLabel>();
+
+	/**
+	 * Adds a label to the HUD, drawn over the labels added so far.
+	 *
+	 * @param label
+	 *            The label to add
+	 * @return the label, so it can be kept to bind values to
+	 */
+	public HudLabel addLabel(HudLabel label) {
+		labels.add(label);
+		return label;
+	}
+
+	/**
+	 * Draws every visible label.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 */
+	public void draw(Graphics2D g2D) {
+		for (int i = 0; i < labels.size(); i++) {
+			labels.get(i).draw(g2D);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+
+/**
+ * A HUD label is a line of text on the HUD, made of a fixed part and an
+ * optional value bound to it, e.g. "Entities on Screen: " and the number of
+ * entities. The label keeps its text drawn into an image, which is only drawn
+ * again when the value changes, so each frame the label costs one copy of
+ * that image rather than building a string and laying out its glyphs. The
+ * image is drawn over in place when the value changes, so a value that
+ * changes every frame doesn't need a new image every frame.
+ *
+ * Only ever used by the thread that draws.
+ *
+ * @author Andrew
+ *
+ */
+public class HudLabel {
+
+	// The extra width given to the image, so a value that grows by a digit
+	// or two still fits
+	private static final int SLACK = 32;
+
+	// The text before the value
+	private String prefix;
+	// The font and colour the label is written in
+	private Font font;
+	private Color color;
+	// Where the label is drawn, the left end of its baseline
+	private int x;
+	private int y;
+	// The value shown after the prefix, and whether one has been bound yet
+	private long value;
+	private boolean hasValue = false;
+	// Whether the label is drawn
+	private boolean visible = true;
+	// The text of the label is built and laid out from these, so drawing it
+	// again doesn't make a new string
+	private StringBuilder text = new StringBuilder();
+	private char[] chars = new char[0];
+	// The text of the label drawn into an image, whether the text has
+	// changed since, and the distance from the top of the image to the
+	// baseline
+	private Image image;
+	private boolean dirty = true;
+	private int ascent;
+
+	/**
+	 * Creates a HUD label.
+	 *
+	 * @param prefix
+	 *            The text of the label, before any value
+	 * @param font
+	 *            The font the label is written in
+	 * @param color
+	 *            The colour the label is written in
+	 * @param x
+	 *            The X coordinate of the left end of the baseline
+	 * @param y
+	 *            The Y coordinate of the baseline
+	 */
+	public HudLabel(String prefix, Font font, Color color, int x, int y) {
+		this.prefix = prefix;
+		this.font = font;
+		this.color = color;
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * Binds a value to the label, shown after the prefix. The text is only
+	 * drawn again if the value has changed.
+	 *
+	 * @param value
+	 *            The value to show
+	 */
+	public void setValue(long value) {
+		if (hasValue && this.value == value) {
+			return;
+		}
+		this.value = value;
+		hasValue = true;
+		invalidate();
+	}
+
+	/**
+	 * @param visible
+	 *            Whether the label is drawn
+	 */
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+	}
+
+	/**
+	 * Draws the label, drawing its text into its image first if the text has
+	 * changed.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 */
+	public void draw(Graphics2D g2D) {
+		if (!visible) {
+			return;
+		}
+		if (dirty) {
+			rasterize(g2D.getFontMetrics(font));
+		}
+		g2D.drawImage(image, x, y - ascent, null);
+	}
+
+	/**
+	 * Marks the text as changed, so it is drawn again before the label is
+	 * next drawn.
+	 */
+	private void invalidate() {
+		dirty = true;
+	}
+
+	/**
+	 * Draws the text of the label into its image, over the old text, making a
+	 * new image only if the text no longer fits.
+	 */
+	private void rasterize(FontMetrics metrics) {
+		text.setLength(0);
+		text.append(prefix);
+		if (hasValue) {
+			text.append(value);
+		}
+		int length = text.length();
+		if (chars.length < length) {
+			chars = new char[length];
+		}
+		text.getChars(0, length, chars, 0);
+		ascent = metrics.getAscent();
+		int width = Math.max(1, metrics.charsWidth(chars, 0, length));
+		int height = Math.max(1, metrics.getAscent() + metrics.getDescent());
+		if (image == null || image.getWidth(null) < width
+				|| image.getHeight(null) != height) {
+			if (image != null) {
+				image.flush();
+			}
+			image = SpriteStore.get().createImage(width + SLACK, height,
+					Transparency.TRANSLUCENT);
+		}
+		dirty = false;
+		Graphics2D g2D = (Graphics2D) image.getGraphics();
+		// Clears the old text
+		g2D.setComposite(AlphaComposite.Clear);
+		g2D.fillRect(0, 0, image.getWidth(null), height);
+		g2D.setComposite(AlphaComposite.SrcOver);
+		g2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+				RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g2D.setFont(font);
+		g2D.setColor(color);
+		g2D.drawChars(chars, 0, length, 0, ascent);
+		g2D.dispose();
+	}
+}
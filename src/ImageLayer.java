@@ -0,0 +1,42 @@
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+
+/**
+ * A background layer made from an image, such as the nebula behind the game,
+ * which repeats once the camera scrolls past its edges.
+ *
+ * @author Andrew
+ *
+ */
+public class ImageLayer extends BackgroundLayer {
+
+	// The image the tiles are cut from
+	private Image image;
+
+	/**
+	 * Creates an image layer.
+	 *
+	 * @param image
+	 *            The image the tiles are cut from, which must be loaded
+	 * @param tileSize
+	 *            The width and height of each tile
+	 * @param parallax
+	 *            How far the layer moves for each pixel the camera moves
+	 * @param gc
+	 *            The display to accelerate the tiles for, or null to draw
+	 *            straight from the cut tiles
+	 */
+	public ImageLayer(Image image, int tileSize, double parallax,
+			GraphicsConfiguration gc) {
+		super(image.getWidth(null), image.getHeight(null), tileSize, parallax,
+				true, gc);
+		this.image = image;
+	}
+
+	@Override
+	protected void paint(Graphics2D g2D, int x, int y, int tileWidth,
+			int tileHeight) {
+		g2D.drawImage(image, 0, 0, null);
+	}
+}
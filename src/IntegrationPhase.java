@@ -0,0 +1,138 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The integration phase is the first half of updating the entities each
+ * cycle. Every entity moves itself and its hardpoints, and its components
+ * decide what they want to do, through Entity.integrate(). This only ever
+ * touches the entity's own state, so the entities are split into one chunk
+ * per worker thread and integrated all at once.
+ *
+ * Anything that affects the rest of the game (firing, adding and removing
+ * entities) is left for the commit phase, which the game engine runs
+ * afterwards on its own thread in entity store order. Together with each
+ * entity having its own random numbers, the result of a cycle is the same
+ * whatever the number of threads.
+ *
+ * @author Andrew
+ *
+ */
+public class IntegrationPhase {
+
+	// Fewer entities than this are integrated on the calling thread, as handing
+	// them out to the workers costs more than it saves
+	private static final int PARALLEL_THRESHOLD = 1024;
+
+	/**
+	 * Integrates one chunk of the entities.
+	 */
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		// Which chunk of the entities this task looks after
+		private int chunk;
+
+		ChunkTask(int chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			int from = (int) ((long) count * chunk / chunks);
+			int to = (int) ((long) count * (chunk + 1) / chunks);
+			integrateRange(from, to);
+		}
+	}
+
+	/**
+	 * Runs every chunk task inside the worker pool.
+	 */
+	private class AllTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	// The workers the entities are split across
+	private ForkJoinPool workers;
+	private int chunks;
+	private ChunkTask[] tasks;
+	private AllTask allTask = new AllTask();
+	// The entities being integrated this cycle
+	private EntityStore entities;
+	private int count = 0;
+	// The bounds outside of which entities are disabled
+	private double minX;
+	private double minY;
+	private double maxX;
+	private double maxY;
+
+	/**
+	 * Creates an integration phase.
+	 *
+	 * @param workers
+	 *            The pool the entities are split across
+	 */
+	public IntegrationPhase(ForkJoinPool workers) {
+		this.workers = workers;
+		chunks = Math.max(1, workers.getParallelism());
+		tasks = new ChunkTask[chunks];
+		for (int i = 0; i < chunks; i++) {
+			tasks[i] = new ChunkTask(i);
+		}
+	}
+
+	/**
+	 * Disables every entity outside the given bounds, and integrates every
+	 * entity that is still enabled.
+	 *
+	 * @param entities
+	 *            The entity store
+	 * @param minX
+	 *            The left edge of the area entities live in
+	 * @param minY
+	 *            The top edge of the area entities live in
+	 * @param maxX
+	 *            The right edge of the area entities live in
+	 * @param maxY
+	 *            The bottom edge of the area entities live in
+	 */
+	public void run(EntityStore entities, double minX, double minY,
+			double maxX, double maxY) {
+		this.minX = minX;
+		this.minY = minY;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.entities = entities;
+		count = entities.size();
+		if (count < PARALLEL_THRESHOLD || chunks == 1) {
+			integrateRange(0, count);
+		} else {
+			for (int i = 0; i < chunks; i++) {
+				tasks[i].reinitialize();
+			}
+			allTask.reinitialize();
+			workers.invoke(allTask);
+		}
+		this.entities = null;
+	}
+
+	/**
+	 * Integrates a range of the entities.
+	 */
+	private void integrateRange(int from, int to) {
+		for (int i = from; i < to; i++) {
+			Entity ent = entities.get(i);
+			// Disables any entity that goes over the sides of the screen
+			if (ent.getX() > maxX || ent.getY() > maxY || ent.getX() < minX
+					|| ent.getY() < minY) {
+				ent.disable();
+			}
+			if (ent.isEnabled()) {
+				ent.integrate();
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * A broad phase which keeps the projectiles of each faction in a separate
+ * broad phase of their own, and keeps the ships in a plain list. Ships never
+ * collide with ships, and projectiles never collide with projectiles, so the
+ * only pairs worth finding are a ship against the projectiles of a faction
+ * hostile to it. Each ship only searches those factions' buckets, so pairs
+ * that can't interact are never even generated.
+ *
+ * Only query() is ever called on the buckets, never findPairs(), as a bucket
+ * only holds projectiles and projectiles are never paired with each other.
+ *
+ * @author Andrew
+ *
+ */
+public class LayeredBroadPhase implements BroadPhase {
+
+	// The projectile broad phase of each faction, and the projectiles handed
+	// to it this cycle
+	private BroadPhase[] buckets;
+	private EntityStore[] bucketEntities;
+	// The enabled ships this cycle
+	private EntityStore ships = new EntityStore();
+
+	/**
+	 * Creates a layered broad phase.
+	 *
+	 * @param buckets
+	 *            One broad phase for each faction, which is handed the
+	 *            projectiles of that faction
+	 */
+	public LayeredBroadPhase(BroadPhase[] buckets) {
+		this.buckets = buckets;
+		bucketEntities = new EntityStore[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			bucketEntities[i] = new EntityStore();
+		}
+	}
+
+	@Override
+	public void update(EntityStore entities) {
+		ships.clear();
+		for (int i = 0; i < bucketEntities.length; i++) {
+			bucketEntities[i].clear();
+		}
+		for (int i = 0; i < entities.size(); i++) {
+			Entity ent = entities.get(i);
+			if (!ent.isEnabled) {
+				continue;
+			}
+			if (ent.collisionLayer == CollisionLayers.PROJECTILE_LAYER) {
+				bucketEntities[ent.faction].add(ent);
+			} else {
+				ships.add(ent);
+			}
+		}
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i].update(bucketEntities[i]);
+		}
+	}
+
+	@Override
+	public void remove(Entity ent) {
+		if (ent.collisionLayer == CollisionLayers.PROJECTILE_LAYER) {
+			buckets[ent.faction].remove(ent);
+		}
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		for (int i = 0; i < ships.size(); i++) {
+			query(ships.get(i), pairs);
+		}
+	}
+
+	@Override
+	public void query(Entity ent, PairBuffer pairs) {
+		CollisionLayers layers = CollisionLayers.get();
+		for (int faction = 0; faction < buckets.length; faction++) {
+			if (layers.isHostile(ent.faction, faction)) {
+				buckets[faction].query(ent, pairs);
+			}
+		}
+	}
+
+	/**
+	 * Returns the enabled ships handed to this broad phase last update, in
+	 * the order they were in the entity store.
+	 *
+	 * @return the ships
+	 */
+	public EntityStore getShips() {
+		return ships;
+	}
+
+	/**
+	 * @return the number of buckets, one for each faction
+	 */
+	public int getBucketCount() {
+		return buckets.length;
+	}
+
+	/**
+	 * Returns the broad phase holding the projectiles of a faction.
+	 *
+	 * @param faction
+	 *            The faction whose projectiles are wanted
+	 * @return the bucket of that faction
+	 */
+	public BroadPhase getBucket(int faction) {
+		return buckets[faction];
+	}
+
+	@Override
+	public int getNodeCount() {
+		int count = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			count += buckets[i].getNodeCount();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,452 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A broad phase which uses a linear quadtree. Rather than building nodes, each
+ * entity gets a Morton code from the centre of its bounding box, which is its
+ * X and Y grid position with the bits woven together. Sorting the entities by
+ * this code lays them out in quadtree order: every node of a quadtree is one
+ * unbroken run of the sorted array, so the tree is just the sorted codes and
+ * needs no pointers at all.
+ *
+ * The codes are sorted with a radix sort, which is O(n) and is split across
+ * the worker threads for large battles. Nothing is allocated once the arrays
+ * have grown to the size of the battle.
+ *
+ * To find the entities near a ship, the area around it is turned into the
+ * range of codes between its top left and bottom right corners. Every entity
+ * inside the area is in that range, but so are some outside it, so whenever
+ * the scan leaves the area it jumps straight to the next code back inside
+ * (the BIGMIN of the Tropf and Herzog range search), skipping whole nodes of
+ * the tree at a time.
+ *
+ * The sorted order is kept after the pairs are found, so the game engine can
+ * also update the entities in spatial order.
+ *
+ * @author Andrew
+ *
+ */
+public class LinearQuadtree implements BroadPhase {
+
+	// The number of bits of each grid coordinate, woven into a 30 bit code
+	private static final int BITS_PER_AXIS = 15;
+	// The largest grid coordinate on either axis
+	private static final int GRID_MAX = (1 << BITS_PER_AXIS) - 1;
+	// The number of bits sorted on by each radix sort pass
+	private static final int RADIX_BITS = 8;
+	private static final int RADIX = 1 << RADIX_BITS;
+	// The number of radix sort passes needed to sort a 30 bit code
+	private static final int PASSES = (BITS_PER_AXIS * 2 + RADIX_BITS - 1)
+			/ RADIX_BITS;
+	// The bits of a code that belong to the X coordinate, the Y coordinate
+	// bits are the odd ones
+	private static final int X_BITS = 0x15555555;
+	private static final int Y_BITS = 0x2AAAAAAA;
+	// Battles smaller than this are sorted on the calling thread, as handing
+	// them out to the workers costs more than it saves
+	private static final int PARALLEL_THRESHOLD = 8192;
+
+	/**
+	 * One chunk of a radix sort pass. A chunk first counts the digits of its
+	 * part of the array, then, once every chunk has counted, copies its part
+	 * into place. The same tasks are reused for every pass.
+	 */
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		// Which chunk of the array this task looks after
+		private int chunk;
+		// Whether this task counts digits, or copies its part into place
+		boolean scatter;
+
+		ChunkTask(int chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		protected void compute() {
+			int from = (int) ((long) count * chunk / chunks);
+			int to = (int) ((long) count * (chunk + 1) / chunks);
+			if (scatter) {
+				scatterChunk(chunk, from, to);
+			} else {
+				countChunk(chunk, from, to);
+			}
+		}
+	}
+
+	/**
+	 * Runs every chunk task of one half of a pass inside the worker pool.
+	 */
+	private class PassTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			invokeAll(chunkTasks);
+		}
+	}
+
+	// The left and top edges of the area covered by the grid, and the number
+	// of grid cells per pixel
+	private double originX;
+	private double originY;
+	private double scaleX;
+	private double scaleY;
+	// The workers the sort is split across
+	private ForkJoinPool workers;
+	private int chunks;
+	private ChunkTask[] chunkTasks;
+	private PassTask passTask = new PassTask();
+	// The digit counts of each chunk, and then where each chunk writes each
+	// digit
+	private int[][] histograms;
+
+	// The number of entities sorted this cycle
+	private int count = 0;
+	// The entities in the order they were given, and their codes
+	private Entity[] ents = new Entity[256];
+	// The codes and entity indexes being sorted, and the arrays each pass
+	// copies them into
+	private int[] codes = new int[256];
+	private int[] order = new int[256];
+	private int[] codesScratch = new int[256];
+	private int[] orderScratch = new int[256];
+	// The shift of the digit being sorted in the current pass
+	private int shift;
+	// The entities in sorted order
+	private Entity[] sorted = new Entity[256];
+	// Half the width and height of the largest entity this cycle, which is how
+	// far the area searched around a ship has to reach
+	private double maxHalfWidth;
+	private double maxHalfHeight;
+
+	/**
+	 * Creates an empty linear quadtree.
+	 *
+	 * @param bounds
+	 *            The area the grid covers. Entities outside it are clamped to
+	 *            its edges.
+	 * @param workers
+	 *            The pool the sort is split across
+	 */
+	public LinearQuadtree(Rectangle bounds, ForkJoinPool workers) {
+		originX = bounds.getX();
+		originY = bounds.getY();
+		scaleX = GRID_MAX / bounds.getWidth();
+		scaleY = GRID_MAX / bounds.getHeight();
+		this.workers = workers;
+		chunks = Math.max(1, workers.getParallelism());
+		chunkTasks = new ChunkTask[chunks];
+		for (int i = 0; i < chunks; i++) {
+			chunkTasks[i] = new ChunkTask(i);
+		}
+		histograms = new int[chunks][RADIX];
+	}
+
+	/**
+	 * Returns the number of entities in the sorted order.
+	 *
+	 * @return the number of sorted entities
+	 */
+	public int getSortedCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the entity at the given position in the sorted order, which
+	 * walks the entities in quadtree order so that entities close to each
+	 * other in the game are close to each other in memory.
+	 *
+	 * @param i
+	 *            The position in the sorted order
+	 * @return the entity at that position
+	 */
+	public Entity getSorted(int i) {
+		return sorted[i];
+	}
+
+	@Override
+	public void update(EntityStore entities) {
+		for (int i = 0; i < count; i++) {
+			ents[i] = null;
+			sorted[i] = null;
+		}
+		count = 0;
+		maxHalfWidth = 0;
+		maxHalfHeight = 0;
+		int size = entities.size();
+		if (size > ents.length) {
+			grow(Math.max(size, ents.length * 2));
+		}
+		for (int i = 0; i < size; i++) {
+			Entity ent = entities.get(i);
+			if (!ent.isEnabled) {
+				continue;
+			}
+			double halfWidth = ent.getWidth() / 2;
+			double halfHeight = ent.getHeight() / 2;
+			maxHalfWidth = Math.max(maxHalfWidth, halfWidth);
+			maxHalfHeight = Math.max(maxHalfHeight, halfHeight);
+			ents[count] = ent;
+			codes[count] = encode(gridX(ent.getX() + halfWidth),
+					gridY(ent.getY() + halfHeight));
+			order[count] = count;
+			count++;
+		}
+		sort();
+		for (int i = 0; i < count; i++) {
+			sorted[i] = ents[order[i]];
+		}
+	}
+
+	@Override
+	public void remove(Entity ent) {
+		// Nothing to do, the codes are sorted from scratch every cycle
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		for (int i = 0; i < count; i++) {
+			Entity ent = sorted[i];
+			if (!ent.isProjectile) {
+				scan(ent, pairs, true);
+			}
+		}
+	}
+
+	@Override
+	public void query(Entity ent, PairBuffer pairs) {
+		scan(ent, pairs, false);
+	}
+
+	/**
+	 * Returns the number of leaf cells holding at least one entity, as the
+	 * tree has no other nodes. Counted from the sorted codes, where entities
+	 * sharing a cell sit next to each other.
+	 */
+	@Override
+	public int getNodeCount() {
+		int cells = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || codes[i] != codes[i - 1]) {
+				cells++;
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Pairs the entity with every sorted entity whose centre is close enough
+	 * that the two might touch.
+	 * 
+	 * @param shipsOnce
+	 *            True if every ship is being scanned for, in which case two
+	 *            ships are only paired from the one with the lower id
+	 */
+	private void scan(Entity ent, PairBuffer pairs, boolean shipsOnce) {
+		// Any entity whose centre is inside this area might touch the ship
+		int minGridX = gridX(ent.getX() - maxHalfWidth);
+		int minGridY = gridY(ent.getY() - maxHalfHeight);
+		int maxGridX = gridX(ent.getX() + ent.getWidth() + maxHalfWidth);
+		int maxGridY = gridY(ent.getY() + ent.getHeight() + maxHalfHeight);
+		int zMin = encode(minGridX, minGridY);
+		int zMax = encode(maxGridX, maxGridY);
+		int k = lowerBound(zMin, 0);
+		while (k < count && codes[k] <= zMax) {
+			int code = codes[k];
+			int codeX = compact(code);
+			int codeY = compact(code >>> 1);
+			if (codeX < minGridX || codeX > maxGridX || codeY < minGridY
+					|| codeY > maxGridY) {
+				// Left the area, so jumps to the next code back inside it
+				k = lowerBound(bigMin(code, zMin, zMax), k + 1);
+				continue;
+			}
+			Entity other = sorted[k];
+			if (other != ent
+					&& (!shipsOnce || other.isProjectile || other.id > ent.id)) {
+				pairs.add(ent, other);
+			}
+			k++;
+		}
+	}
+
+	/**
+	 * Returns the first position at or after from whose code is at least the
+	 * given code.
+	 */
+	private int lowerBound(int code, int from) {
+		int low = from;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (codes[mid] < code) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the smallest code greater than the given code that lies inside
+	 * the area with the given corner codes.
+	 */
+	private static int bigMin(int code, int zMin, int zMax) {
+		int bigMin = 0;
+		for (int bit = BITS_PER_AXIS * 2 - 1; bit >= 0; bit--) {
+			int mask = 1 << bit;
+			boolean codeBit = (code & mask) != 0;
+			boolean minBit = (zMin & mask) != 0;
+			boolean maxBit = (zMax & mask) != 0;
+			if (!codeBit && !minBit && maxBit) {
+				bigMin = loadOneThenZeros(zMin, bit);
+				zMax = loadZeroThenOnes(zMax, bit);
+			} else if (!codeBit && minBit && maxBit) {
+				return zMin;
+			} else if (codeBit && !minBit && !maxBit) {
+				return bigMin;
+			} else if (codeBit && !minBit && maxBit) {
+				zMin = loadOneThenZeros(zMin, bit);
+			}
+		}
+		return bigMin;
+	}
+
+	/**
+	 * Sets the given bit, and clears every lower bit of the same axis.
+	 */
+	private static int loadOneThenZeros(int value, int bit) {
+		int lower = ((1 << bit) - 1) & ((bit & 1) == 0 ? X_BITS : Y_BITS);
+		return (value | (1 << bit)) & ~lower;
+	}
+
+	/**
+	 * Clears the given bit, and sets every lower bit of the same axis.
+	 */
+	private static int loadZeroThenOnes(int value, int bit) {
+		int lower = ((1 << bit) - 1) & ((bit & 1) == 0 ? X_BITS : Y_BITS);
+		return (value & ~(1 << bit)) | lower;
+	}
+
+	private int gridX(double x) {
+		int grid = (int) ((x - originX) * scaleX);
+		return Math.max(0, Math.min(GRID_MAX, grid));
+	}
+
+	private int gridY(double y) {
+		int grid = (int) ((y - originY) * scaleY);
+		return Math.max(0, Math.min(GRID_MAX, grid));
+	}
+
+	/**
+	 * Weaves the bits of the grid coordinates together, X in the even bits and
+	 * Y in the odd bits.
+	 */
+	private static int encode(int x, int y) {
+		return spread(x) | (spread(y) << 1);
+	}
+
+	/**
+	 * Spreads the low 15 bits of a value out into the even bits.
+	 */
+	private static int spread(int value) {
+		value &= 0x7FFF;
+		value = (value | (value << 8)) & 0x00FF00FF;
+		value = (value | (value << 4)) & 0x0F0F0F0F;
+		value = (value | (value << 2)) & 0x33333333;
+		value = (value | (value << 1)) & 0x55555555;
+		return value;
+	}
+
+	/**
+	 * Gathers the even bits of a value back together, undoing spread().
+	 */
+	private static int compact(int value) {
+		value &= 0x55555555;
+		value = (value | (value >>> 1)) & 0x33333333;
+		value = (value | (value >>> 2)) & 0x0F0F0F0F;
+		value = (value | (value >>> 4)) & 0x00FF00FF;
+		value = (value | (value >>> 8)) & 0x0000FFFF;
+		return value;
+	}
+
+	/**
+	 * Sorts the codes and entity indexes with a least significant digit first
+	 * radix sort. Each pass counts digits, works out where each chunk writes
+	 * each digit, then copies every chunk into place, which keeps the sort
+	 * stable no matter how many chunks there are.
+	 */
+	private void sort() {
+		boolean parallel = count >= PARALLEL_THRESHOLD && chunks > 1;
+		for (int pass = 0; pass < PASSES; pass++) {
+			shift = pass * RADIX_BITS;
+			runChunks(false, parallel);
+			// Turns the counts into the position each chunk writes each digit
+			int running = 0;
+			for (int digit = 0; digit < RADIX; digit++) {
+				for (int chunk = 0; chunk < chunks; chunk++) {
+					int digitCount = histograms[chunk][digit];
+					histograms[chunk][digit] = running;
+					running += digitCount;
+				}
+			}
+			runChunks(true, parallel);
+			int[] swap = codes;
+			codes = codesScratch;
+			codesScratch = swap;
+			swap = order;
+			order = orderScratch;
+			orderScratch = swap;
+		}
+	}
+
+	/**
+	 * Runs every chunk task, either on the workers or one after the other on
+	 * this thread.
+	 */
+	private void runChunks(boolean scatter, boolean parallel) {
+		for (int i = 0; i < chunks; i++) {
+			chunkTasks[i].reinitialize();
+			chunkTasks[i].scatter = scatter;
+		}
+		if (parallel) {
+			passTask.reinitialize();
+			workers.invoke(passTask);
+		} else {
+			for (int i = 0; i < chunks; i++) {
+				chunkTasks[i].compute();
+			}
+		}
+	}
+
+	private void countChunk(int chunk, int from, int to) {
+		int[] histogram = histograms[chunk];
+		Arrays.fill(histogram, 0);
+		for (int i = from; i < to; i++) {
+			histogram[(codes[i] >>> shift) & (RADIX - 1)]++;
+		}
+	}
+
+	private void scatterChunk(int chunk, int from, int to) {
+		int[] offsets = histograms[chunk];
+		for (int i = from; i < to; i++) {
+			int digit = (codes[i] >>> shift) & (RADIX - 1);
+			int target = offsets[digit]++;
+			codesScratch[target] = codes[i];
+			orderScratch[target] = order[i];
+		}
+	}
+
+	private void grow(int capacity) {
+		ents = new Entity[capacity];
+		sorted = new Entity[capacity];
+		codes = new int[capacity];
+		order = new int[capacity];
+		codesScratch = new int[capacity];
+		orderScratch = new int[capacity];
+	}
+}
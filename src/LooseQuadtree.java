@@ -0,0 +1,393 @@
+import java.awt.Rectangle;
+
+/**
+ * A broad phase which uses a loose quadtree that is kept from one cycle to the
+ * next instead of being rebuilt. Each node of a loose quadtree accepts any
+ * entity whose bounding box fits inside the node's bounds grown by half their
+ * size on every side, so an entity that moves a little usually stays inside
+ * the same node. Each entity remembers the node it is stored in, and is only
+ * moved to another node once it leaves its node's loose bounds, so the work
+ * done each cycle depends on how far things move rather than how many there
+ * are.
+ *
+ * The root covers the whole area entities live in, and also holds anything
+ * outside of it.
+ *
+ * Nodes are split when they hold too many entities, and merged back into their
+ * parent once enough entities have left them. Merging is put off until the end
+ * of the cycle so that an entity leaving and coming back doesn't thrash the
+ * tree.
+ *
+ * @author Andrew
+ *
+ */
+public class LooseQuadtree implements BroadPhase {
+
+	/**
+	 * A single node of the loose quadtree.
+	 */
+	static class Node {
+		// The node this node is a quadrant of, null for the root
+		Node parent;
+		// The four quadrants of this node, null until the node is split
+		Node[] nodes;
+		// The depth of this node, 0 being the top
+		int level;
+		// The bounds of this node, without the loose border
+		double x;
+		double y;
+		double width;
+		double height;
+		// The entities stored in this node
+		Entity[] objects = new Entity[4];
+		int count = 0;
+		// The number of entities stored in this node and every node below it
+		int total = 0;
+		// Whether this node is already waiting to be looked at for merging
+		boolean mergePending = false;
+
+		Node(Node parent, int level, double x, double y, double width,
+				double height) {
+			this.parent = parent;
+			this.level = level;
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+		}
+
+		/**
+		 * Returns true if the bounding box of the entity fits inside the loose
+		 * bounds of this node, which are the bounds grown by half their width
+		 * and height on every side.
+		 */
+		boolean looselyContains(Entity ent) {
+			return ent.getX() >= x - width / 2
+					&& ent.getY() >= y - height / 2
+					&& ent.getX() + ent.getWidth() <= x + width * 1.5
+					&& ent.getY() + ent.getHeight() <= y + height * 1.5;
+		}
+
+		/**
+		 * Returns true if the loose bounds of this node overlap the bounding
+		 * box of the entity.
+		 */
+		boolean looselyIntersects(Entity ent) {
+			return ent.getX() < x + width * 1.5
+					&& ent.getX() + ent.getWidth() > x - width / 2
+					&& ent.getY() < y + height * 1.5
+					&& ent.getY() + ent.getHeight() > y - height / 2;
+		}
+
+		/**
+		 * Returns the quadrant the centre of the entity is in. Uses the same
+		 * numbering as the quadtree.
+		 */
+		int quadrantOf(Entity ent) {
+			double centerX = ent.getX() + ent.getWidth() / 2;
+			double centerY = ent.getY() + ent.getHeight() / 2;
+			boolean right = centerX >= x + width / 2;
+			boolean bottom = centerY >= y + height / 2;
+			if (bottom) {
+				return right ? 3 : 2;
+			}
+			return right ? 0 : 1;
+		}
+	}
+
+	// How many objects a node will hold before it splits
+	private static final int MAX_OBJECTS = 10;
+	// Deepest level the node will go
+	private static final int MAX_LEVELS = 6;
+
+	// The top node of the tree, which covers the whole area entities live in
+	// and holds anything that doesn't fit further down
+	private Node root;
+	// The entities the tree was brought up to date with this cycle
+	private EntityStore entities;
+	// The nodes that lost entities this cycle and might need merging
+	private Node[] mergeQueue = new Node[64];
+	private int mergeCount = 0;
+	// The pair buffer being filled by the current query
+	private PairBuffer queryPairs;
+
+	/**
+	 * Creates an empty loose quadtree covering the given area.
+	 *
+	 * @param bounds
+	 *            The area covered by the root of the tree
+	 */
+	public LooseQuadtree(Rectangle bounds) {
+		root = new Node(null, 0, bounds.getX(), bounds.getY(),
+				bounds.getWidth(), bounds.getHeight());
+	}
+
+	@Override
+	public void update(EntityStore entities) {
+		this.entities = entities;
+		for (int i = 0; i < entities.size(); i++) {
+			Entity ent = entities.get(i);
+			if (!ent.isEnabled) {
+				continue;
+			}
+			Node node = ent.quadNode;
+			if (node == null) {
+				insert(root, ent);
+			} else if (node != root && !node.looselyContains(ent)) {
+				// Re-homes the entity, starting from the closest node up the
+				// tree that can still hold it
+				detach(ent);
+				Node ancestor = node.parent;
+				while (ancestor != null && ancestor != root
+						&& !ancestor.looselyContains(ent)) {
+					ancestor = ancestor.parent;
+				}
+				insert(ancestor == null ? root : ancestor, ent);
+			} else if (node.nodes != null
+					&& node.nodes[node.quadrantOf(ent)].looselyContains(ent)) {
+				// The entity has moved somewhere it fits further down, which
+				// is cheap to check and keeps the tree from collecting
+				// entities near the top
+				detach(ent);
+				insert(node, ent);
+			}
+		}
+		processMerges();
+	}
+
+	@Override
+	public void remove(Entity ent) {
+		if (ent.quadNode != null) {
+			detach(ent);
+		}
+	}
+
+	@Override
+	public int getNodeCount() {
+		return countNodes(root);
+	}
+
+	/**
+	 * Returns the number of nodes in the given node and every node below it.
+	 */
+	private int countNodes(Node node) {
+		int count = 1;
+		if (node.nodes != null) {
+			for (int i = 0; i < node.nodes.length; i++) {
+				count += countNodes(node.nodes[i]);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stores an entity in the deepest node below the given node that can hold
+	 * it, splitting that node if it gets too full.
+	 */
+	private void insert(Node node, Entity ent) {
+		while (node.nodes != null) {
+			Node quadrant = node.nodes[node.quadrantOf(ent)];
+			if (!quadrant.looselyContains(ent)) {
+				break;
+			}
+			node = quadrant;
+		}
+		attach(node, ent);
+		if (node.nodes == null && node.count > MAX_OBJECTS
+				&& node.level < MAX_LEVELS) {
+			split(node);
+		}
+	}
+
+	/**
+	 * Adds an entity to the objects of a node.
+	 */
+	private void attach(Node node, Entity ent) {
+		if (node.count == node.objects.length) {
+			Entity[] grown = new Entity[node.count * 2];
+			System.arraycopy(node.objects, 0, grown, 0, node.count);
+			node.objects = grown;
+		}
+		ent.quadNode = node;
+		ent.quadSlot = node.count;
+		node.objects[node.count++] = ent;
+		for (Node n = node; n != null; n = n.parent) {
+			n.total++;
+		}
+	}
+
+	/**
+	 * Takes an entity out of the node it is stored in. The last entity of the
+	 * node is moved into its slot, so this doesn't have to shift anything.
+	 */
+	private void detach(Entity ent) {
+		Node node = ent.quadNode;
+		int slot = ent.quadSlot;
+		node.count--;
+		Entity last = node.objects[node.count];
+		node.objects[slot] = last;
+		last.quadSlot = slot;
+		node.objects[node.count] = null;
+		ent.quadNode = null;
+		for (Node n = node; n != null; n = n.parent) {
+			n.total--;
+			if (n.nodes != null && !n.mergePending
+					&& n.total <= MAX_OBJECTS / 2) {
+				queueMerge(n);
+			}
+		}
+	}
+
+	/**
+	 * Splits a node into four quadrants, and moves down any of its entities
+	 * that fit inside one.
+	 */
+	private void split(Node node) {
+		double subWidth = node.width / 2;
+		double subHeight = node.height / 2;
+		double x = node.x;
+		double y = node.y;
+		int level = node.level + 1;
+		node.nodes = new Node[4];
+		node.nodes[0] = new Node(node, level, x + subWidth, y, subWidth,
+				subHeight);
+		node.nodes[1] = new Node(node, level, x, y, subWidth, subHeight);
+		node.nodes[2] = new Node(node, level, x, y + subHeight, subWidth,
+				subHeight);
+		node.nodes[3] = new Node(node, level, x + subWidth, y + subHeight,
+				subWidth, subHeight);
+		int i = 0;
+		while (i < node.count) {
+			Entity ent = node.objects[i];
+			Node quadrant = node.nodes[node.quadrantOf(ent)];
+			if (quadrant.looselyContains(ent)) {
+				// The last entity is moved into this slot, so the slot is
+				// looked at again
+				detach(ent);
+				attach(quadrant, ent);
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Remembers a node to be looked at for merging at the end of the cycle.
+	 */
+	private void queueMerge(Node node) {
+		if (mergeCount == mergeQueue.length) {
+			Node[] grown = new Node[mergeCount * 2];
+			System.arraycopy(mergeQueue, 0, grown, 0, mergeCount);
+			mergeQueue = grown;
+		}
+		node.mergePending = true;
+		mergeQueue[mergeCount++] = node;
+	}
+
+	/**
+	 * Merges every queued node that still holds few enough entities, pulling
+	 * all the entities below it back up into it.
+	 */
+	private void processMerges() {
+		for (int i = 0; i < mergeCount; i++) {
+			Node node = mergeQueue[i];
+			mergeQueue[i] = null;
+			node.mergePending = false;
+			// The node may have filled back up, or been merged away with a
+			// node above it
+			if (node.nodes == null || node.total > MAX_OBJECTS / 2
+					|| !isAttached(node)) {
+				continue;
+			}
+			Node[] quadrants = node.nodes;
+			node.nodes = null;
+			for (int q = 0; q < quadrants.length; q++) {
+				pullUp(node, quadrants[q]);
+			}
+		}
+		mergeCount = 0;
+	}
+
+	/**
+	 * Returns true if the node is still part of the tree.
+	 */
+	private boolean isAttached(Node node) {
+		while (node.parent != null) {
+			if (node.parent.nodes == null) {
+				return false;
+			}
+			node = node.parent;
+		}
+		return node == root;
+	}
+
+	/**
+	 * Moves every entity stored in the source node and its quadrants into the
+	 * target node.
+	 */
+	private void pullUp(Node target, Node source) {
+		if (source.nodes != null) {
+			for (int q = 0; q < source.nodes.length; q++) {
+				pullUp(target, source.nodes[q]);
+			}
+		}
+		for (int i = 0; i < source.count; i++) {
+			Entity ent = source.objects[i];
+			if (target.count == target.objects.length) {
+				Entity[] grown = new Entity[target.count * 2];
+				System.arraycopy(target.objects, 0, grown, 0, target.count);
+				target.objects = grown;
+			}
+			ent.quadNode = target;
+			ent.quadSlot = target.count;
+			target.objects[target.count++] = ent;
+		}
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		queryPairs = pairs;
+		for (int i = 0; i < entities.size(); i++) {
+			Entity ent = entities.get(i);
+			if (!ent.isProjectile && ent.isEnabled && ent.quadNode != null) {
+				collect(root, ent, true);
+			}
+		}
+		queryPairs = null;
+	}
+
+	@Override
+	public void query(Entity ent, PairBuffer pairs) {
+		queryPairs = pairs;
+		collect(root, ent, false);
+		queryPairs = null;
+	}
+
+	/**
+	 * Pairs the entity with everything stored in the nodes whose loose bounds
+	 * overlap it.
+	 * 
+	 * @param shipsOnce
+	 *            True if every ship is being collected for, in which case two
+	 *            ships are only paired from the one with the lower id
+	 */
+	private void collect(Node node, Entity ent, boolean shipsOnce) {
+		for (int i = 0; i < node.count; i++) {
+			Entity other = node.objects[i];
+			if (other == ent || !other.isEnabled) {
+				continue;
+			}
+			if (shipsOnce && !other.isProjectile && other.id < ent.id) {
+				continue;
+			}
+			queryPairs.add(ent, other);
+		}
+		if (node.nodes != null) {
+			for (int q = 0; q < node.nodes.length; q++) {
+				if (node.nodes[q].looselyIntersects(ent)) {
+					collect(node.nodes[q], ent, shipsOnce);
+				}
+			}
+		}
+	}
+}
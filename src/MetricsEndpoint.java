@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The metrics endpoint serves everything in the metrics registry over HTTP in
+ * the Prometheus text format, so a long running game can be scraped like any
+ * other service. It listens on the loopback address only, at /metrics.
+ *
+ * Every phase timer is exported as a histogram of conquest_phase_seconds with
+ * the phase as a label, and every counter and gauge under its own name. The
+ * bytes allocated by the JVM's threads are read when scraped and exported as
+ * conquest_allocated_bytes_total. A thread's bytes stop being readable once it
+ * dies, so the last reading of every thread that has died is kept in the
+ * total, which is what keeps the counter from going down.
+ *
+ * Requests are answered on the HTTP server's own thread, which only ever
+ * reads the registry, so scraping never holds up the game.
+ *
+ * @author Andrew
+ *
+ */
+public class MetricsEndpoint {
+
+	// The content type of the Prometheus text format
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4";
+
+	// The server answering the requests
+	private HttpServer server;
+	// The bytes allocated by each thread alive at the last scrape, by thread
+	// id, and the bytes allocated by threads that have died since
+	private Map<Long, Long> threadBytes = new HashMap<Long, Long>();
+	private long deadThreadBytes = 0;
+
+	/**
+	 * Creates a metrics endpoint and starts serving.
+	 *
+	 * @param port
+	 *            The local port to listen on
+	 * @throws IOException
+	 *             if the port can't be listened on
+	 */
+	public MetricsEndpoint(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type",
+						CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(body);
+				} finally {
+					out.close();
+				}
+			}
+		});
+		server.start();
+		System.out.println("Serving metrics on http://"
+				+ server.getAddress().getHostString() + ":"
+				+ server.getAddress().getPort() + "/metrics");
+	}
+
+	/**
+	 * Stops serving, so the server's thread doesn't keep the game running.
+	 */
+	public void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Writes every metric in the Prometheus text format.
+	 *
+	 * @return the metrics, one per line
+	 */
+	public String scrape() {
+		MetricsRegistry registry = MetricsRegistry.get();
+		StringBuilder text = new StringBuilder();
+
+		// Every phase timer is one series of the same histogram
+		List<PhaseTimer> timers = registry.getTimers();
+		long[] histogram = new long[PhaseTimer.BUCKET_BOUNDS.length + 1];
+		writeHeader(text, "conquest_phase_seconds",
+				"Time taken by each timed phase of the game", "histogram");
+		for (int i = 0; i < timers.size(); i++) {
+			PhaseTimer timer = timers.get(i);
+			timer.copyHistogram(histogram);
+			String phase = "phase=\"" + timer.getName() + "\"";
+			for (int b = 0; b < histogram.length; b++) {
+				String bound = b < PhaseTimer.BUCKET_BOUNDS.length ? Double
+						.toString(PhaseTimer.BUCKET_BOUNDS[b] / 1e9) : "+Inf";
+				text.append("conquest_phase_seconds_bucket{").append(phase)
+						.append(",le=\"").append(bound).append("\"} ")
+						.append(histogram[b]).append('\n');
+			}
+			text.append("conquest_phase_seconds_sum{").append(phase)
+					.append("} ").append(timer.getSumNanos() / 1e9)
+					.append('\n');
+			text.append("conquest_phase_seconds_count{").append(phase)
+					.append("} ").append(histogram[histogram.length - 1])
+					.append('\n');
+		}
+
+		// Counters and gauges, with the header written before the first of
+		// each family
+		Map<String, Long> values = registry.getValues();
+		for (String family : getFamilies(values)) {
+			writeHeader(text, family, registry.getHelp(family),
+					registry.getType(family));
+			for (Map.Entry<String, Long> entry : values.entrySet()) {
+				if (MetricsRegistry.getFamily(entry.getKey()).equals(family)) {
+					text.append(entry.getKey()).append(' ')
+							.append(entry.getValue()).append('\n');
+				}
+			}
+		}
+
+		long allocated = getAllocatedBytes();
+		if (allocated >= 0) {
+			writeHeader(text, "conquest_allocated_bytes_total",
+					"Bytes allocated by every thread since the game started",
+					"counter");
+			text.append("conquest_allocated_bytes_total ").append(allocated)
+					.append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Returns the name of every family of counters and gauges, in the order
+	 * the first of each was registered.
+	 */
+	private Set<String> getFamilies(Map<String, Long> values) {
+		Set<String> families = new LinkedHashSet<String>();
+		for (String name : values.keySet()) {
+			families.add(MetricsRegistry.getFamily(name));
+		}
+		return families;
+	}
+
+	/**
+	 * Writes the help text and type lines of a family.
+	 */
+	private void writeHeader(StringBuilder text, String family, String help,
+			String type) {
+		text.append("# HELP ").append(family).append(' ').append(help)
+				.append('\n');
+		text.append("# TYPE ").append(family).append(' ').append(type)
+				.append('\n');
+	}
+
+	/**
+	 * Returns the total number of bytes allocated by every thread, or -1 if
+	 * the JVM can't tell. Threads that have died are counted up to the last
+	 * time they were read, so the total never goes down.
+	 */
+	private synchronized long getAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sunThreads =
+				(com.sun.management.ThreadMXBean) threads;
+		if (!sunThreads.isThreadAllocatedMemorySupported()
+				|| !sunThreads.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		long[] ids = threads.getAllThreadIds();
+		long[] allocated = sunThreads.getThreadAllocatedBytes(ids);
+		Map<Long, Long> alive = new HashMap<Long, Long>();
+		long total = 0;
+		for (int i = 0; i < ids.length; i++) {
+			// Threads which have died since their ids were taken read as -1
+			if (allocated[i] >= 0) {
+				alive.put(ids[i], allocated[i]);
+				total += allocated[i];
+			}
+		}
+		for (Map.Entry<Long, Long> entry : threadBytes.entrySet()) {
+			if (!alive.containsKey(entry.getKey())) {
+				deadThreadBytes += entry.getValue();
+			}
+		}
+		threadBytes = alive;
+		return deadThreadBytes + total;
+	}
+}
@@ -0,0 +1,178 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics registry holds a phase timer for every phase of the game that
+ * is timed, in the order they were registered, so the profiler overlay and
+ * the headless statistics can show them all without knowing what they are.
+ *
+ * It also holds the counters and gauges exported by the metrics endpoint.
+ * Each is an AtomicLong under a name in the Prometheus form, e.g.
+ * conquest_entities{type="Destroyer"}, so the metrics sharing the name before
+ * the braces are one family with the same help text and type. Like the phase
+ * timers, each should only be written by one thread.
+ *
+ * @author Andrew
+ *
+ */
+public class MetricsRegistry {
+
+	// The singleton for the MetricsRegistry, this is the only instance of this
+	// class.
+	private static MetricsRegistry single = new MetricsRegistry();
+
+	public static MetricsRegistry get() {
+		return single;
+	}
+
+	// Every timer registered, in the order they were registered
+	private List<PhaseTimer> timers = new ArrayList<PhaseTimer>();
+	// Every counter and gauge, by name, in the order they were registered
+	private Map<String, AtomicLong> values =
+			new LinkedHashMap<String, AtomicLong>();
+	// The help text of each family of counters and gauges, and whether the
+	// family is a counter or a gauge
+	private Map<String, String> helps = new HashMap<String, String>();
+	private Map<String, String> types = new HashMap<String, String>();
+
+	/**
+	 * Returns the timer for a phase, registering it the first time it is
+	 * asked for.
+	 *
+	 * @param name
+	 *            The name the phase is shown under
+	 * @param budgetNanos
+	 *            The time in nanoseconds the phase should take at most, only
+	 *            used when the timer is registered
+	 * @return the timer for the phase
+	 */
+	public synchronized PhaseTimer timer(String name, long budgetNanos) {
+		for (int i = 0; i < timers.size(); i++) {
+			if (timers.get(i).getName().equals(name)) {
+				return timers.get(i);
+			}
+		}
+		PhaseTimer timer = new PhaseTimer(name, budgetNanos);
+		timers.add(timer);
+		return timer;
+	}
+
+	/**
+	 * Returns every timer registered, in the order they were registered.
+	 *
+	 * @return a copy of the list of timers
+	 */
+	public synchronized List<PhaseTimer> getTimers() {
+		return new ArrayList<PhaseTimer>(timers);
+	}
+
+	/**
+	 * Returns a counter, which only ever goes up, registering it the first time
+	 * it is asked for.
+	 *
+	 * @param name
+	 *            The name of the counter, with any labels
+	 * @param help
+	 *            What the counter counts, shared by its whole family
+	 * @return the counter
+	 */
+	public AtomicLong counter(String name, String help) {
+		return value(name, "counter", help);
+	}
+
+	/**
+	 * Returns a gauge, which is set to whatever it currently measures,
+	 * registering it the first time it is asked for.
+	 *
+	 * @param name
+	 *            The name of the gauge, with any labels
+	 * @param help
+	 *            What the gauge measures, shared by its whole family
+	 * @return the gauge
+	 */
+	public AtomicLong gauge(String name, String help) {
+		return value(name, "gauge", help);
+	}
+
+	/**
+	 * Returns the counter or gauge with the given name, registering it if it
+	 * doesn't exist yet.
+	 */
+	private synchronized AtomicLong value(String name, String type,
+			String help) {
+		AtomicLong value = values.get(name);
+		if (value == null) {
+			value = new AtomicLong();
+			values.put(name, value);
+			helps.put(getFamily(name), help);
+			types.put(getFamily(name), type);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the current value of every counter and gauge, in the order they
+	 * were registered.
+	 *
+	 * @return a map from the name of each counter and gauge to its value
+	 */
+	public synchronized Map<String, Long> getValues() {
+		Map<String, Long> copy = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : values.entrySet()) {
+			copy.put(entry.getKey(), entry.getValue().get());
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the help text of a family of counters or gauges
+	 */
+	public synchronized String getHelp(String family) {
+		return helps.get(family);
+	}
+
+	/**
+	 * @return "counter" or "gauge", whichever a family is
+	 */
+	public synchronized String getType(String family) {
+		return types.get(family);
+	}
+
+	/**
+	 * Returns the family a counter or gauge belongs to, which is its name
+	 * without any labels.
+	 *
+	 * @param name
+	 *            The name of the counter or gauge
+	 * @return the name of its family
+	 */
+	public static String getFamily(String name) {
+		int labels = name.indexOf('{');
+		return labels < 0 ? name : name.substring(0, labels);
+	}
+
+	/**
+	 * Returns a summary of every phase that has been timed, one line each, for
+	 * logging.
+	 *
+	 * @return the summary
+	 */
+	@Override
+	public synchronized String toString() {
+		StringBuilder summary = new StringBuilder();
+		for (int i = 0; i < timers.size(); i++) {
+			if (timers.get(i).getCount() == 0) {
+				continue;
+			}
+			if (summary.length() > 0) {
+				summary.append(System.getProperty("line.separator"));
+			}
+			summary.append("  ").append(timers.get(i));
+		}
+		return summary.toString();
+	}
+}
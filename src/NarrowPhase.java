@@ -0,0 +1,162 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The narrow phase runs the exact collision test on every candidate pair found
+ * by the broad phase. The pairs are split into one partition per worker
+ * thread, and each worker only tests its own partition and writes the pairs
+ * that hit into a buffer of its own, so the workers share nothing while they
+ * run.
+ *
+ * Nothing is changed by the test itself. Once every worker is done, the hits
+ * are applied (hull damage, disabling projectiles) on the calling thread, one
+ * partition after the other. The partitions are ranges of the pair buffer in
+ * order, so the hits are applied in exactly the order a serial pass would
+ * have found them, however the work was spread across the threads.
+ *
+ * @author Andrew
+ *
+ */
+public class NarrowPhase {
+
+	// Fewer pairs than this are tested on the calling thread, as handing them
+	// out to the workers costs more than it saves
+	private static final int PARALLEL_THRESHOLD = 2048;
+
+	/**
+	 * Tests one partition of the pair buffer, remembering which pairs hit.
+	 */
+	private class PartitionTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		// Which partition of the pair buffer this task looks after
+		private int partition;
+		// The indexes of the pairs in this partition that hit
+		int[] hits = new int[64];
+		int hitCount;
+		// How many pairs this partition tested
+		int checked;
+
+		PartitionTask(int partition) {
+			this.partition = partition;
+		}
+
+		@Override
+		protected void compute() {
+			int size = pairs.size();
+			int from = (int) ((long) size * partition / partitions);
+			int to = (int) ((long) size * (partition + 1) / partitions);
+			testRange(this, from, to);
+		}
+	}
+
+	/**
+	 * Runs every partition task inside the worker pool.
+	 */
+	private class AllTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	// The workers the pairs are split across
+	private ForkJoinPool workers;
+	private int partitions;
+	private PartitionTask[] tasks;
+	private AllTask allTask = new AllTask();
+	// The pairs being tested this cycle
+	private PairBuffer pairs;
+	// How many pairs hit each other in the last run
+	private int hitsLastRun;
+
+	/**
+	 * Creates a narrow phase.
+	 *
+	 * @param workers
+	 *            The pool the pairs are split across
+	 */
+	public NarrowPhase(ForkJoinPool workers) {
+		this.workers = workers;
+		partitions = Math.max(1, workers.getParallelism());
+		tasks = new PartitionTask[partitions];
+		for (int i = 0; i < partitions; i++) {
+			tasks[i] = new PartitionTask(i);
+		}
+	}
+
+	/**
+	 * Tests every pair in the buffer, then applies the collisions of the pairs
+	 * that hit.
+	 *
+	 * @param pairs
+	 *            The candidate pairs found by the broad phase this cycle
+	 * @return the number of pairs that could interact and were tested
+	 */
+	public int run(PairBuffer pairs) {
+		this.pairs = pairs;
+		int used;
+		if (pairs.size() < PARALLEL_THRESHOLD || partitions == 1) {
+			used = 1;
+			testRange(tasks[0], 0, pairs.size());
+		} else {
+			used = partitions;
+			for (int i = 0; i < partitions; i++) {
+				tasks[i].reinitialize();
+			}
+			allTask.reinitialize();
+			workers.invoke(allTask);
+		}
+		int checked = 0;
+		int hits = 0;
+		for (int t = 0; t < used; t++) {
+			PartitionTask task = tasks[t];
+			checked += task.checked;
+			hits += task.hitCount;
+			for (int h = 0; h < task.hitCount; h++) {
+				Entity first = pairs.getFirst(task.hits[h]);
+				Entity second = pairs.getSecond(task.hits[h]);
+				first.ifCollided(second);
+				second.ifCollided(first);
+			}
+		}
+		this.pairs = null;
+		hitsLastRun = hits;
+		return checked;
+	}
+
+	/**
+	 * Returns how many pairs hit each other in the last call to run().
+	 *
+	 * @return the number of hits
+	 */
+	public int getHitsLastRun() {
+		return hitsLastRun;
+	}
+
+	/**
+	 * Tests a range of the pair buffer, writing the pairs that hit into the
+	 * task's buffer.
+	 */
+	private void testRange(PartitionTask task, int from, int to) {
+		task.hitCount = 0;
+		task.checked = 0;
+		for (int i = from; i < to; i++) {
+			Entity first = pairs.getFirst(i);
+			Entity second = pairs.getSecond(i);
+			if (!CollisionLayers.get().canInteract(first, second)) {
+				continue;
+			}
+			task.checked++;
+			if (first.intersects(second)) {
+				if (task.hitCount == task.hits.length) {
+					int[] grown = new int[task.hitCount * 2];
+					System.arraycopy(task.hits, 0, grown, 0, task.hitCount);
+					task.hits = grown;
+				}
+				task.hits[task.hitCount++] = i;
+			}
+		}
+	}
+}
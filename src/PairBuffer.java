@@ -0,0 +1,82 @@
+/**
+ * A reusable list of pairs of entities, filled by a broad phase with the pairs
+ * that might be colliding this cycle. The buffer keeps its arrays between
+ * cycles, so filling it doesn't allocate once it has grown to the size of a
+ * typical cycle.
+ * 
+ * @author Andrew
+ * 
+ */
+public class PairBuffer {
+
+	// The first and second entity of each pair
+	private Entity[] first = new Entity[256];
+	private Entity[] second = new Entity[256];
+	// The number of pairs currently in the buffer
+	private int size = 0;
+
+	/**
+	 * Adds a pair of entities to the buffer.
+	 * 
+	 * @param entA
+	 *            The first entity of the pair, never a projectile
+	 * @param entB
+	 *            The second entity of the pair
+	 */
+	public void add(Entity entA, Entity entB) {
+		if (size == first.length) {
+			Entity[] grownFirst = new Entity[size * 2];
+			Entity[] grownSecond = new Entity[size * 2];
+			System.arraycopy(first, 0, grownFirst, 0, size);
+			System.arraycopy(second, 0, grownSecond, 0, size);
+			first = grownFirst;
+			second = grownSecond;
+		}
+		first[size] = entA;
+		second[size] = entB;
+		size++;
+	}
+
+	/**
+	 * Empties the buffer. The references are cleared so that removed entities
+	 * can still be garbage collected.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			first[i] = null;
+			second[i] = null;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Returns the first entity of the pair at the given index.
+	 * 
+	 * @param i
+	 *            The index of the pair
+	 * @return the first entity of the pair
+	 */
+	public Entity getFirst(int i) {
+		return first[i];
+	}
+
+	/**
+	 * Returns the second entity of the pair at the given index.
+	 * 
+	 * @param i
+	 *            The index of the pair
+	 * @return the second entity of the pair
+	 */
+	public Entity getSecond(int i) {
+		return second[i];
+	}
+
+	/**
+	 * Returns the number of pairs in the buffer.
+	 * 
+	 * @return the number of pairs
+	 */
+	public int size() {
+		return size;
+	}
+}
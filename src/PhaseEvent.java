@@ -0,0 +1,27 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event covering one run of a timed phase of the game, such
+ * as a whole cycle or the collision checks in it. Begun and committed by the
+ * phase's PhaseTimer, and only ever created while a recording has the event
+ * enabled.
+ *
+ * @author Andrew
+ *
+ */
+@Name("conquest.Phase")
+@Label("Engine Phase")
+@Category({ "Galactic Conquest", "Engine" })
+@Description("One run of a timed phase of the game loop or the render loop")
+@StackTrace(false)
+public class PhaseEvent extends Event {
+
+	// The name of the phase, as shown on the profiler overlay
+	@Label("Phase")
+	String phase;
+}
@@ -0,0 +1,220 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A phase timer keeps the most recent times taken by one phase of the game
+ * (e.g. the collision checks) in a ring buffer, so the profiler can show how
+ * long the phase usually takes and how long it takes at its worst.
+ *
+ * Recording a time is just a System.nanoTime() call and two ordered writes,
+ * with no locking and no allocation, so the phases can be timed every cycle
+ * in the field. Each timer must only be recorded to by one thread, but can be
+ * read from any thread while it is being recorded to.
+ *
+ * Every time is also counted into a histogram that is never reset, for the
+ * metrics endpoint to export.
+ *
+ * A phase timed with start() and stop() is also a flight recorder event, so
+ * a recording shows every phase on the same timeline as the garbage collector
+ * and the JIT. Without a recording running no event is created.
+ *
+ * @author Andrew
+ *
+ */
+public class PhaseTimer {
+
+	// The number of times kept, which must be a power of two
+	public static final int CAPACITY = 512;
+	// The upper bound in nanoseconds of each histogram bucket, besides the
+	// last bucket which holds everything slower
+	public static final long[] BUCKET_BOUNDS = { 100000, 250000, 500000,
+			1000000, 2500000, 5000000, 10000000, 25000000, 50000000,
+			100000000 };
+
+	// The name the phase is shown under
+	private String name;
+	// The time in nanoseconds the phase should take at most, before it holds
+	// up the rest of the game
+	private long budgetNanos;
+	// The most recent times, in nanoseconds
+	private AtomicLongArray samples = new AtomicLongArray(CAPACITY);
+	// The number of times recorded so far
+	private AtomicLong count = new AtomicLong();
+	// The number of times that fell into each histogram bucket, and the sum
+	// of every time recorded in nanoseconds
+	private AtomicLongArray buckets = new AtomicLongArray(
+			BUCKET_BOUNDS.length + 1);
+	private AtomicLong sumNanos = new AtomicLong();
+	// Used to sort the times when working out percentiles
+	private long[] scratch = new long[CAPACITY];
+	// The flight recorder event of the run in progress, or null if no
+	// recording has the event enabled
+	private PhaseEvent event;
+
+	/**
+	 * Creates a phase timer.
+	 *
+	 * @param name
+	 *            The name the phase is shown under
+	 * @param budgetNanos
+	 *            The time in nanoseconds the phase should take at most
+	 */
+	public PhaseTimer(String name, long budgetNanos) {
+		this.name = name;
+		this.budgetNanos = budgetNanos;
+	}
+
+	/**
+	 * Records the time taken by one run of the phase.
+	 *
+	 * @param nanos
+	 *            The time taken in nanoseconds
+	 */
+	public void record(long nanos) {
+		long n = count.get();
+		samples.lazySet((int) (n & (CAPACITY - 1)), nanos);
+		count.lazySet(n + 1);
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS.length && nanos > BUCKET_BOUNDS[bucket]) {
+			bucket++;
+		}
+		buckets.lazySet(bucket, buckets.get(bucket) + 1);
+		sumNanos.lazySet(sumNanos.get() + nanos);
+	}
+
+	/**
+	 * Marks the start of a run of the phase, beginning its flight recorder
+	 * event if one is being recorded.
+	 *
+	 * @return the time in nanoseconds the phase started, to be handed to
+	 *         stop()
+	 */
+	public long start() {
+		// Never escapes unless enabled, so the JIT can leave out the
+		// allocation when nothing is recording
+		PhaseEvent started = new PhaseEvent();
+		if (started.isEnabled()) {
+			started.phase = name;
+			started.begin();
+			event = started;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Records the time from the start of the phase until now, and commits the
+	 * phase's flight recorder event if start() began one. Returns the time
+	 * now, so the next phase can be timed from it without another call to
+	 * System.nanoTime().
+	 *
+	 * @param startTime
+	 *            The time in nanoseconds the phase started
+	 * @return the time in nanoseconds the phase finished
+	 */
+	public long stop(long startTime) {
+		long endTime = System.nanoTime();
+		record(endTime - startTime);
+		if (event != null) {
+			event.commit();
+			event = null;
+		}
+		return endTime;
+	}
+
+	/**
+	 * @return the number of times recorded so far
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Copies the histogram into an array, each bucket counting every time up
+	 * to its bound, so the last bucket is the number of times in the
+	 * histogram.
+	 *
+	 * @param into
+	 *            The array to copy into, one longer than BUCKET_BOUNDS
+	 */
+	public void copyHistogram(long[] into) {
+		long total = 0;
+		for (int i = 0; i < into.length; i++) {
+			total += buckets.get(i);
+			into[i] = total;
+		}
+	}
+
+	/**
+	 * @return the sum in nanoseconds of every time in the histogram
+	 */
+	public long getSumNanos() {
+		return sumNanos.get();
+	}
+
+	/**
+	 * @return the name of the phase
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the time in nanoseconds the phase should take at most
+	 */
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+	/**
+	 * Copies the most recent times into an array, oldest first.
+	 *
+	 * @param into
+	 *            The array to copy into
+	 * @return the number of times copied, at most the length of the array
+	 */
+	public int copyRecent(long[] into) {
+		long n = count.get();
+		int copied = (int) Math.min(Math.min(n, CAPACITY), into.length);
+		for (int i = 0; i < copied; i++) {
+			into[i] = samples.get((int) ((n - copied + i) & (CAPACITY - 1)));
+		}
+		return copied;
+	}
+
+	/**
+	 * Works out percentiles of the most recent times.
+	 *
+	 * @param fractions
+	 *            The percentiles to find, from 0 to 1, e.g. 0.99 for the 99th
+	 *            percentile
+	 * @param into
+	 *            The array to put each percentile into, in nanoseconds, or 0
+	 *            if nothing has been recorded yet
+	 */
+	public synchronized void getPercentiles(double[] fractions, long[] into) {
+		int copied = copyRecent(scratch);
+		Arrays.sort(scratch, 0, copied);
+		for (int i = 0; i < fractions.length; i++) {
+			if (copied == 0) {
+				into[i] = 0;
+				continue;
+			}
+			int index = (int) Math.ceil(fractions[i] * copied) - 1;
+			into[i] = scratch[Math.max(0, Math.min(copied - 1, index))];
+		}
+	}
+
+	/**
+	 * Returns a one line summary of the phase, for logging.
+	 *
+	 * @return the summary
+	 */
+	@Override
+	public String toString() {
+		long[] p = new long[3];
+		getPercentiles(new double[] { 0.5, 0.99, 1 }, p);
+		return String.format("%s p50=%.3fms p99=%.3fms max=%.3fms", name,
+				p[0] / 1e6, p[1] / 1e6, p[2] / 1e6);
+	}
+}
@@ -28,6 +28,8 @@ public class PlayerShip extends Ship {
 				GameEngine.displayHeight / 2);
 		// A player, obviously
 		isPlayer = true;
+		// The faction this ship fights for, which decides what can hit it
+		faction = CollisionLayers.PLAYER_FACTION;
 		// The "life" of this player
 		hullIntegrity = 100;
 		// How much to increment the speed by each cycle if engine is thrusted
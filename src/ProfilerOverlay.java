@@ -0,0 +1,146 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.util.List;
+
+/**
+ * The profiler overlay is drawn over the HUD when toggled on, and shows how
+ * long each phase of the game is taking. At the top is a graph of the most
+ * recent frame and cycle times against the frame budget, and under it a
+ * breakdown of every timed phase with its rolling 50th and 99th percentile
+ * and worst time. Any phase whose 99th percentile is over its budget is shown
+ * in red, so when the game stutters it is obvious which phase is to blame.
+ *
+ * Only ever drawn by the render thread.
+ *
+ * @author Andrew
+ *
+ */
+public class ProfilerOverlay {
+
+	// The size of the overlay in pixels
+	private static final int WIDTH = 380;
+	private static final int GRAPH_HEIGHT = 100;
+	private static final int ROW_HEIGHT = 14;
+	// The percentiles shown for each phase
+	private static final double[] FRACTIONS = { 0.5, 0.99, 1 };
+	// The colours of the graph lines
+	private static final Color FRAME_COLOR = Color.GREEN;
+	private static final Color TICK_COLOR = Color.CYAN;
+	private static final Color OVER_BUDGET_COLOR = new Color(255, 80, 80);
+	// The colour behind the overlay, dark but see-through
+	private static final Color BACKGROUND_COLOR = new Color(0, 0, 0, 180);
+
+	// The timer whose times are graphed as frame times, and the one graphed
+	// as cycle times
+	private PhaseTimer frameTimer;
+	private PhaseTimer tickTimer;
+	// The font the overlay is written in
+	private Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	// Reused for reading the times out of the timers
+	private long[] recent = new long[PhaseTimer.CAPACITY];
+	private long[] percentiles = new long[FRACTIONS.length];
+	private int[] graphX = new int[PhaseTimer.CAPACITY];
+	private int[] graphY = new int[PhaseTimer.CAPACITY];
+
+	/**
+	 * Creates a profiler overlay.
+	 *
+	 * @param frameTimer
+	 *            The timer of the time between frames, graphed in green
+	 * @param tickTimer
+	 *            The timer of the time each cycle takes, graphed in cyan
+	 */
+	public ProfilerOverlay(PhaseTimer frameTimer, PhaseTimer tickTimer) {
+		this.frameTimer = frameTimer;
+		this.tickTimer = tickTimer;
+	}
+
+	/**
+	 * Draws the overlay.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param x
+	 *            The X coordinate of the top left corner of the overlay
+	 * @param y
+	 *            The Y coordinate of the top left corner of the overlay
+	 * @param collisionsPerCycle
+	 *            The average number of collision checks per cycle, shown
+	 *            under the phases
+	 * @param quality
+	 *            The name of the quality tier frames are drawn at, shown
+	 *            under the phases
+	 */
+	public void draw(Graphics2D g2D, int x, int y, double collisionsPerCycle,
+			String quality) {
+		List<PhaseTimer> timers = MetricsRegistry.get().getTimers();
+		int height = GRAPH_HEIGHT + ROW_HEIGHT * (timers.size() + 5) + 8;
+		Font tempFont = g2D.getFont();
+		Color tempColor = g2D.getColor();
+		g2D.setFont(font);
+		g2D.setColor(BACKGROUND_COLOR);
+		g2D.fillRect(x, y, WIDTH, height);
+
+		// The graph runs from 0 at the bottom to twice the frame budget at the
+		// top, with a line across the middle at the budget
+		long graphMax = frameTimer.getBudgetNanos() * 2;
+		int graphTop = y + ROW_HEIGHT + 4;
+		int graphBottom = graphTop + GRAPH_HEIGHT;
+		g2D.setColor(Color.DARK_GRAY);
+		g2D.drawRect(x + 4, graphTop, WIDTH - 8, GRAPH_HEIGHT);
+		g2D.drawLine(x + 4, graphTop + GRAPH_HEIGHT / 2, x + WIDTH - 4,
+				graphTop + GRAPH_HEIGHT / 2);
+		drawGraph(g2D, tickTimer, TICK_COLOR, x + 4, graphBottom, graphMax);
+		drawGraph(g2D, frameTimer, FRAME_COLOR, x + 4, graphBottom, graphMax);
+		g2D.setColor(Color.WHITE);
+		g2D.drawString("Profiler (F3)", x + 6, y + ROW_HEIGHT);
+		g2D.setColor(FRAME_COLOR);
+		g2D.drawString("frame", x + WIDTH - 110, y + ROW_HEIGHT);
+		g2D.setColor(TICK_COLOR);
+		g2D.drawString("tick", x + WIDTH - 60, y + ROW_HEIGHT);
+
+		// The breakdown of every phase, in milliseconds
+		int row = graphBottom + ROW_HEIGHT + 4;
+		g2D.setColor(Color.LIGHT_GRAY);
+		g2D.drawString(String.format("%-16s %8s %8s %8s", "phase (ms)", "p50",
+				"p99", "max"), x + 6, row);
+		for (int i = 0; i < timers.size(); i++) {
+			PhaseTimer timer = timers.get(i);
+			timer.getPercentiles(FRACTIONS, percentiles);
+			row += ROW_HEIGHT;
+			boolean overBudget = percentiles[1] > timer.getBudgetNanos();
+			g2D.setColor(overBudget ? OVER_BUDGET_COLOR : Color.WHITE);
+			g2D.drawString(String.format("%-16s %8.2f %8.2f %8.2f",
+					timer.getName(), percentiles[0] / 1e6,
+					percentiles[1] / 1e6, percentiles[2] / 1e6), x + 6, row);
+		}
+		row += ROW_HEIGHT;
+		g2D.setColor(Color.LIGHT_GRAY);
+		g2D.drawString(String.format("collision checks per cycle %.1f",
+				collisionsPerCycle), x + 6, row);
+		row += ROW_HEIGHT;
+		g2D.drawString("render quality " + quality, x + 6, row);
+		g2D.setFont(tempFont);
+		g2D.setColor(tempColor);
+	}
+
+	/**
+	 * Draws the most recent times of a timer as a line, one pixel apart with
+	 * the newest on the right.
+	 */
+	private void drawGraph(Graphics2D g2D, PhaseTimer timer, Color color,
+			int left, int bottom, long graphMax) {
+		int width = WIDTH - 8;
+		int count = timer.copyRecent(recent);
+		int points = Math.min(count, width);
+		int first = count - points;
+		for (int i = 0; i < points; i++) {
+			long nanos = Math.min(recent[first + i], graphMax);
+			graphX[i] = left + width - points + i;
+			graphY[i] = bottom - (int) (nanos * GRAPH_HEIGHT / graphMax);
+		}
+		g2D.setColor(color);
+		g2D.drawPolyline(graphX, graphY, points);
+	}
+}
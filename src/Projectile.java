@@ -48,15 +48,69 @@ public class Projectile extends Entity {
 	 */
 	public Projectile(double xPos, double yPos, double xDest, double yDest,
 			double speed, boolean isPlayerProjectile) {
+		this(xPos, yPos, xDest, yDest, speed,
+				isPlayerProjectile ? CollisionLayers.PLAYER_FACTION
+						: CollisionLayers.HOSTILE_FACTION);
+	}
+
+	/**
+	 * This constructor is used to generate a projectile fired by the given
+	 * faction, based on a source location and a destination, both in XY
+	 * coordinates
+	 * 
+	 * @param xPos
+	 *            the X coordinate of the source
+	 * @param yPos
+	 *            The Y coordinate of the source
+	 * @param xDest
+	 *            The X coordinate of the destination
+	 * @param yDest
+	 *            The Y coordinate of the destination
+	 * @param speed
+	 *            The speed of this projectile
+	 * @param faction
+	 *            The faction of whoever fired this projectile
+	 */
+	public Projectile(double xPos, double yPos, double xDest, double yDest,
+			double speed, int faction) {
 		super("red_shot", xPos, yPos);
-		this.isPlayerProjectile = isPlayerProjectile;
+		this.faction = faction;
+		this.isPlayerProjectile = faction == CollisionLayers.PLAYER_FACTION;
 		isProjectile = true;
+		collisionLayer = CollisionLayers.PROJECTILE_LAYER;
+		collisionMask = CollisionLayers.SHIP_LAYER;
 		// Given that all projectiles are also entities, there is a
 		// movementVector associated with it. This movement vector actually
 		// moves the projectile, as it is an entity.
 		movementVector = new Vector2D(xPos, yPos, xDest, yDest, speed, this);
 	}
 
+	/**
+	 * Resets a disabled projectile so it can be fired again by the projectile
+	 * pool, exactly as if it had just been constructed with these values.
+	 * 
+	 * @param xPos
+	 *            the X coordinate of the source
+	 * @param yPos
+	 *            The Y coordinate of the source
+	 * @param xDest
+	 *            The X coordinate of the destination
+	 * @param yDest
+	 *            The Y coordinate of the destination
+	 * @param speed
+	 *            The speed of this projectile
+	 * @param faction
+	 *            The faction of whoever fired this projectile
+	 */
+	public void reset(double xPos, double yPos, double xDest, double yDest,
+			double speed, int faction) {
+		this.faction = faction;
+		this.isPlayerProjectile = faction == CollisionLayers.PLAYER_FACTION;
+		resetPosition(xPos, yPos);
+		movementVector.reset(xPos, yPos, xDest, yDest, speed);
+		enable();
+	}
+
 	/**
 	 * What to do if this projectile is collided.. Currently only disables the
 	 * projectile.
@@ -0,0 +1,439 @@
+import java.util.Arrays;
+
+/**
+ * The projectile field holds every live projectile in one place, as primitive
+ * arrays instead of one entity object per shot. Projectiles in the field carry
+ * only what a shot needs: position, velocity, heading, owner faction and how
+ * many cycles it has left to live. The whole field is stepped in one loop,
+ * tested against the ships in bulk, and captured for drawing in one pass,
+ * which is what lets a battle run tens of thousands of shots at once.
+ *
+ * The positions and velocities are stored as either floats or doubles,
+ * depending on which subclass is created by create(). The subclasses only
+ * hold the arrays, everything else works through the accessors below.
+ *
+ * @author Andrew
+ *
+ */
+public abstract class ProjectileField {
+
+	// The size in pixels of each cell of the grid ships are sorted into for
+	// collision testing
+	private static final double CELL_SIZE = 128;
+
+	/**
+	 * Creates an empty projectile field.
+	 *
+	 * @param capacity
+	 *            How many projectiles to make room for up front, the field
+	 *            grows past this if it needs to
+	 * @param singlePrecision
+	 *            True to store positions and velocities as floats, false for
+	 *            doubles
+	 * @return the new projectile field
+	 */
+	public static ProjectileField create(int capacity,
+			boolean singlePrecision) {
+		if (singlePrecision) {
+			return new FloatProjectileField(capacity);
+		}
+		return new DoubleProjectileField(capacity);
+	}
+
+	// The number of live projectiles, which are always packed into the front
+	// of the arrays
+	protected int count = 0;
+	// The faction that fired each projectile
+	protected int[] faction;
+	// How many more cycles each projectile lives before it is removed
+	protected int[] lifetime;
+	// The sprite every projectile in this field is drawn with, and the size of
+	// its bounding box
+	protected SpriteHandle sprite;
+	protected double width;
+	protected double height;
+	// The number of projectiles that hit a ship in the last collision pass
+	protected int hitsLastCycle;
+
+	// The grid the ships are sorted into each cycle, anchored at the top left
+	// corner of the area entities are allowed to live in
+	private double gridX;
+	private double gridY;
+	private int gridColumns;
+	private int gridRows;
+	// For each cell, where its ships start in cellShips. The ships of cell c
+	// are cellShips[cellStart[c]] up to cellShips[cellStart[c + 1]]
+	private int[] cellStart;
+	private int[] cellShips = new int[64];
+	private int[] cellCursor;
+	// The ships that can be hit this cycle, with their bounding boxes and
+	// faction copied out for the collision loop
+	private Ship[] ships = new Ship[16];
+	private double[] shipLeft = new double[16];
+	private double[] shipTop = new double[16];
+	private double[] shipRight = new double[16];
+	private double[] shipBottom = new double[16];
+	private int[] shipFaction = new int[16];
+	private int shipCount = 0;
+	// The range of grid cells covered by each ship
+	private int[] shipCells = new int[64];
+
+	/**
+	 * Sets up the parts of the field that don't depend on the precision of the
+	 * positions.
+	 *
+	 * @param capacity
+	 *            How many projectiles to make room for up front
+	 */
+	protected ProjectileField(int capacity) {
+		capacity = Math.max(16, capacity);
+		faction = new int[capacity];
+		lifetime = new int[capacity];
+		sprite = new SpriteHandle(SpriteStore.get().getSprite("red_shot"));
+		width = sprite.getSpriteWidth();
+		height = sprite.getSpriteHeight();
+		// The grid covers the same area entities live in before they are
+		// disabled, which is one display size out in every direction
+		gridX = -GameEngine.displayWidth;
+		gridY = -GameEngine.displayHeight;
+		gridColumns = (int) Math.ceil(GameEngine.displayWidth * 3 / CELL_SIZE);
+		gridRows = (int) Math.ceil(GameEngine.displayHeight * 3 / CELL_SIZE);
+		cellStart = new int[gridColumns * gridRows + 1];
+		cellCursor = new int[gridColumns * gridRows];
+	}
+
+	/**
+	 * Returns the number of live projectiles in this field.
+	 *
+	 * @return the number of projectiles
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns how many projectiles hit a ship in the last call to collide().
+	 *
+	 * @return the number of hits
+	 */
+	public int getHitsLastCycle() {
+		return hitsLastCycle;
+	}
+
+	/**
+	 * Fires a new projectile from a source position towards a destination.
+	 *
+	 * @param xPos
+	 *            the X coordinate of the source
+	 * @param yPos
+	 *            The Y coordinate of the source
+	 * @param xDest
+	 *            The X coordinate of the destination
+	 * @param yDest
+	 *            The Y coordinate of the destination
+	 * @param speed
+	 *            The speed of the projectile
+	 * @param owner
+	 *            The faction that fired the projectile, see CollisionLayers
+	 * @param cycles
+	 *            How many cycles the projectile lives for
+	 */
+	public void spawn(double xPos, double yPos, double xDest, double yDest,
+			double speed, int owner, int cycles) {
+		if (count == faction.length) {
+			int newCapacity = faction.length * 2;
+			int[] grownFaction = new int[newCapacity];
+			int[] grownLifetime = new int[newCapacity];
+			System.arraycopy(faction, 0, grownFaction, 0, count);
+			System.arraycopy(lifetime, 0, grownLifetime, 0, count);
+			faction = grownFaction;
+			lifetime = grownLifetime;
+			grow(newCapacity);
+		}
+		double theta = Math.atan2(yDest - yPos, xDest - xPos);
+		store(count, xPos, yPos, speed * Math.cos(theta),
+				speed * Math.sin(theta), theta);
+		faction[count] = owner;
+		lifetime[count] = cycles;
+		count++;
+	}
+
+	/**
+	 * Grows the position, velocity and heading arrays so they can hold the
+	 * given number of projectiles. The live projectiles are kept.
+	 *
+	 * @param capacity
+	 *            The new capacity of the arrays
+	 */
+	protected abstract void grow(int capacity);
+
+	/**
+	 * Stores the position, velocity and heading of the projectile at the given
+	 * index.
+	 */
+	protected abstract void store(int i, double x, double y, double xVel,
+			double yVel, double theta);
+
+	/**
+	 * @return the X coordinate of the projectile at the given index
+	 */
+	protected abstract double getX(int i);
+
+	/**
+	 * @return the Y coordinate of the projectile at the given index
+	 */
+	protected abstract double getY(int i);
+
+	/**
+	 * @return the distance the projectile at the given index moves along X
+	 *         each cycle
+	 */
+	protected abstract double getXVel(int i);
+
+	/**
+	 * @return the distance the projectile at the given index moves along Y
+	 *         each cycle
+	 */
+	protected abstract double getYVel(int i);
+
+	/**
+	 * @return the heading of the projectile at the given index
+	 */
+	protected abstract double getTheta(int i);
+
+	/**
+	 * Moves the projectile at the given index to a new position.
+	 */
+	protected abstract void setPosition(int i, double x, double y);
+
+	/**
+	 * Moves the projectile at the last index into the given index, which is
+	 * how removed projectiles are packed out of the arrays.
+	 *
+	 * @param i
+	 *            The index of the projectile being removed
+	 */
+	protected void removeAt(int i) {
+		count--;
+		faction[i] = faction[count];
+		lifetime[i] = lifetime[count];
+		moveLast(i);
+	}
+
+	/**
+	 * Copies the position, velocity and heading of the projectile at index
+	 * count into index i.
+	 */
+	protected abstract void moveLast(int i);
+
+	/**
+	 * Steps every projectile by its velocity, and removes any projectile that
+	 * has run out of lifetime or left the given area.
+	 *
+	 * @param minX
+	 *            The left edge of the area projectiles may live in
+	 * @param minY
+	 *            The top edge of the area projectiles may live in
+	 * @param maxX
+	 *            The right edge of the area projectiles may live in
+	 * @param maxY
+	 *            The bottom edge of the area projectiles may live in
+	 */
+	public void step(double minX, double minY, double maxX, double maxY) {
+		int i = 0;
+		while (i < count) {
+			double newX = getX(i) + getXVel(i);
+			double newY = getY(i) + getYVel(i);
+			if (--lifetime[i] < 0 || newX < minX || newY < minY
+					|| newX > maxX || newY > maxY) {
+				// The last projectile is moved into this slot, so the slot is
+				// looked at again without moving on
+				removeAt(i);
+				continue;
+			}
+			setPosition(i, newX, newY);
+			i++;
+		}
+	}
+
+	/**
+	 * Tests every projectile against every ship of another faction. A
+	 * projectile that hits a ship damages it and is removed.
+	 *
+	 * @param entities
+	 *            The entities in the game, anything but enabled ships is
+	 *            ignored
+	 */
+	public void collide(EntityStore entities) {
+		hitsLastCycle = 0;
+		buildShipGrid(entities);
+		if (shipCount > 0 && count > 0) {
+			collideShips();
+		}
+	}
+
+	/**
+	 * The bulk collision loop, which looks up the ships in the grid cell of
+	 * each projectile and calls hit() for the first one it overlaps.
+	 */
+	private void collideShips() {
+		CollisionLayers layers = CollisionLayers.get();
+		int i = 0;
+		while (i < count) {
+			double left = getX(i);
+			double top = getY(i);
+			double right = left + width;
+			double bottom = top + height;
+			int cell = cellAt(left + width / 2, top + height / 2);
+			int owner = faction[i];
+			boolean hit = false;
+			int end = cellStart[cell + 1];
+			for (int c = cellStart[cell]; c < end; c++) {
+				int s = cellShips[c];
+				if (layers.isHostile(owner, shipFaction[s])
+						&& left < shipRight[s] && right > shipLeft[s]
+						&& top < shipBottom[s] && bottom > shipTop[s]) {
+					hit(s);
+					hit = true;
+					break;
+				}
+			}
+			if (hit) {
+				removeAt(i);
+			} else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Returns the grid cell that holds the given point, clamped to the edges
+	 * of the grid.
+	 */
+	private int cellAt(double px, double py) {
+		int column = (int) ((px - gridX) / CELL_SIZE);
+		int row = (int) ((py - gridY) / CELL_SIZE);
+		column = Math.max(0, Math.min(gridColumns - 1, column));
+		row = Math.max(0, Math.min(gridRows - 1, row));
+		return row * gridColumns + column;
+	}
+
+	/**
+	 * Applies a hit from a projectile to a ship. If the hit disables the ship,
+	 * its bounding box is emptied so the rest of the projectiles in this pass
+	 * fly past it.
+	 *
+	 * @param ship
+	 *            The index of the ship that was hit
+	 */
+	private void hit(int ship) {
+		ships[ship].takeHit();
+		hitsLastCycle++;
+		if (!ships[ship].isEnabled()) {
+			shipLeft[ship] = Double.POSITIVE_INFINITY;
+			shipRight[ship] = Double.NEGATIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Copies out the enabled ships that can be hit, and sorts them into the
+	 * grid cells they overlap. A ship is put in every cell a projectile centre
+	 * could be in while still touching the ship, so each projectile only has
+	 * to look at the single cell its centre is in.
+	 */
+	private void buildShipGrid(EntityStore entities) {
+		shipCount = 0;
+		int entityCount = entities.size();
+		for (int i = 0; i < entityCount; i++) {
+			Entity ent = entities.get(i);
+			if (ent.isProjectile || !ent.isEnabled) {
+				continue;
+			}
+			Ship ship = (Ship) ent;
+			if (shipCount == ships.length) {
+				growShips(shipCount * 2);
+			}
+			ships[shipCount] = ship;
+			shipLeft[shipCount] = ship.getX();
+			shipTop[shipCount] = ship.getY();
+			shipRight[shipCount] = ship.getX() + ship.getWidth();
+			shipBottom[shipCount] = ship.getY() + ship.getHeight();
+			shipFaction[shipCount] = ship.faction;
+			shipCount++;
+		}
+		// Counts how many ships land in each cell
+		int cells = cellCursor.length;
+		for (int c = 0; c <= cells; c++) {
+			cellStart[c] = 0;
+		}
+		int total = 0;
+		for (int s = 0; s < shipCount; s++) {
+			int first = cellAt(shipLeft[s] - width / 2, shipTop[s] - height
+					/ 2);
+			int last = cellAt(shipRight[s] + width / 2, shipBottom[s] + height
+					/ 2);
+			shipCells[s * 4] = first % gridColumns;
+			shipCells[s * 4 + 1] = first / gridColumns;
+			shipCells[s * 4 + 2] = last % gridColumns;
+			shipCells[s * 4 + 3] = last / gridColumns;
+			for (int row = shipCells[s * 4 + 1]; row <= shipCells[s * 4 + 3];
+					row++) {
+				for (int column = shipCells[s * 4];
+						column <= shipCells[s * 4 + 2]; column++) {
+					cellStart[row * gridColumns + column + 1]++;
+					total++;
+				}
+			}
+		}
+		// Turns the counts into start positions, then fills each cell
+		for (int c = 0; c < cells; c++) {
+			cellStart[c + 1] += cellStart[c];
+			cellCursor[c] = cellStart[c];
+		}
+		if (total > cellShips.length) {
+			cellShips = new int[Math.max(total, cellShips.length * 2)];
+		}
+		for (int s = 0; s < shipCount; s++) {
+			for (int row = shipCells[s * 4 + 1]; row <= shipCells[s * 4 + 3];
+					row++) {
+				for (int column = shipCells[s * 4];
+						column <= shipCells[s * 4 + 2]; column++) {
+					cellShips[cellCursor[row * gridColumns + column]++] = s;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grows the arrays holding the ships copied out for collision testing.
+	 */
+	private void growShips(int capacity) {
+		Ship[] grownShips = new Ship[capacity];
+		System.arraycopy(ships, 0, grownShips, 0, shipCount);
+		ships = grownShips;
+		shipLeft = Arrays.copyOf(shipLeft, capacity);
+		shipTop = Arrays.copyOf(shipTop, capacity);
+		shipRight = Arrays.copyOf(shipRight, capacity);
+		shipBottom = Arrays.copyOf(shipBottom, capacity);
+		shipFaction = Arrays.copyOf(shipFaction, capacity);
+		shipCells = Arrays.copyOf(shipCells, capacity * 4);
+	}
+
+	/**
+	 * Adds every projectile in the field to a render snapshot in one pass.
+	 * The position of each projectile on the last cycle is its current
+	 * position minus one step of velocity, so no extra arrays are needed for
+	 * interpolation.
+	 *
+	 * @param snapshot
+	 *            The snapshot being filled this cycle
+	 */
+	public void capture(RenderSnapshot snapshot) {
+		for (int i = 0; i < count; i++) {
+			double x = getX(i);
+			double y = getY(i);
+			snapshot.addSprite(sprite, width, height, x - getXVel(i), y
+					- getYVel(i), x, y, getTheta(i));
+		}
+	}
+}
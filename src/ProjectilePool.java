@@ -0,0 +1,90 @@
+/**
+ * The projectile pool recycles projectiles that have been disabled, so that
+ * turrets firing every few cycles don't allocate a brand new projectile (and
+ * its bounding box, movement vector and hardpoint list) for every shot. The
+ * game engine hands disabled projectiles back to the pool when it removes them
+ * from the entity cache, and turrets take them back out when they fire.
+ *
+ * @author Andrew
+ *
+ */
+public class ProjectilePool {
+
+	// The disabled projectiles waiting to be reused, used as a stack
+	private Projectile[] free;
+	// The number of projectiles currently held in the free stack
+	private int freeCount = 0;
+	// The most projectiles this pool will hold on to. Anything released past
+	// this is dropped and garbage collected.
+	private final int highWaterMark;
+
+	/**
+	 * Creates an empty projectile pool.
+	 *
+	 * @param highWaterMark
+	 *            The most disabled projectiles this pool keeps for reuse
+	 */
+	public ProjectilePool(int highWaterMark) {
+		this.highWaterMark = Math.max(0, highWaterMark);
+		free = new Projectile[Math.min(this.highWaterMark, 64)];
+	}
+
+	/**
+	 * Returns the number of disabled projectiles waiting to be reused.
+	 *
+	 * @return the freeCount
+	 */
+	public int getFreeCount() {
+		return freeCount;
+	}
+
+	/**
+	 * Gets a projectile ready to be added to the entity cache. A recycled
+	 * projectile is used if there is one, otherwise a new one is created. The
+	 * parameters are the same as the projectile constructor.
+	 *
+	 * @param xPos
+	 *            the X coordinate of the source
+	 * @param yPos
+	 *            The Y coordinate of the source
+	 * @param xDest
+	 *            The X coordinate of the destination
+	 * @param yDest
+	 *            The Y coordinate of the destination
+	 * @param speed
+	 *            The speed of this projectile
+	 * @param faction
+	 *            The faction of whoever fired the projectile
+	 * @return an enabled projectile heading for the destination
+	 */
+	public Projectile obtain(double xPos, double yPos, double xDest,
+			double yDest, double speed, int faction) {
+		if (freeCount == 0) {
+			return new Projectile(xPos, yPos, xDest, yDest, speed, faction);
+		}
+		Projectile projectile = free[--freeCount];
+		free[freeCount] = null;
+		projectile.reset(xPos, yPos, xDest, yDest, speed, faction);
+		return projectile;
+	}
+
+	/**
+	 * Hands a disabled projectile back to the pool. The projectile must no
+	 * longer be in the entity cache.
+	 *
+	 * @param projectile
+	 *            The projectile to recycle
+	 */
+	public void release(Projectile projectile) {
+		if (freeCount >= highWaterMark) {
+			return;
+		}
+		if (freeCount == free.length) {
+			Projectile[] grown = new Projectile[Math.min(highWaterMark,
+					free.length * 2)];
+			System.arraycopy(free, 0, grown, 0, freeCount);
+			free = grown;
+		}
+		free[freeCount++] = projectile;
+	}
+}
@@ -45,6 +45,21 @@ public class Quadtree {
 		}
 	}
 
+	/**
+	 * Returns the number of nodes in this quadtree, counting this one.
+	 * 
+	 * @return the number of nodes
+	 */
+	public int getNodeCount() {
+		int count = 1;
+		for (int i = 0; i < nodes.length; i++) {
+			if (nodes[i] != null) {
+				count += nodes[i].getNodeCount();
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * Splits the node into 4 subnodes
 	 * 
@@ -0,0 +1,75 @@
+import java.awt.Rectangle;
+import java.util.Vector;
+
+/**
+ * A broad phase which uses the quadtree. The quadtree is cleared and every
+ * enabled entity is inserted again each cycle, then each ship pulls the
+ * entities near it back out of the quadtree.
+ * 
+ * @author Andrew
+ * 
+ */
+public class QuadtreeBroadPhase implements BroadPhase {
+
+	// The quadtree for storing entities in a 2D grid spanning the game space
+	private Quadtree quad;
+	// The entities the quadtree was built from this cycle
+	private EntityStore entities;
+
+	/**
+	 * Creates a quadtree broad phase covering the given area.
+	 * 
+	 * @param bounds
+	 *            The area covered by the root of the quadtree
+	 */
+	public QuadtreeBroadPhase(Rectangle bounds) {
+		quad = new Quadtree(0, bounds);
+	}
+
+	@Override
+	public void update(EntityStore entities) {
+		this.entities = entities;
+		// Clears the quadtree
+		quad.clear();
+		for (int i = 0; i < entities.size(); i++) {
+			Entity currEntity = entities.get(i);
+			// Inserts the entity into the quadtree if it is enabled
+			if (currEntity.isEnabled) {
+				quad.insert(currEntity);
+			}
+		}
+	}
+
+	@Override
+	public void remove(Entity ent) {
+		// Nothing to do, the quadtree is rebuilt from scratch every cycle
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		for (int i = 0; i < entities.size(); i++) {
+			Entity currEnt = entities.get(i);
+			// Pulls all entities near current non-projectile entity from the
+			// quadtree
+			if (!currEnt.isProjectile && currEnt.isEnabled) {
+				query(currEnt, pairs);
+			}
+		}
+	}
+
+	@Override
+	public void query(Entity currEnt, PairBuffer pairs) {
+		Vector<Entity> temp = quad.retrieve(currEnt);
+		for (int j = 0; j < temp.size(); j++) {
+			Entity ent = temp.get(j);
+			if (currEnt != ent) {
+				pairs.add(currEnt, ent);
+			}
+		}
+	}
+
+	@Override
+	public int getNodeCount() {
+		return quad.getNodeCount();
+	}
+}
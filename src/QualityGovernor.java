@@ -0,0 +1,181 @@
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+/**
+ * The quality governor picks how nicely each frame is drawn, so that a machine
+ * too slow to draw the game at its best drops a little quality instead of
+ * dropping frames. It watches how long each frame takes to draw against the
+ * time between frames, and steps down a tier of quality when too many frames
+ * in a window miss it, then back up once there has been plenty of time to
+ * spare for a while.
+ *
+ * Stepping down is quick and stepping up is slow, and the governor waits a
+ * while after any change before stepping up again, so it settles on a tier
+ * instead of flickering between two.
+ *
+ * The tiers, from best to worst:
+ *
+ * HIGH - antialiasing, bilinear interpolation and quality rendering, every
+ * rotation step, stat bars drawn in 3D
+ * MEDIUM - as HIGH but with speed rendering
+ * LOW - no antialiasing, nearest neighbour interpolation, every other
+ * rotation step, flat stat bars
+ * LOWEST - as LOW but with every fourth rotation step, and each stat bar
+ * drawn as a single rectangle
+ *
+ * Only ever used by the thread that draws.
+ *
+ * @author Andrew
+ *
+ */
+public class QualityGovernor {
+
+	// The quality tiers, from best to worst
+	public static final int HIGH = 0;
+	public static final int MEDIUM = 1;
+	public static final int LOW = 2;
+	public static final int LOWEST = 3;
+	// The name of each tier
+	private static final String[] NAMES = { "HIGH", "MEDIUM", "LOW",
+			"LOWEST" };
+	// The number of frames in each window the frame times are judged over
+	private static final int WINDOW = 30;
+	// The fraction of a window's frames that must miss the budget to step down
+	private static final double MISS_FRACTION = 0.2;
+	// The fraction of the budget every frame of a window must be drawn inside
+	// to count towards stepping up
+	private static final double HEADROOM_FRACTION = 0.6;
+	// The number of windows in a row with headroom needed to step up
+	private static final int HEADROOM_WINDOWS = 3;
+	// The number of windows after a change before stepping up is considered
+	private static final int COOLDOWN_WINDOWS = 4;
+
+	/**
+	 * Sets the rendering hints of a tier.
+	 *
+	 * @param g2D
+	 *            The graphics context to set the hints on
+	 * @param tier
+	 *            The quality tier
+	 */
+	public static void applyHints(Graphics2D g2D, int tier) {
+		boolean smooth = tier <= MEDIUM;
+		g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				smooth ? RenderingHints.VALUE_ANTIALIAS_ON
+						: RenderingHints.VALUE_ANTIALIAS_OFF);
+		g2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				smooth ? RenderingHints.VALUE_INTERPOLATION_BILINEAR
+						: RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g2D.setRenderingHint(RenderingHints.KEY_RENDERING,
+				tier == HIGH ? RenderingHints.VALUE_RENDER_QUALITY
+						: RenderingHints.VALUE_RENDER_SPEED);
+	}
+
+	/**
+	 * Returns how many rotation steps a tier moves in at a time, so worse
+	 * tiers draw from fewer pre-rotated copies.
+	 *
+	 * @param tier
+	 *            The quality tier
+	 * @return the number of rotation steps per step drawn
+	 */
+	public static int getRotationStride(int tier) {
+		if (tier == LOWEST) {
+			return 4;
+		}
+		return tier == LOW ? 2 : 1;
+	}
+
+	/**
+	 * @return the name of a tier
+	 */
+	public static String getName(int tier) {
+		return NAMES[tier];
+	}
+
+	// The time in nanoseconds each frame has to be drawn in
+	private long budgetNanos;
+	// Whether the tier changes with the frame times, or stays where it started
+	private boolean adaptive;
+	// The tier frames are currently drawn at
+	private volatile int tier;
+	// The frames judged so far in this window, and how many missed the budget
+	// or took more than the headroom fraction of it
+	private int frames = 0;
+	private int missed = 0;
+	private int slow = 0;
+	// The windows in a row that had headroom, and the windows left before
+	// stepping up is considered again
+	private int headroomWindows = 0;
+	private int cooldown = 0;
+
+	/**
+	 * Creates a quality governor.
+	 *
+	 * @param budgetNanos
+	 *            The time in nanoseconds each frame has to be drawn in
+	 * @param startTier
+	 *            The tier to start at
+	 * @param adaptive
+	 *            Whether to change tier with the frame times, or always draw
+	 *            at the starting tier
+	 */
+	public QualityGovernor(long budgetNanos, int startTier, boolean adaptive) {
+		this.budgetNanos = budgetNanos;
+		this.tier = Math.max(HIGH, Math.min(LOWEST, startTier));
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * @return the tier frames are currently drawn at
+	 */
+	public int getTier() {
+		return tier;
+	}
+
+	/**
+	 * Judges how long a frame took to draw, changing tier at the end of each
+	 * window if it is called for.
+	 *
+	 * @param frameNanos
+	 *            The time in nanoseconds the frame took to draw and show
+	 */
+	public void recordFrame(long frameNanos) {
+		if (!adaptive) {
+			return;
+		}
+		frames++;
+		if (frameNanos > budgetNanos) {
+			missed++;
+		}
+		if (frameNanos > budgetNanos * HEADROOM_FRACTION) {
+			slow++;
+		}
+		if (frames < WINDOW) {
+			return;
+		}
+		if (cooldown > 0) {
+			cooldown--;
+		}
+		if (missed >= WINDOW * MISS_FRACTION) {
+			headroomWindows = 0;
+			if (tier < LOWEST) {
+				tier++;
+				cooldown = COOLDOWN_WINDOWS;
+			}
+		} else if (slow == 0) {
+			headroomWindows++;
+			if (headroomWindows >= HEADROOM_WINDOWS && cooldown == 0
+					&& tier > HIGH) {
+				tier--;
+				headroomWindows = 0;
+				cooldown = COOLDOWN_WINDOWS;
+			}
+		} else {
+			headroomWindows = 0;
+		}
+		frames = 0;
+		missed = 0;
+		slow = 0;
+	}
+}
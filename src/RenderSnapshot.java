@@ -0,0 +1,246 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+/**
+ * A render snapshot is everything the render thread needs to draw one cycle of
+ * the game, copied out of the entities by the simulation thread at the end of
+ * the cycle. The render thread only ever reads snapshots, never the entities
+ * themselves, so the simulation is free to change the entities while a frame
+ * is being drawn.
+ *
+ * Every sprite is stored with where it was on the last cycle as well as where
+ * it is now, so the render thread can interpolate between the two for however
+ * far it is into the next cycle.
+ *
+ * Snapshots are reused, so nothing is allocated once the arrays have grown to
+ * the size of the battle. They are handed between the threads by a
+ * SnapshotExchange.
+ *
+ * @author Andrew
+ *
+ */
+public class RenderSnapshot {
+
+	// The number of sprites in this snapshot
+	private int spriteCount = 0;
+	// The handle of each sprite, and its width and height
+	private SpriteHandle[] sprites = new SpriteHandle[256];
+	private double[] widths = new double[256];
+	private double[] heights = new double[256];
+	// The position of each sprite on the last cycle and on this one
+	private double[] lastXs = new double[256];
+	private double[] lastYs = new double[256];
+	private double[] xs = new double[256];
+	private double[] ys = new double[256];
+	// The rotation of each sprite about its centre
+	private double[] thetas = new double[256];
+
+	// The number of stat bars in this snapshot
+	private int barCount = 0;
+	// The colour, position and current size of each stat bar
+	private Color[] barColors = new Color[64];
+	private double[] barXs = new double[64];
+	private double[] barYs = new double[64];
+	private int[] barSizes = new int[64];
+	// The dimensions in pixels of each unit of each stat bar, and the spacing
+	// between units
+	private int[] barWidths = new int[64];
+	private int[] barHeights = new int[64];
+	private int[] barSpacings = new int[64];
+	// Whether each stat bar runs up and down rather than left and right
+	private boolean[] barsUp = new boolean[64];
+
+	// The state of the game shown on the HUD
+	int entityCount;
+	double numberCycles;
+	boolean playerAlive;
+	boolean victory;
+	// The total number of collision checks made so far, shown on the
+	// profiler overlay
+	double collisionsChecked;
+	// The time in nanoseconds the cycle this snapshot was taken at was due,
+	// which the render thread interpolates from
+	long cycleTime;
+
+	/**
+	 * Empties this snapshot so it can be filled with a new cycle.
+	 */
+	public void clear() {
+		// Lets go of the sprites so nothing is kept alive by an old snapshot
+		Arrays.fill(sprites, 0, spriteCount, null);
+		Arrays.fill(barColors, 0, barCount, null);
+		spriteCount = 0;
+		barCount = 0;
+	}
+
+	/**
+	 * Adds a sprite to this snapshot.
+	 *
+	 * @param sprite
+	 *            The handle of the sprite to draw
+	 * @param width
+	 *            The width of the sprite
+	 * @param height
+	 *            The height of the sprite
+	 * @param lastX
+	 *            The X coordinate of the sprite on the last cycle
+	 * @param lastY
+	 *            The Y coordinate of the sprite on the last cycle
+	 * @param x
+	 *            The X coordinate of the sprite on this cycle
+	 * @param y
+	 *            The Y coordinate of the sprite on this cycle
+	 * @param theta
+	 *            The rotation of the sprite about its centre
+	 */
+	public void addSprite(SpriteHandle sprite, double width, double height,
+			double lastX, double lastY, double x, double y, double theta) {
+		if (spriteCount == sprites.length) {
+			growSprites(spriteCount * 2);
+		}
+		int i = spriteCount++;
+		sprites[i] = sprite;
+		widths[i] = width;
+		heights[i] = height;
+		lastXs[i] = lastX;
+		lastYs[i] = lastY;
+		xs[i] = x;
+		ys[i] = y;
+		thetas[i] = theta;
+	}
+
+	/**
+	 * Adds a stat bar to this snapshot.
+	 *
+	 * @param color
+	 *            The colour of the bar
+	 * @param x
+	 *            The X coordinate of the bar
+	 * @param y
+	 *            The Y coordinate of the bar
+	 * @param size
+	 *            The number of units in the bar
+	 * @param width
+	 *            The width in pixels of each unit
+	 * @param height
+	 *            The height in pixels of each unit
+	 * @param spacing
+	 *            The distance in pixels from one unit to the next
+	 * @param isPlacedUp
+	 *            Whether the bar runs up and down rather than left and right
+	 */
+	public void addBar(Color color, double x, double y, int size, int width,
+			int height, int spacing, boolean isPlacedUp) {
+		if (barCount == barColors.length) {
+			growBars(barCount * 2);
+		}
+		int i = barCount++;
+		barColors[i] = color;
+		barXs[i] = x;
+		barYs[i] = y;
+		barSizes[i] = size;
+		barWidths[i] = width;
+		barHeights[i] = height;
+		barSpacings[i] = spacing;
+		barsUp[i] = isPlacedUp;
+	}
+
+	/**
+	 * Draws every sprite and stat bar in this snapshot at the best quality.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param interp
+	 *            How far between the last cycle and this one to draw the
+	 *            sprites, from 0 to 1
+	 */
+	public void draw(Graphics2D g2D, float interp) {
+		draw(g2D, interp, QualityGovernor.HIGH);
+	}
+
+	/**
+	 * Draws every sprite and stat bar in this snapshot. Sprites are drawn from
+	 * their pre-rotated copies, so the rendering hints, which are set once for
+	 * the whole snapshot, only matter for sprites the sprite store had no
+	 * memory left to rotate. Stat bars are each copied in one go from their
+	 * strip in the stat bar atlas.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param interp
+	 *            How far between the last cycle and this one to draw the
+	 *            sprites, from 0 to 1
+	 * @param quality
+	 *            The quality tier to draw at, one of the tiers of the
+	 *            QualityGovernor
+	 */
+	public void draw(Graphics2D g2D, float interp, int quality) {
+		QualityGovernor.applyHints(g2D, quality);
+		int stride = QualityGovernor.getRotationStride(quality);
+		for (int i = 0; i < spriteCount; i++) {
+			double interpX = (xs[i] - lastXs[i]) * interp + lastXs[i];
+			double interpY = (ys[i] - lastYs[i]) * interp + lastYs[i];
+			sprites[i].drawCentred(g2D, interpX + widths[i] / 2, interpY
+					+ heights[i] / 2, thetas[i], stride);
+		}
+		Color tempColor = g2D.getColor();
+		for (int i = 0; i < barCount; i++) {
+			int x = (int) barXs[i];
+			int y = (int) barYs[i];
+			if (quality == QualityGovernor.LOWEST) {
+				g2D.setColor(barColors[i]);
+				drawSolidBar(g2D, i, x, y);
+				continue;
+			}
+			StatBarAtlas.get().draw(g2D, barColors[i], x, y, barSizes[i],
+					barWidths[i], barHeights[i], barSpacings[i], barsUp[i],
+					quality <= QualityGovernor.MEDIUM);
+		}
+		g2D.setColor(tempColor);
+	}
+
+	/**
+	 * Draws a stat bar as one rectangle covering all of its units, for the
+	 * lowest quality tier.
+	 */
+	private void drawSolidBar(Graphics2D g2D, int i, int x, int y) {
+		if (barSizes[i] == 0) {
+			return;
+		}
+		int length = (barSizes[i] - 1) * barSpacings[i];
+		if (barsUp[i]) {
+			g2D.fillRect(x, y - length, barWidths[i], barHeights[i] + length);
+		} else {
+			g2D.fillRect(x, y, barWidths[i] + length, barHeights[i]);
+		}
+	}
+
+	/**
+	 * Grows the sprite arrays to the given capacity.
+	 */
+	private void growSprites(int capacity) {
+		sprites = Arrays.copyOf(sprites, capacity);
+		widths = Arrays.copyOf(widths, capacity);
+		heights = Arrays.copyOf(heights, capacity);
+		lastXs = Arrays.copyOf(lastXs, capacity);
+		lastYs = Arrays.copyOf(lastYs, capacity);
+		xs = Arrays.copyOf(xs, capacity);
+		ys = Arrays.copyOf(ys, capacity);
+		thetas = Arrays.copyOf(thetas, capacity);
+	}
+
+	/**
+	 * Grows the stat bar arrays to the given capacity.
+	 */
+	private void growBars(int capacity) {
+		barColors = Arrays.copyOf(barColors, capacity);
+		barXs = Arrays.copyOf(barXs, capacity);
+		barYs = Arrays.copyOf(barYs, capacity);
+		barSizes = Arrays.copyOf(barSizes, capacity);
+		barWidths = Arrays.copyOf(barWidths, capacity);
+		barHeights = Arrays.copyOf(barHeights, capacity);
+		barSpacings = Arrays.copyOf(barSpacings, capacity);
+		barsUp = Arrays.copyOf(barsUp, capacity);
+	}
+}
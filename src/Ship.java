@@ -46,7 +46,8 @@ public abstract class Ship extends Entity {
 
 	public Ship(String ref, double x, double y) {
 		super(ref, x, y);
-		
+		collisionLayer = CollisionLayers.SHIP_LAYER;
+		collisionMask = CollisionLayers.PROJECTILE_LAYER;
 	}
 
 	public boolean isHostile() {
@@ -55,6 +56,15 @@ public abstract class Ship extends Entity {
 
 	@Override
 	public void ifCollided(Entity ent) {
+		takeHit();
+	}
+
+	/**
+	 * Takes one point off the hull of this ship, and disables it once the hull
+	 * is gone. Called for hits from projectiles in the projectile field, which
+	 * are not entities.
+	 */
+	public void takeHit() {
 		hullIntegrity--;
 		if (hullIntegrity <= 0) {
 			disable();
@@ -5,6 +5,8 @@ public class ShipTurret extends Component {
 	protected double projectileSpeed = 10; // place in a turret/weapon component
 	protected boolean isPlayer = false;
 	protected Entity target;
+	// Whether the weapon is ready and will be fired when this turret commits
+	protected boolean firePending = false;
 
 	/**
 	 * @return the target
@@ -97,6 +99,15 @@ public class ShipTurret extends Component {
 		weaponCounter++;
 		if (weaponCounter >= fireRate) {
 			weaponCounter = 0;
+			// Firing adds a projectile to the game, so it waits for commit()
+			firePending = true;
+		}
+	}
+
+	@Override
+	public void commit() {
+		if (firePending) {
+			firePending = false;
 			fireWeapon();
 		}
 	}
@@ -108,14 +119,14 @@ public class ShipTurret extends Component {
 		if ( !isPlayer ) {
 			destY = target.getY() + target.getHeight() / 2;
 			destX = target.getX() + target.getWidth() / 2;
-			GameEngine.entityCache.add(new Projectile(x, y, destX, destY,
-					projectileSpeed, isPlayer));
+			GameEngine.fireProjectile(x, y, destX, destY, projectileSpeed,
+					attachedShip.faction);
 		} else if (isPlayer && target == null) {
 			if (GameEngine.mouseDown) {
 				destY = GameEngine.mouseY;
 				destX = GameEngine.mouseX;
-				GameEngine.entityCache.add(new Projectile(x, y, destX, destY,
-						projectileSpeed, isPlayer));
+				GameEngine.fireProjectile(x, y, destX, destY, projectileSpeed,
+						attachedShip.faction);
 			}
 		}
 	}
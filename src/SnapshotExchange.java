@@ -0,0 +1,77 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands render snapshots from the simulation thread to the render thread
+ * without either ever waiting on the other. There are three snapshots: the one
+ * the simulation is filling, the one the render thread is drawing, and the
+ * newest finished one in between. Publishing swaps the filled snapshot with
+ * the one in between, and the render thread swaps the one it's done with for
+ * the one in between whenever a newer one has been published. Each swap is a
+ * single atomic exchange, so a slow frame never holds up the simulation and a
+ * slow cycle never holds up a frame; the render thread just draws the newest
+ * snapshot again.
+ *
+ * Only one thread may publish and only one thread may read.
+ *
+ * @author Andrew
+ *
+ */
+public class SnapshotExchange {
+
+	// Set on the middle index when it holds a snapshot the render thread
+	// hasn't taken yet
+	private static final int FRESH = 4;
+	// The bits of the middle value holding the index
+	private static final int INDEX_MASK = 3;
+
+	// The three snapshots being passed around
+	private RenderSnapshot[] snapshots = new RenderSnapshot[3];
+	// The snapshot the simulation thread is filling, only touched by it
+	private int writeIndex = 0;
+	// The snapshot the render thread is drawing, only touched by it
+	private int readIndex = 1;
+	// The snapshot in between, and whether it is newer than the one being
+	// drawn
+	private AtomicInteger middle = new AtomicInteger(2);
+
+	/**
+	 * Creates an exchange with three empty snapshots.
+	 */
+	public SnapshotExchange() {
+		for (int i = 0; i < snapshots.length; i++) {
+			snapshots[i] = new RenderSnapshot();
+		}
+	}
+
+	/**
+	 * Returns the snapshot the simulation thread should fill next. Only
+	 * called by the simulation thread.
+	 *
+	 * @return an unused snapshot
+	 */
+	public RenderSnapshot getWriteSnapshot() {
+		return snapshots[writeIndex];
+	}
+
+	/**
+	 * Makes the snapshot returned by getWriteSnapshot() the newest one, and
+	 * takes back an unused snapshot to fill next time. Only called by the
+	 * simulation thread.
+	 */
+	public void publish() {
+		writeIndex = middle.getAndSet(writeIndex | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Returns the newest published snapshot, which stays the render thread's
+	 * until it calls this again. Only called by the render thread.
+	 *
+	 * @return the newest snapshot
+	 */
+	public RenderSnapshot getReadSnapshot() {
+		if ((middle.get() & FRESH) != 0) {
+			readIndex = middle.getAndSet(readIndex) & INDEX_MASK;
+		}
+		return snapshots[readIndex];
+	}
+}
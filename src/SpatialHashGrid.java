@@ -0,0 +1,240 @@
+/**
+ * A broad phase which divides the game space into a uniform grid of square
+ * cells. Each entity is put into every cell its bounding box touches, and the
+ * cells are hashed into a fixed table of buckets, so the grid has no edges and
+ * entities anywhere in the game space can be stored. Two entities are only a
+ * candidate pair if they share a cell.
+ *
+ * The bucket arrays are kept from one cycle to the next and only ever grow, so
+ * once the grid has warmed up neither building it nor finding pairs allocates
+ * anything.
+ *
+ * @author Andrew
+ *
+ */
+public class SpatialHashGrid implements BroadPhase {
+
+	// The width and height of each cell in pixels
+	private double cellSize;
+	// The number of buckets cells are hashed into, always a power of two so
+	// the hash can be masked instead of divided
+	private int bucketMask;
+	// The entries of each bucket. Each entry is two ints, the index of the
+	// entity followed by the packed coordinates of the cell it was added for,
+	// as more than one cell can land in the same bucket.
+	private int[][] bucketEntries;
+	// The number of entries in each bucket
+	private int[] bucketCount;
+	// The buckets that had anything added to them this cycle, so only those
+	// have to be emptied next cycle
+	private int[] usedBuckets = new int[256];
+	private int usedCount = 0;
+	// The entities stored in the grid this cycle, with the range of cells
+	// covered by each one
+	private Entity[] ents = new Entity[256];
+	private int[] minColumn = new int[256];
+	private int[] minRow = new int[256];
+	private int[] maxColumn = new int[256];
+	private int[] maxRow = new int[256];
+	private int entCount = 0;
+
+	/**
+	 * Creates an empty spatial hash grid.
+	 *
+	 * @param cellSize
+	 *            The width and height of each cell in pixels. Works best a bit
+	 *            larger than a typical ship.
+	 * @param buckets
+	 *            The number of buckets to hash cells into, rounded up to a
+	 *            power of two
+	 */
+	public SpatialHashGrid(double cellSize, int buckets) {
+		this.cellSize = cellSize;
+		int tableSize = Integer.highestOneBit(Math.max(16, buckets - 1)) << 1;
+		bucketMask = tableSize - 1;
+		bucketEntries = new int[tableSize][];
+		bucketCount = new int[tableSize];
+	}
+
+	@Override
+	public void update(EntityStore entities) {
+		// Empties only the buckets that were used last cycle
+		for (int i = 0; i < usedCount; i++) {
+			bucketCount[usedBuckets[i]] = 0;
+		}
+		usedCount = 0;
+		for (int i = 0; i < entCount; i++) {
+			ents[i] = null;
+		}
+		entCount = 0;
+		for (int i = 0; i < entities.size(); i++) {
+			Entity ent = entities.get(i);
+			if (ent.isEnabled) {
+				add(ent);
+			}
+		}
+	}
+
+	/**
+	 * Adds an entity to every cell its bounding box touches.
+	 */
+	private void add(Entity ent) {
+		if (entCount == ents.length) {
+			growEntities(entCount * 2);
+		}
+		int index = entCount++;
+		ents[index] = ent;
+		int firstColumn = (int) Math.floor(ent.getX() / cellSize);
+		int firstRow = (int) Math.floor(ent.getY() / cellSize);
+		int lastColumn = (int) Math.floor((ent.getX() + ent.getWidth())
+				/ cellSize);
+		int lastRow = (int) Math.floor((ent.getY() + ent.getHeight())
+				/ cellSize);
+		minColumn[index] = firstColumn;
+		minRow[index] = firstRow;
+		maxColumn[index] = lastColumn;
+		maxRow[index] = lastRow;
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int bucket = bucketOf(column, row);
+				int size = bucketCount[bucket];
+				int[] entries = bucketEntries[bucket];
+				if (entries == null || size * 2 == entries.length) {
+					int[] grown = new int[entries == null ? 16
+							: entries.length * 2];
+					if (entries != null) {
+						System.arraycopy(entries, 0, grown, 0, size * 2);
+					}
+					entries = grown;
+					bucketEntries[bucket] = entries;
+				}
+				if (size == 0) {
+					if (usedCount == usedBuckets.length) {
+						int[] grownUsed = new int[usedCount * 2];
+						System.arraycopy(usedBuckets, 0, grownUsed, 0,
+								usedCount);
+						usedBuckets = grownUsed;
+					}
+					usedBuckets[usedCount++] = bucket;
+				}
+				entries[size * 2] = index;
+				entries[size * 2 + 1] = packCell(column, row);
+				bucketCount[bucket] = size + 1;
+			}
+		}
+	}
+
+	/**
+	 * Returns the bucket a cell is hashed into.
+	 */
+	private int bucketOf(int column, int row) {
+		return ((column * 73856093) ^ (row * 19349663)) & bucketMask;
+	}
+
+	/**
+	 * Packs the coordinates of a cell into one int so a bucket entry can tell
+	 * which cell it was added for.
+	 */
+	private static int packCell(int column, int row) {
+		return (row << 16) ^ (column & 0xFFFF);
+	}
+
+	@Override
+	public void remove(Entity ent) {
+		// Nothing to do, the grid is rebuilt from scratch every cycle
+	}
+
+	/**
+	 * Returns the number of buckets holding at least one entry this cycle.
+	 */
+	@Override
+	public int getNodeCount() {
+		return usedCount;
+	}
+
+	@Override
+	public void findPairs(PairBuffer pairs) {
+		for (int i = 0; i < entCount; i++) {
+			Entity ent = ents[i];
+			if (ent.isProjectile) {
+				continue;
+			}
+			for (int row = minRow[i]; row <= maxRow[i]; row++) {
+				for (int column = minColumn[i]; column <= maxColumn[i]; column++) {
+					int cell = packCell(column, row);
+					int bucket = bucketOf(column, row);
+					int[] entries = bucketEntries[bucket];
+					int size = bucketCount[bucket];
+					for (int e = 0; e < size; e++) {
+						int j = entries[e * 2];
+						if (j == i || entries[e * 2 + 1] != cell) {
+							continue;
+						}
+						Entity other = ents[j];
+						// Two ships are only paired once, from the ship that
+						// was added first
+						if (!other.isProjectile && j < i) {
+							continue;
+						}
+						// Two entities can share several cells, so the pair is
+						// only reported from the first cell they share
+						if (column != Math.max(minColumn[i], minColumn[j])
+								|| row != Math.max(minRow[i], minRow[j])) {
+							continue;
+						}
+						pairs.add(ent, other);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void query(Entity ent, PairBuffer pairs) {
+		int firstColumn = (int) Math.floor(ent.getX() / cellSize);
+		int firstRow = (int) Math.floor(ent.getY() / cellSize);
+		int lastColumn = (int) Math.floor((ent.getX() + ent.getWidth())
+				/ cellSize);
+		int lastRow = (int) Math.floor((ent.getY() + ent.getHeight())
+				/ cellSize);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int cell = packCell(column, row);
+				int bucket = bucketOf(column, row);
+				int[] entries = bucketEntries[bucket];
+				int size = bucketCount[bucket];
+				for (int e = 0; e < size; e++) {
+					int j = entries[e * 2];
+					if (entries[e * 2 + 1] != cell || ents[j] == ent) {
+						continue;
+					}
+					// Only reported from the first cell the two share
+					if (column != Math.max(firstColumn, minColumn[j])
+							|| row != Math.max(firstRow, minRow[j])) {
+						continue;
+					}
+					pairs.add(ent, ents[j]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Grows the arrays holding the entities stored this cycle.
+	 */
+	private void growEntities(int capacity) {
+		Entity[] grownEnts = new Entity[capacity];
+		System.arraycopy(ents, 0, grownEnts, 0, entCount);
+		ents = grownEnts;
+		minColumn = grow(minColumn, capacity);
+		minRow = grow(minRow, capacity);
+		maxColumn = grow(maxColumn, capacity);
+		maxRow = grow(maxRow, capacity);
+	}
+
+	private int[] grow(int[] old, int capacity) {
+		int[] grown = new int[capacity];
+		System.arraycopy(old, 0, grown, 0, entCount);
+		return grown;
+	}
+}
@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event marking entities joining and leaving the game in a
+ * cycle. Only committed for cycles where any did, so a burst of shots or a
+ * wave of destroyers shows up as a spike in the event's counts.
+ *
+ * @author Andrew
+ *
+ */
+@Name("conquest.Spawn")
+@Label("Entity Spawns")
+@Category({ "Galactic Conquest", "Engine" })
+@Description("Entities joining and leaving the game in one cycle")
+@StackTrace(false)
+public class SpawnEvent extends Event {
+
+	// The number of entities that joined the entity store this cycle
+	@Label("Spawned")
+	int spawned;
+	// The number of disabled entities taken out of the entity store
+	@Label("Despawned")
+	int despawned;
+	// The number of entities in the entity store afterwards
+	@Label("Entity Count")
+	int entityCount;
+}
@@ -1,5 +1,4 @@
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.Image;
 import java.awt.Rectangle;
 import java.awt.Shape;
@@ -7,64 +6,177 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.ImageObserver;
-
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A sprite is an image asset, loaded once by the sprite store and shared by
+ * everything drawn with it, so one sprite serves any number of entities. A
+ * sprite never changes once it is made, besides filling in its cache of
+ * rotated copies, which any thread can do safely. Anything that differs from
+ * one thing drawn with the sprite to the next belongs in a SpriteHandle.
+ * 
+ * @author Andrew
+ * 
+ */
 public class Sprite implements Shape {
 
-	private Image image;
-	private ImageObserver observer;
-	private Entity attachedEnt ;
-	private Component attachedComponent ;
-
+	// Where the sprite's image is, usually a region of the sprite store's
+	// texture atlas, or null if the sprite has no image
+	private final AtlasRegion region;
+	// The size of the image, read once when the sprite is created
+	private final double spriteWidth;
+	private final double spriteHeight;
+	// The point the sprite is rotated about, from its top left corner
+	private final double pivotX;
+	private final double pivotY;
+	// The number of rotated copies in a full turn, taken from the sprite
+	// store when the sprite is made, or 0 if it is rotated as it is drawn
+	private final int rotationSteps;
+	// The image rotated to each step of a full turn, made by the sprite store
+	// the first time each step is drawn and packed into the same atlas. Null
+	// if the sprite is rotated as it is drawn.
+	private final AtomicReferenceArray<AtlasRegion> rotations;
 
 	/**
 	 * @return the image
 	 */
 	public Image getImage() {
-		return image;
+		return region == null ? null : region.getImage();
+	}
+
+	public Sprite(Image image) {
+		this(new AtlasRegion(image));
 	}
 
 	/**
-	 * @param image
-	 *            the image to set
+	 * Creates a sprite drawn from a region of a texture atlas.
+	 * 
+	 * @param region
+	 *            The region the sprite's image was packed into
 	 */
-	public void setImage(Image image) {
-		this.image = image;
+	public Sprite(AtlasRegion region) {
+		this(region, region.getWidth(), region.getHeight());
 	}
 
-	public Sprite(Image image) {
-		this.image = image;
+	/**
+	 * Creates a sprite with a size but no image, for running the game without
+	 * a display. A sprite like this can't be drawn.
+	 * 
+	 * @param spriteWidth
+	 *            The width of the image the sprite stands in for
+	 * @param spriteHeight
+	 *            The height of the image the sprite stands in for
+	 */
+	public Sprite(double spriteWidth, double spriteHeight) {
+		this(null, spriteWidth, spriteHeight);
+	}
+
+	private Sprite(AtlasRegion region, double spriteWidth,
+			double spriteHeight) {
+		this.region = region;
+		this.spriteWidth = spriteWidth;
+		this.spriteHeight = spriteHeight;
+		this.pivotX = spriteWidth / 2;
+		this.pivotY = spriteHeight / 2;
+		this.rotationSteps = region == null ? 0 : SpriteStore.get()
+				.getRotationSteps();
+		if (rotationSteps == 0) {
+			rotations = null;
+			return;
+		}
+		rotations = new AtomicReferenceArray<AtlasRegion>(rotationSteps);
+		// The first step isn't rotated at all, so it is the image itself
+		rotations.set(0, region);
 	}
 
-	public void update(long time) {
-		// TODO Auto-generated method stub
-		// Maybe use this method for sprite animation?
-	}
-
-	public void draw(Graphics2D g2D, double interpX, double interpY, double theta) {
-		AffineTransform trans = new AffineTransform();
-		g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		g2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-		g2D.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-		if (this.attachedEnt != null)
-		{
-			trans.rotate(theta, interpX + attachedEnt.getWidth() / 2 , interpY + attachedEnt.getHeight() / 2);
-			trans.translate(interpX, interpY);			
+	/**
+	 * Draws the sprite centred on the given point, rotated about its pivot.
+	 * The nearest pre-rotated copy of the image is copied from its atlas page
+	 * straight onto the screen, which Java2D can do as a plain blit. Only if
+	 * the sprite store has run out of memory for rotated copies, or has them
+	 * turned off, is the image rotated as it is drawn, using whatever
+	 * rendering hints are set.
+	 * 
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param centreX
+	 *            The X coordinate of the centre of the sprite
+	 * @param centreY
+	 *            The Y coordinate of the centre of the sprite
+	 * @param theta
+	 *            The rotation of the sprite in radians
+	 * @param stride
+	 *            How many rotation steps to move in at a time, e.g. 2 to only
+	 *            draw from every other copy
+	 * @param transform
+	 *            A transform belonging to the caller, which is overwritten if
+	 *            the image has to be rotated as it is drawn
+	 */
+	public void drawCentred(Graphics2D g2D, double centreX, double centreY,
+			double theta, int stride, AffineTransform transform) {
+		AtlasRegion rotated = getRotation(theta, stride);
+		if (rotated != null) {
+			rotated.draw(g2D,
+					(int) Math.round(centreX - rotated.getWidth() / 2.0),
+					(int) Math.round(centreY - rotated.getHeight() / 2.0));
+			return;
 		}
-		else if (this.attachedComponent != null)
-		{
-			trans.translate(interpX,  interpY);
+		transform.setToRotation(theta, centreX, centreY);
+		transform.translate(centreX - pivotX, centreY - pivotY);
+		region.draw(g2D, transform);
+	}
+
+	/**
+	 * Returns the rotated copy nearest to the given rotation, asking the
+	 * sprite store to make the copy if it hasn't been made yet. If two threads
+	 * ask for the same copy at once, both are made and the first one kept.
+	 * 
+	 * @return the copy, or null if there is no rotated copy to draw
+	 */
+	private AtlasRegion getRotation(double theta, int stride) {
+		if (rotations == null) {
+			return null;
+		}
+		int step = (int) Math.round(theta / (Math.PI * 2) * rotationSteps
+				/ stride) * stride % rotationSteps;
+		if (step < 0) {
+			step += rotationSteps;
 		}
-		g2D.drawImage(image, trans, observer);
+		AtlasRegion rotated = rotations.get(step);
+		if (rotated == null) {
+			rotated = SpriteStore.get().rotate(region,
+					step * Math.PI * 2 / rotationSteps);
+			if (rotated == null) {
+				return null;
+			}
+			if (!rotations.compareAndSet(step, null, rotated)) {
+				rotated = rotations.get(step);
+			}
+		}
+		return rotated;
+	}
+
+	/**
+	 * @return the X coordinate of the point the sprite is rotated about, from
+	 *         its left
+	 */
+	public double getPivotX() {
+		return pivotX;
+	}
+
+	/**
+	 * @return the Y coordinate of the point the sprite is rotated about, from
+	 *         its top
+	 */
+	public double getPivotY() {
+		return pivotY;
 	}
 
 	public double getSpriteWidth() {
-		double spriteWidth = image.getWidth(observer);
 		return spriteWidth;
 	}
 
 	public double getSpriteHeight() {
-		double spriteHeight = image.getHeight(observer);
 		return spriteHeight;
 	}
 
@@ -128,23 +240,4 @@ public class Sprite implements Shape {
 		return false;
 	}
 
-	/**
-	 * @return the attachedEnt
-	 */
-	public Entity getAttachedEnt() {
-		return attachedEnt;
-	}
-
-	/**
-	 * @param attachedEnt the attachedEnt to set
-	 */
-	public void setAttachedEnt(Entity attachedEnt) {
-		this.attachedEnt = attachedEnt;
-	}
-
-	public void setAttachedComponent(Component component) {
-		this.attachedComponent = component;
-
-	}
-
 }
@@ -0,0 +1,96 @@
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+
+/**
+ * A sprite handle is one thing drawn with a sprite, e.g. one destroyer. The
+ * sprite itself is shared by everything drawn with it and never changes, so
+ * whatever belongs to just one of them is kept here instead. Handles are
+ * small, so every entity and component can have its own.
+ * 
+ * Capturing a handle into a render snapshot touches nothing shared, so
+ * entities can be captured on any number of threads at once. A handle is
+ * only ever drawn by the thread that draws.
+ * 
+ * @author Andrew
+ * 
+ */
+public class SpriteHandle {
+
+	// The sprite drawn
+	private final Sprite sprite;
+	// Reused for drawing when the sprite has no rotated copy to draw, made
+	// the first time it is needed
+	private AffineTransform transform;
+
+	/**
+	 * Creates a handle for drawing a sprite.
+	 * 
+	 * @param sprite
+	 *            The sprite to draw
+	 */
+	public SpriteHandle(Sprite sprite) {
+		this.sprite = sprite;
+	}
+
+	/**
+	 * Draws the sprite with its top left corner at the given position, rotated
+	 * about its pivot.
+	 * 
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param x
+	 *            The X coordinate of the top left corner of the sprite
+	 * @param y
+	 *            The Y coordinate of the top left corner of the sprite
+	 * @param theta
+	 *            The rotation of the sprite in radians
+	 */
+	public void draw(Graphics2D g2D, double x, double y, double theta) {
+		drawCentred(g2D, x + sprite.getSpriteWidth() / 2,
+				y + sprite.getSpriteHeight() / 2, theta, 1);
+	}
+
+	/**
+	 * Draws the sprite centred on the given point, rotated about its pivot.
+	 * 
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param centreX
+	 *            The X coordinate of the centre of the sprite
+	 * @param centreY
+	 *            The Y coordinate of the centre of the sprite
+	 * @param theta
+	 *            The rotation of the sprite in radians
+	 * @param stride
+	 *            How many rotation steps to move in at a time, e.g. 2 to only
+	 *            draw from every other copy
+	 */
+	public void drawCentred(Graphics2D g2D, double centreX, double centreY,
+			double theta, int stride) {
+		if (transform == null) {
+			transform = new AffineTransform();
+		}
+		sprite.drawCentred(g2D, centreX, centreY, theta, stride, transform);
+	}
+
+	/**
+	 * @return the sprite drawn
+	 */
+	public Sprite getSprite() {
+		return sprite;
+	}
+
+	/**
+	 * @return the width of the sprite
+	 */
+	public double getSpriteWidth() {
+		return sprite.getSpriteWidth();
+	}
+
+	/**
+	 * @return the height of the sprite
+	 */
+	public double getSpriteHeight() {
+		return sprite.getSpriteHeight();
+	}
+}
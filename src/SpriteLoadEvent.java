@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event covering a sprite being loaded into the sprite
+ * store, from finding the file to the sprite joining the cache. Sprites served
+ * from the cache don't make one.
+ *
+ * @author Andrew
+ *
+ */
+@Name("conquest.SpriteLoad")
+@Label("Sprite Load")
+@Category({ "Galactic Conquest", "Sprites" })
+@Description("A sprite being loaded into the sprite store")
+public class SpriteLoadEvent extends Event {
+
+	// The resource the sprite was loaded from
+	@Label("Resource")
+	String ref;
+	// The size of the sprite in pixels
+	@Label("Width")
+	int width;
+	@Label("Height")
+	int height;
+	// Whether the image was decoded, or only its size read for a headless
+	// game
+	@Label("Decoded")
+	boolean decoded;
+}
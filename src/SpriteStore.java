@@ -1,18 +1,62 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
 import java.awt.Image;
-import java.awt.Transparency;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * The sprite store provides functionality for retrieving sprites from the
  * resources folder, and caches loaded sprites so they don't have to be loaded
- * each time they are needed.
+ * each time they are needed. Any thread can ask for a sprite, and each sprite
+ * is only ever loaded once.
+ * 
+ * At startup every sprite listed in the sprite manifest is preloaded in the
+ * background, with the images decoded in parallel, so no sprite is decoded in
+ * the middle of the game. A sprite that can't be found or decoded is reported
+ * and stood in for by a placeholder, rather than stopping the game.
+ * 
+ * Every sprite's image is packed into a texture atlas, so sprites are drawn
+ * from a few large premultiplied pages instead of an image each, and keep
+ * the partly see-through pixels at their edges. Preloaded sprites are packed
+ * tallest first, so they share as few pages as possible.
+ * 
+ * It also makes the rotated copies of each sprite's image that sprites are
+ * drawn from, so no sprite has to be rotated as it is drawn. Each full turn
+ * is split into a set number of steps, and a copy is made for a step the
+ * first time a sprite is drawn at it. The copies are made in the middle of
+ * drawing a frame, so they are packed into an atlas of their own with small
+ * pages; drawing a copy only throws away the accelerated copy of one small
+ * page, never one the sprites themselves are drawn from. The copies share a
+ * memory budget, and once it is spent sprites fall back to being rotated as
+ * they are drawn.
+ * 
+ * Everything drawn into either atlas is drawn while holding the lock of the
+ * sprite store, as a page can't be drawn into by two threads at once.
  * 
  * @author Andrew
  * 
@@ -27,65 +71,556 @@ public class SpriteStore {
 		return single;
 	}
 
-	// The cached sprite map, from reference to sprite instance
-	private HashMap<String, Sprite> sprites = new HashMap<String, Sprite>();
+	// The file listing every sprite to preload, one name per line
+	private static final String MANIFEST = "resources/sprites.manifest";
+	// The width and height of the placeholder for a sprite that failed to
+	// load
+	private static final int PLACEHOLDER_SIZE = 16;
+	// The width and height of each page of rotated copies. Small enough that
+	// drawing a new copy into a page costs little to upload again, and big
+	// enough that most sprites share a page with other copies.
+	private static final int ROTATION_PAGE_SIZE = 512;
+
+	// The cached sprite map, from reference to sprite instance. Each sprite
+	// is held as a future, which the first thread to ask for it claims and
+	// completes, so the loading happens outside the map and any other thread
+	// asking for the same sprite waits on the future instead of on the map
+	private ConcurrentHashMap<String, CompletableFuture<Sprite>> sprites =
+			new ConcurrentHashMap<String, CompletableFuture<Sprite>>();
+	// The images being decoded by a preload, by reference, so a sprite asked
+	// for before its image is ready waits for it instead of decoding it again
+	private Map<String, CompletableFuture<BufferedImage>> decoding =
+			new ConcurrentHashMap<String, CompletableFuture<BufferedImage>>();
+	// Every sprite that failed to load, with why
+	private List<String> failures = new CopyOnWriteArrayList<String>();
+	// The number of sprites the last preload asked for, and the number of
+	// them loaded so far
+	private volatile int preloadTotal = 0;
+	private AtomicInteger preloaded = new AtomicInteger();
+	// Whether there is no display, in which case sprites only get their size
+	// and no image
+	private boolean headless = false;
+	// The number of rotated copies of each sprite in a full turn, or 0 to
+	// rotate sprites as they are drawn
+	private int rotationSteps = 64;
+	// The bytes the rotated copies may take up between them, and the bytes
+	// they take up so far
+	private long rotationBudget = 64L * 1024 * 1024;
+	private long rotationBytes = 0;
+	// The atlas every sprite is packed into, and the atlas the rotated copies
+	// are packed into
+	private TextureAtlas atlas = new TextureAtlas();
+	private TextureAtlas rotationAtlas = new TextureAtlas(ROTATION_PAGE_SIZE);
+
+	/**
+	 * Sets whether the game is running without a display. Headless sprites
+	 * are never drawn, so only the size of each image is read from the header
+	 * of its file, without decoding the image or touching the graphics
+	 * environment. Changing this empties the cache, as the sprites in it were
+	 * loaded for the other mode.
+	 * 
+	 * @param headless
+	 *            Whether there is no display
+	 */
+	public synchronized void setHeadless(boolean headless) {
+		if (this.headless != headless) {
+			sprites.clear();
+			decoding.clear();
+			atlas = new TextureAtlas();
+			rotationAtlas = new TextureAtlas(ROTATION_PAGE_SIZE);
+		}
+		this.headless = headless;
+	}
+
+	/**
+	 * Sets how sprites are rotated. Changing this empties the cache, as the
+	 * sprites in it were rotated for the old settings.
+	 * 
+	 * @param steps
+	 *            The number of rotated copies of each sprite in a full turn,
+	 *            or 0 to rotate sprites as they are drawn
+	 * @param budget
+	 *            The bytes the rotated copies may take up between them
+	 */
+	public synchronized void setRotation(int steps, long budget) {
+		if (rotationSteps != steps || rotationBudget != budget) {
+			sprites.clear();
+			rotationBytes = 0;
+			atlas = new TextureAtlas();
+			rotationAtlas = new TextureAtlas(ROTATION_PAGE_SIZE);
+		}
+		rotationSteps = steps;
+		rotationBudget = budget;
+	}
+
+	/**
+	 * @return the number of rotated copies of each sprite in a full turn, or
+	 *         0 if sprites are rotated as they are drawn
+	 */
+	public int getRotationSteps() {
+		return rotationSteps;
+	}
+
+	/**
+	 * @return the bytes taken up by the rotated copies made so far
+	 */
+	public synchronized long getRotationBytes() {
+		return rotationBytes;
+	}
+
+	/**
+	 * @return the atlas every sprite is packed into
+	 */
+	public TextureAtlas getAtlas() {
+		return atlas;
+	}
+
+	/**
+	 * @return the atlas the rotated copies of sprites are packed into
+	 */
+	public TextureAtlas getRotationAtlas() {
+		return rotationAtlas;
+	}
+
+	/**
+	 * Makes a copy of a sprite's image rotated about its centre, big enough to
+	 * hold the whole of the rotated image, and packs it into the rotation
+	 * atlas. The copy is drawn with antialiasing and bilinear interpolation
+	 * once, so drawing it later needs neither.
+	 * 
+	 * @param source
+	 *            The region of the image to rotate
+	 * @param theta
+	 *            The rotation in radians
+	 * @return the region of the rotated copy, or null if there isn't enough
+	 *         of the memory budget left for it
+	 */
+	public synchronized AtlasRegion rotate(AtlasRegion source, double theta) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		double sin = Math.abs(Math.sin(theta));
+		double cos = Math.abs(Math.cos(theta));
+		int rotatedWidth = (int) Math.ceil(width * cos + height * sin);
+		int rotatedHeight = (int) Math.ceil(width * sin + height * cos);
+		// Every pixel of the copy is stored as four bytes
+		long bytes = 4L * rotatedWidth * rotatedHeight;
+		if (rotationBytes + bytes > rotationBudget) {
+			return null;
+		}
+		rotationBytes += bytes;
+		// The edges of a rotated image are blended, which the premultiplied
+		// pages of the atlas keep
+		AtlasRegion rotated = rotationAtlas.allocate(rotatedWidth,
+				rotatedHeight);
+		Graphics2D g2D = rotationAtlas.createGraphics(rotated);
+		g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g2D.setRenderingHint(RenderingHints.KEY_RENDERING,
+				RenderingHints.VALUE_RENDER_QUALITY);
+		g2D.translate((rotatedWidth - width) / 2.0,
+				(rotatedHeight - height) / 2.0);
+		g2D.rotate(theta, width / 2.0, height / 2.0);
+		source.draw(g2D, 0, 0);
+		g2D.dispose();
+		return rotated;
+	}
+
+	/**
+	 * Starts loading every sprite in the manifest in the background. With a
+	 * display each image is decoded as a task of its own, and once they have
+	 * all been decoded they are packed into the atlas tallest first, so the
+	 * sprites fill each shelf of the atlas with little space left over.
+	 * Headless, only the header of each file is read.
+	 * 
+	 * A sprite asked for while the preload is running waits for its image to
+	 * be decoded, and is packed as soon as it is asked for.
+	 * 
+	 * @param executor
+	 *            The executor to load the sprites on
+	 * @return a future completed once every sprite in the manifest is in the
+	 *         cache, which never completes exceptionally, as sprites that
+	 *         fail to load are replaced with placeholders
+	 */
+	public CompletableFuture<Void> preload(Executor executor) {
+		final List<String> names = readManifest();
+		preloadTotal = names.size();
+		preloaded.set(0);
+		final List<CompletableFuture<?>> tasks =
+				new ArrayList<CompletableFuture<?>>();
+		for (int i = 0; i < names.size(); i++) {
+			final String name = names.get(i);
+			if (sprites.containsKey(toRef(name))) {
+				// Already loaded by an earlier preload
+				preloaded.incrementAndGet();
+				continue;
+			}
+			if (headless) {
+				tasks.add(CompletableFuture.runAsync(new Runnable() {
+					@Override
+					public void run() {
+						getSprite(name);
+						preloaded.incrementAndGet();
+					}
+				}, executor));
+				continue;
+			}
+			final String ref = toRef(name);
+			CompletableFuture<BufferedImage> image = CompletableFuture
+					.supplyAsync(new Supplier<BufferedImage>() {
+						@Override
+						public BufferedImage get() {
+							BufferedImage decoded = decode(ref);
+							preloaded.incrementAndGet();
+							return decoded;
+						}
+					}, executor);
+			decoding.put(ref, image);
+			tasks.add(image);
+		}
+		CompletableFuture<Void> decoded = CompletableFuture.allOf(tasks
+				.toArray(new CompletableFuture<?>[tasks.size()]));
+		if (headless) {
+			return decoded;
+		}
+		return decoded.thenRunAsync(new Runnable() {
+			@Override
+			public void run() {
+				packPreloaded(names);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Packs the sprites of a preload, once every image has been decoded,
+	 * tallest first. Sprites already asked for were packed then, and are left
+	 * where they are.
+	 */
+	private void packPreloaded(List<String> names) {
+		final List<String> refs = new ArrayList<String>();
+		for (int i = 0; i < names.size(); i++) {
+			refs.add(toRef(names.get(i)));
+		}
+		Collections.sort(refs, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return Integer.compare(getDecodedHeight(b),
+						getDecodedHeight(a));
+			}
+		});
+		for (int i = 0; i < refs.size(); i++) {
+			getCachedSprite(refs.get(i));
+			decoding.remove(refs.get(i));
+		}
+	}
+
+	/**
+	 * Returns the height of an image decoded by a preload, or 0 if it failed
+	 * or has already been packed.
+	 */
+	private int getDecodedHeight(String ref) {
+		CompletableFuture<BufferedImage> image = decoding.get(ref);
+		if (image == null || image.join() == null) {
+			return 0;
+		}
+		return image.join().getHeight();
+	}
+
+	/**
+	 * @return the number of sprites the last preload asked for
+	 */
+	public int getPreloadTotal() {
+		return preloadTotal;
+	}
+
+	/**
+	 * @return the number of sprites the last preload has loaded so far
+	 */
+	public int getPreloadedCount() {
+		return preloaded.get();
+	}
+
+	/**
+	 * @return every sprite that failed to load so far, with why
+	 */
+	public List<String> getFailures() {
+		return new ArrayList<String>(failures);
+	}
+
+	/**
+	 * Returns the number of sprites in the cache.
+	 * 
+	 * @return the number of cached sprites
+	 */
+	public int getCacheSize() {
+		return sprites.size();
+	}
 
 	/**
 	 * This method gets a sprite by taking a filename without the extension
-	 * (currently only takes .png files).
+	 * (currently only takes .png files). Can be called from any thread.
 	 * 
 	 * @param ref
 	 * @return
 	 */
 	public Sprite getSprite(String ref) {
+		return getCachedSprite(toRef(ref));
+	}
+
+	/**
+	 * Returns a sprite from the cache, loading it first if no thread has asked
+	 * for it yet. A sprite is only loaded once however many threads ask for
+	 * it; the rest wait for the first to finish.
+	 * 
+	 * @param ref
+	 *            The location of the sprite's image file
+	 * @return the sprite
+	 */
+	private Sprite getCachedSprite(String ref) {
+		CompletableFuture<Sprite> sprite = sprites.get(ref);
+		if (sprite == null) {
+			CompletableFuture<Sprite> claimed = new CompletableFuture<Sprite>();
+			sprite = sprites.putIfAbsent(ref, claimed);
+			if (sprite == null) {
+				// This thread claimed the sprite, so loads it
+				sprite = claimed;
+				try {
+					claimed.complete(load(ref));
+				} catch (RuntimeException e) {
+					claimed.completeExceptionally(e);
+					throw e;
+				}
+			}
+		}
+		return sprite.join();
+	}
+
+	/**
+	 * Generates the proper string to use to get the image file. This can be
+	 * changed if the source folder name changes. Also adds the proper
+	 * extension.
+	 */
+	private static String toRef(String name) {
+		return "resources/" + name + ".png";
+	}
+
+	/**
+	 * Loads a sprite that isn't in the cache yet.
+	 * 
+	 * @param ref
+	 *            The location of the sprite's image file
+	 * @return the sprite, or a placeholder if it failed to load
+	 */
+	private Sprite load(String ref) {
+		// Times the load for the flight recorder, if it is recording
+		SpriteLoadEvent event = new SpriteLoadEvent();
+		event.begin();
+		if (headless) {
+			Sprite sprite;
+			try {
+				sprite = readSize(find(ref));
+			} catch (IOException e) {
+				report("Failed to load: " + ref, e);
+				sprite = new Sprite(PLACEHOLDER_SIZE, PLACEHOLDER_SIZE);
+			}
+			commitLoad(event, ref, sprite, false);
+			return sprite;
+		}
+		// Waits for the image if a preload is already decoding it
+		CompletableFuture<BufferedImage> pending = decoding.get(ref);
+		BufferedImage sourceImage = pending != null ? pending.join()
+				: decode(ref);
+		if (sourceImage == null) {
+			sourceImage = createPlaceholder();
+		}
+		// Copies the source image into the atlas, and creates a sprite drawn
+		// from where it was packed
+		Sprite sprite = new Sprite(pack(sourceImage));
+		commitLoad(event, ref, sprite, true);
+		return sprite;
+	}
+
+	/**
+	 * Copies an image into the sprite atlas, holding the lock every drawing
+	 * into the atlases is done under.
+	 * 
+	 * @param image
+	 *            The image to pack
+	 * @return the region the image was packed into
+	 */
+	private synchronized AtlasRegion pack(BufferedImage image) {
+		return atlas.add(image);
+	}
+
+	/**
+	 * Decodes the image file of a sprite.
+	 * 
+	 * @param ref
+	 *            The location of the image file
+	 * @return the image, or null if it couldn't be found or decoded
+	 */
+	private BufferedImage decode(String ref) {
+		try {
+			BufferedImage image = ImageIO.read(find(ref));
+			if (image == null) {
+				throw new IOException("No image reader for " + ref);
+			}
+			return image;
+		} catch (IOException e) {
+			report("Failed to load: " + ref, e);
+			return null;
+		}
+	}
 
-		// Generates the proper string to use to get the image file. This can be
-		// changed if the source folder name changes. Also adds the proper
-		// extension.
-		ref = "resources/" + ref + ".png";
-		if (sprites.get(ref) != null) {
-			// Returns the sprite from the cache if it has already been loaded
-			return (Sprite) sprites.get(ref);
+	/**
+	 * Finds a file in the resources folder.
+	 * 
+	 * @param ref
+	 *            The location of the file
+	 * @return the location of the file on the class path
+	 * @throws FileNotFoundException
+	 *             if there is no such file
+	 */
+	private URL find(String ref) throws FileNotFoundException {
+		URL url = this.getClass().getClassLoader().getResource(ref);
+		if (url == null) {
+			throw new FileNotFoundException("Can't find ref: " + ref);
 		}
-		// Declaration of a bufferedImage for this sprite
-		BufferedImage sourceImage = null;
+		return url;
+	}
+
+	/**
+	 * Reads the names of the sprites to preload from the manifest, skipping
+	 * blank lines and comments starting with #.
+	 * 
+	 * @return the names, or none if the manifest can't be read
+	 */
+	private List<String> readManifest() {
+		List<String> names = new ArrayList<String>();
 		try {
-			// Gets the image file from the resources folder
-			URL url = this.getClass().getClassLoader().getResource(ref);
-			if (url == null) {
-				fail("Can't find ref: " + ref);
+			InputStream in = find(MANIFEST).openStream();
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					in, StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					line = line.trim();
+					if (line.length() > 0 && !line.startsWith("#")) {
+						names.add(line);
+					}
+				}
+			} finally {
+				reader.close();
 			}
-			// Puts the image into memory
-			sourceImage = ImageIO.read(url);
 		} catch (IOException e) {
-			fail("Failed to load: " + ref);
+			report("Failed to read the sprite manifest", e);
+		}
+		return names;
+	}
+
+	/**
+	 * Creates the image shown in place of a sprite that failed to load, a
+	 * magenta square that is hard to miss.
+	 */
+	private BufferedImage createPlaceholder() {
+		BufferedImage image = new BufferedImage(PLACEHOLDER_SIZE,
+				PLACEHOLDER_SIZE, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2D = image.createGraphics();
+		g2D.setColor(Color.MAGENTA);
+		g2D.fillRect(0, 0, PLACEHOLDER_SIZE, PLACEHOLDER_SIZE);
+		g2D.dispose();
+		return image;
+	}
+
+	/**
+	 * Creates an image that is quick to draw to the screen.
+	 * 
+	 * @param width
+	 *            The width of the image
+	 * @param height
+	 *            The height of the image
+	 * @param transparency
+	 *            The kind of transparency the image needs
+	 * @return the image
+	 */
+	public Image createImage(int width, int height, int transparency) {
+		if (GraphicsEnvironment.isHeadless()) {
+			// There is no display to be compatible with when drawing
+			// offscreen, so the sprite is stored in a plain ARGB image
+			return new BufferedImage(width, height,
+					BufferedImage.TYPE_INT_ARGB);
 		}
-		// Creates an accelerated image of the right size to store sprite in
+		// Creates an accelerated image of the right size to store sprite
+		// in
 		GraphicsConfiguration gc = GraphicsEnvironment
 				.getLocalGraphicsEnvironment().getDefaultScreenDevice()
 				.getDefaultConfiguration();
 		// Creates an image compatible with the current display device.
-		Image image = gc.createCompatibleImage(sourceImage.getWidth(),
-				sourceImage.getHeight(), Transparency.BITMASK);
-		// Draws source image into accelerated image
-		image.getGraphics().drawImage(sourceImage, 0, 0, null);
-		// Creates a sprite and adds it to the cache
-		Sprite sprite = new Sprite(image);
-		System.out.println("Sprite " + ref + " loaded!");
-		// Puts the sprite and reference to it in the hashmap
-		sprites.put(ref, sprite);
-		return sprite;
+		return gc.createCompatibleImage(width, height, transparency);
+	}
+
+	/**
+	 * Fills in and commits the flight recorder event of a sprite load, if it
+	 * is being recorded.
+	 */
+	private void commitLoad(SpriteLoadEvent event, String ref, Sprite sprite,
+			boolean decoded) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.ref = ref;
+			event.width = (int) sprite.getSpriteWidth();
+			event.height = (int) sprite.getSpriteHeight();
+			event.decoded = decoded;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Creates a sprite with only the size of an image, read from the header of
+	 * the image file by an image reader without decoding any pixels.
+	 * 
+	 * @param url
+	 *            The location of the image file
+	 * @return a sprite with no image
+	 * @throws IOException
+	 *             if the file can't be read or isn't an image
+	 */
+	private Sprite readSize(URL url) throws IOException {
+		ImageInputStream input = ImageIO.createImageInputStream(url
+				.openStream());
+		if (input == null) {
+			throw new IOException("Can't open " + url);
+		}
+		try {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext()) {
+				throw new IOException("No image reader for " + url);
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input);
+				return new Sprite(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		} finally {
+			input.close();
+		}
 	}
 
 	/**
-	 * This method is called if the image cannot be found, and the program is
-	 * exited
+	 * This method is called if a sprite can't be loaded. The failure is
+	 * printed and kept for getFailures(), and the game carries on.
 	 * 
 	 * @param message
+	 *            What failed
+	 * @param e
+	 *            Why it failed
 	 */
-	private void fail(String message) {
-		System.err.println(message);
-		System.exit(0);
+	private void report(String message, Exception e) {
+		System.err.println(message + " (" + e.getMessage() + ")");
+		failures.add(message + " (" + e.getMessage() + ")");
 	}
 
 }
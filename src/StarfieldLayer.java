@@ -0,0 +1,66 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.util.Random;
+
+/**
+ * A background layer of stars scattered at random, with nothing behind them,
+ * so it can be laid over another layer. Each tile's stars are picked from a
+ * seed made from the tile's position, so the starfield looks the same every
+ * time it is painted.
+ *
+ * @author Andrew
+ *
+ */
+public class StarfieldLayer extends BackgroundLayer {
+
+	// The width and height of the starfield before it repeats
+	private static final int SIZE = 1024;
+	// The colours of the stars, mostly white with some blue and yellow
+	private static final Color[] COLORS = { Color.WHITE, Color.WHITE,
+			new Color(200, 220, 255), new Color(255, 240, 200) };
+
+	// The number of stars in each tile
+	private int starsPerTile;
+	// The seed the stars are picked from
+	private long seed;
+
+	/**
+	 * Creates a starfield.
+	 *
+	 * @param tileSize
+	 *            The width and height of each tile
+	 * @param starsPerTile
+	 *            The number of stars in each tile
+	 * @param parallax
+	 *            How far the layer moves for each pixel the camera moves
+	 * @param seed
+	 *            The seed the stars are picked from
+	 * @param gc
+	 *            The display to accelerate the tiles for, or null to draw
+	 *            straight from the painted tiles
+	 */
+	public StarfieldLayer(int tileSize, int starsPerTile, double parallax,
+			long seed, GraphicsConfiguration gc) {
+		super(SIZE, SIZE, tileSize, parallax, false, gc);
+		this.starsPerTile = starsPerTile;
+		this.seed = seed;
+	}
+
+	@Override
+	protected void paint(Graphics2D g2D, int x, int y, int tileWidth,
+			int tileHeight) {
+		Random random = new Random(seed ^ (x * 73856093L) ^ (y * 19349663L));
+		for (int i = 0; i < starsPerTile; i++) {
+			int starX = x + random.nextInt(tileWidth);
+			int starY = y + random.nextInt(tileHeight);
+			Color color = COLORS[random.nextInt(COLORS.length)];
+			// Most stars are faint, a few are bright and bigger
+			int alpha = 60 + random.nextInt(150);
+			int size = random.nextInt(12) == 0 ? 2 : 1;
+			g2D.setColor(new Color(color.getRed(), color.getGreen(), color
+					.getBlue(), alpha));
+			g2D.fillRect(starX, starY, size, size);
+		}
+	}
+}
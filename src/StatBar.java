@@ -1,5 +1,4 @@
 import java.awt.Color;
-import java.awt.Graphics2D;
 
 /**
  * This class defines a statbar, which is a visual representation on the UI of
@@ -48,25 +47,16 @@ public class StatBar {
 		}
 	}
 
-	public void draw(Graphics2D g2d, float interp) {
-		// Stores the current color of the graphics context so that it can be
-		// reset later after the bar is rendered.
-		Color tempColor = g2d.getColor();
-		// Sets the color of the stat bar
-		g2d.setColor(barColor);
-		// This for loop draws the stat bar based on size.
-		for (int i = 0; i < currentSize; i++) {
-			if (isPlacedUp) {
-				g2d.fill3DRect((int) x, (int) y - i * barSpacing, barWidth,
-						barHeight, true);
-			} else if (!isPlacedUp) {
-				g2d.fill3DRect((int) x + i * barSpacing, (int) y, barWidth,
-						barHeight, true);
-			}
-		}
-		// Resets the color of the graphics context to whatever it was before
-		// this method was called
-		g2d.setColor(tempColor);
+	/**
+	 * Copies this stat bar into the render snapshot, which draws it as a row
+	 * (or column) of units based on the current size.
+	 * 
+	 * @param snapshot
+	 *            The snapshot being filled this cycle
+	 */
+	public void capture(RenderSnapshot snapshot) {
+		snapshot.addBar(barColor, x, y, currentSize, barWidth, barHeight,
+				barSpacing, isPlacedUp);
 	}
 
 	/**
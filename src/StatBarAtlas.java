@@ -0,0 +1,173 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The stat bar atlas holds a pre-drawn strip of units for each kind of stat
+ * bar, so a bar of any size is drawn as a single copy of the right length of
+ * its strip, instead of drawing each unit one by one. A kind of bar is its
+ * colour, the size and spacing of its units, whether it runs up or across,
+ * and whether its units are raised, so there are only a handful of strips,
+ * e.g. one each for green, yellow and red health bars.
+ *
+ * Strips are drawn the first time a bar of their kind is, and redrawn longer
+ * if a bar ever outgrows its strip. Only ever used by the thread that draws.
+ *
+ * @author Andrew
+ *
+ */
+public class StatBarAtlas {
+
+	/**
+	 * A pre-drawn strip of units for one kind of stat bar.
+	 */
+	private static class Strip {
+		Color color;
+		int unitWidth;
+		int unitHeight;
+		int spacing;
+		boolean up;
+		boolean raised;
+		// The number of units drawn in the strip
+		int capacity;
+		// The strip itself. Across strips start on the left, up strips start
+		// at the bottom.
+		Image image;
+		int imageWidth;
+		int imageHeight;
+
+		boolean matches(Color color, int unitWidth, int unitHeight,
+				int spacing, boolean up, boolean raised) {
+			return this.unitWidth == unitWidth
+					&& this.unitHeight == unitHeight
+					&& this.spacing == spacing && this.up == up
+					&& this.raised == raised && this.color.equals(color);
+		}
+	}
+
+	// The singleton for the StatBarAtlas, this is the only instance of this
+	// class.
+	private static StatBarAtlas single = new StatBarAtlas();
+
+	public static StatBarAtlas get() {
+		return single;
+	}
+
+	// The number of units a strip is first drawn with, enough for the
+	// player's health bar
+	private static final int INITIAL_CAPACITY = 64;
+
+	// Every strip drawn so far
+	private List<Strip> strips = new ArrayList<Strip>();
+
+	/**
+	 * Draws a stat bar from its strip.
+	 *
+	 * @param g2D
+	 *            The graphics context to draw to
+	 * @param color
+	 *            The colour of the bar
+	 * @param x
+	 *            The X coordinate of the first unit
+	 * @param y
+	 *            The Y coordinate of the first unit
+	 * @param size
+	 *            The number of units in the bar
+	 * @param unitWidth
+	 *            The width in pixels of each unit
+	 * @param unitHeight
+	 *            The height in pixels of each unit
+	 * @param spacing
+	 *            The distance in pixels from one unit to the next
+	 * @param up
+	 *            Whether the bar runs up from the first unit rather than
+	 *            across
+	 * @param raised
+	 *            Whether each unit is drawn raised, as by fill3DRect(), or
+	 *            flat
+	 */
+	public void draw(Graphics2D g2D, Color color, int x, int y, int size,
+			int unitWidth, int unitHeight, int spacing, boolean up,
+			boolean raised) {
+		if (size <= 0) {
+			return;
+		}
+		Strip strip = getStrip(color, unitWidth, unitHeight, spacing, up,
+				raised, size);
+		int length = (size - 1) * spacing;
+		if (up) {
+			// The bar grows upwards from the first unit, so the copy is
+			// taken from the bottom of the strip
+			int height = length + unitHeight;
+			int top = y - length;
+			g2D.drawImage(strip.image, x, top, x + unitWidth, top + height, 0,
+					strip.imageHeight - height, unitWidth, strip.imageHeight,
+					null);
+		} else {
+			int width = length + unitWidth;
+			g2D.drawImage(strip.image, x, y, x + width, y + unitHeight, 0, 0,
+					width, unitHeight, null);
+		}
+	}
+
+	/**
+	 * Returns the strip for a kind of stat bar with room for at least the
+	 * given number of units, drawing it if there isn't one yet.
+	 */
+	private Strip getStrip(Color color, int unitWidth, int unitHeight,
+			int spacing, boolean up, boolean raised, int size) {
+		Strip strip = null;
+		for (int i = 0; i < strips.size(); i++) {
+			if (strips.get(i).matches(color, unitWidth, unitHeight, spacing,
+					up, raised)) {
+				strip = strips.get(i);
+				break;
+			}
+		}
+		if (strip == null) {
+			strip = new Strip();
+			strip.color = color;
+			strip.unitWidth = unitWidth;
+			strip.unitHeight = unitHeight;
+			strip.spacing = spacing;
+			strip.up = up;
+			strip.raised = raised;
+			strips.add(strip);
+		}
+		if (strip.capacity < size) {
+			paintStrip(strip, Math.max(size, Math.max(INITIAL_CAPACITY,
+					strip.capacity * 2)));
+		}
+		return strip;
+	}
+
+	/**
+	 * Draws the units of a strip into a new image.
+	 */
+	private void paintStrip(Strip strip, int capacity) {
+		int length = (capacity - 1) * strip.spacing;
+		strip.capacity = capacity;
+		strip.imageWidth = strip.up ? strip.unitWidth : length
+				+ strip.unitWidth;
+		strip.imageHeight = strip.up ? length + strip.unitHeight
+				: strip.unitHeight;
+		strip.image = SpriteStore.get().createImage(strip.imageWidth,
+				strip.imageHeight, Transparency.BITMASK);
+		Graphics2D g2D = (Graphics2D) strip.image.getGraphics();
+		g2D.setColor(strip.color);
+		for (int unit = 0; unit < capacity; unit++) {
+			int unitX = strip.up ? 0 : unit * strip.spacing;
+			int unitY = strip.up ? length - unit * strip.spacing : 0;
+			if (strip.raised) {
+				g2D.fill3DRect(unitX, unitY, strip.unitWidth,
+						strip.unitHeight, true);
+			} else {
+				g2D.fillRect(unitX, unitY, strip.unitWidth, strip.unitHeight);
+			}
+		}
+		g2D.dispose();
+	}
+}
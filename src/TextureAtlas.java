@@ -0,0 +1,168 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A texture atlas packs many small images onto a few large pages, so that
+ * drawing them draws from the same few surfaces rather than switching surface
+ * for every image. Pages are premultiplied ARGB, which keeps the partly
+ * see-through edges of each image and is the format the accelerated pipelines
+ * blend in, so Java2D keeps a copy of each page in video memory and blends it
+ * without converting.
+ *
+ * Images are packed in shelves: each is put to the right of the last on the
+ * current shelf, and a new shelf is started above the tallest image on it
+ * when the shelf is full. Packing the tallest images first wastes the least
+ * space. Each image gets a clear border, so drawing one with interpolation
+ * never bleeds in the edge of its neighbour. An image too big for a page gets
+ * a page of its own.
+ *
+ * Space is never given back; the whole atlas is thrown away instead.
+ *
+ * Drawing into a page throws away Java2D's accelerated copy of the whole
+ * page, so an atlas is best filled up front and only drawn from after. A
+ * Java2D surface also isn't safe to draw into from two threads at once, and
+ * the pages aren't locked here; whoever owns an atlas holds one lock around
+ * add() and anything drawn through createGraphics().
+ *
+ * @author Andrew
+ *
+ */
+public class TextureAtlas {
+
+	// The width and height of each shared page, unless the atlas is made with
+	// pages of another size
+	public static final int PAGE_SIZE = 1024;
+	// The clear border kept around each image
+	private static final int PADDING = 1;
+
+	// The width and height of each shared page of this atlas
+	private final int pageSize;
+	// Every page, in the order they were made
+	private List<BufferedImage> pages = new ArrayList<BufferedImage>();
+	// The page being packed, or null before the first image is packed
+	private BufferedImage page;
+	// Where the next image goes on the current shelf, and the height of the
+	// tallest image on it so far
+	private int shelfX = 0;
+	private int shelfY = 0;
+	private int shelfHeight = 0;
+
+	/**
+	 * Creates an empty atlas with pages of the usual size.
+	 */
+	public TextureAtlas() {
+		this(PAGE_SIZE);
+	}
+
+	/**
+	 * Creates an empty atlas.
+	 *
+	 * @param pageSize
+	 *            The width and height of each shared page
+	 */
+	public TextureAtlas(int pageSize) {
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Makes room for an image of the given size, without drawing anything
+	 * into it.
+	 *
+	 * @param width
+	 *            The width of the image
+	 * @param height
+	 *            The height of the image
+	 * @return the region made for the image, which starts out clear
+	 */
+	public synchronized AtlasRegion allocate(int width, int height) {
+		int paddedWidth = width + PADDING * 2;
+		int paddedHeight = height + PADDING * 2;
+		if (paddedWidth > pageSize || paddedHeight > pageSize) {
+			// Too big to share a page
+			BufferedImage own = createPage(width, height);
+			pages.add(own);
+			return new AtlasRegion(own);
+		}
+		if (page != null && shelfX + paddedWidth > pageSize) {
+			shelfX = 0;
+			shelfY += shelfHeight;
+			shelfHeight = 0;
+		}
+		if (page == null || shelfY + paddedHeight > pageSize) {
+			page = createPage(pageSize, pageSize);
+			pages.add(page);
+			shelfX = 0;
+			shelfY = 0;
+			shelfHeight = 0;
+		}
+		AtlasRegion region = new AtlasRegion(page, shelfX + PADDING, shelfY
+				+ PADDING, width, height);
+		shelfX += paddedWidth;
+		shelfHeight = Math.max(shelfHeight, paddedHeight);
+		return region;
+	}
+
+	/**
+	 * Packs an image into the atlas, copying its pixels onto a page.
+	 *
+	 * @param image
+	 *            The image to pack, which must be loaded
+	 * @return the region the image was packed into
+	 */
+	public AtlasRegion add(Image image) {
+		AtlasRegion region = allocate(image.getWidth(null),
+				image.getHeight(null));
+		Graphics2D g2D = createGraphics(region);
+		// Copies the pixels as they are, see-through ones included, rather
+		// than blending them with the clear page
+		g2D.setComposite(AlphaComposite.Src);
+		g2D.drawImage(image, 0, 0, null);
+		g2D.dispose();
+		return region;
+	}
+
+	/**
+	 * Creates a graphics context for drawing into a region, with the origin at
+	 * the top left of the region and everything outside it clipped.
+	 *
+	 * @param region
+	 *            A region of this atlas
+	 * @return the graphics context, to be disposed when done with
+	 */
+	public Graphics2D createGraphics(AtlasRegion region) {
+		Graphics2D g2D = ((BufferedImage) region.getPage()).createGraphics();
+		g2D.translate(region.getX(), region.getY());
+		g2D.clipRect(0, 0, region.getWidth(), region.getHeight());
+		return g2D;
+	}
+
+	/**
+	 * @return the number of pages made so far
+	 */
+	public synchronized int getPageCount() {
+		return pages.size();
+	}
+
+	/**
+	 * @return the bytes taken up by every page made so far
+	 */
+	public synchronized long getBytes() {
+		long bytes = 0;
+		for (int i = 0; i < pages.size(); i++) {
+			bytes += 4L * pages.get(i).getWidth() * pages.get(i).getHeight();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Creates a clear premultiplied ARGB page.
+	 */
+	private static BufferedImage createPage(int width, int height) {
+		return new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Keeps track of how long each cycle of the game logic takes, and how many
+ * cycles are run per second. The simulation thread records every cycle, and
+ * any other thread can read the statistics at any time.
+ *
+ * @author Andrew
+ *
+ */
+public class TickStatistics {
+
+	// The number of nanoseconds in a second
+	private static final long NANOSECONDS_PER_SECOND = 1000000000L;
+
+	// The number of cycles recorded, and the total time they took
+	private long cycles = 0;
+	private long totalNanos = 0;
+	// The quickest and slowest cycles recorded
+	private long minNanos = Long.MAX_VALUE;
+	private long maxNanos = 0;
+	// When the current one second window started, and how many cycles have
+	// finished in it
+	private long windowStart = System.nanoTime();
+	private long windowCycles = 0;
+	// The number of cycles finished in the last full window, or over the
+	// window so far until the first one is full
+	private double cyclesPerSecond = 0;
+	private boolean windowFilled = false;
+
+	/**
+	 * Records one cycle of the game logic.
+	 *
+	 * @param startTime
+	 *            The time in nanoseconds the cycle started
+	 * @param endTime
+	 *            The time in nanoseconds the cycle finished
+	 */
+	public synchronized void record(long startTime, long endTime) {
+		long nanos = endTime - startTime;
+		cycles++;
+		totalNanos += nanos;
+		minNanos = Math.min(minNanos, nanos);
+		maxNanos = Math.max(maxNanos, nanos);
+		windowCycles++;
+		long windowNanos = endTime - windowStart;
+		if (windowNanos >= NANOSECONDS_PER_SECOND) {
+			cyclesPerSecond = windowCycles * (double) NANOSECONDS_PER_SECOND
+					/ windowNanos;
+			windowStart = endTime;
+			windowCycles = 0;
+			windowFilled = true;
+		} else if (!windowFilled && windowNanos > 0) {
+			cyclesPerSecond = windowCycles * (double) NANOSECONDS_PER_SECOND
+					/ windowNanos;
+		}
+	}
+
+	/**
+	 * Returns the number of cycles recorded.
+	 *
+	 * @return the number of cycles
+	 */
+	public synchronized long getCycles() {
+		return cycles;
+	}
+
+	/**
+	 * Returns the number of cycles run over the last full second, or the rate
+	 * so far if a second hasn't passed yet.
+	 *
+	 * @return the cycle rate
+	 */
+	public synchronized double getCyclesPerSecond() {
+		return cyclesPerSecond;
+	}
+
+	/**
+	 * Returns the longest any cycle has taken.
+	 *
+	 * @return the slowest cycle in milliseconds
+	 */
+	public synchronized double getMaxMillis() {
+		return maxNanos / 1e6;
+	}
+
+	/**
+	 * Returns the average time a cycle takes.
+	 *
+	 * @return the mean cycle time in milliseconds
+	 */
+	public synchronized double getMeanMillis() {
+		return cycles == 0 ? 0 : totalNanos / 1e6 / cycles;
+	}
+
+	/**
+	 * Returns the shortest any cycle has taken.
+	 *
+	 * @return the quickest cycle in milliseconds
+	 */
+	public synchronized double getMinMillis() {
+		return cycles == 0 ? 0 : minNanos / 1e6;
+	}
+
+	/**
+	 * Returns a one line summary of the statistics, for logging.
+	 *
+	 * @return the summary
+	 */
+	@Override
+	public synchronized String toString() {
+		return String.format(
+				"cycles=%d cycles/s=%.1f mean=%.3fms min=%.3fms max=%.3fms",
+				cycles, cyclesPerSecond, getMeanMillis(), getMinMillis(),
+				getMaxMillis());
+	}
+}
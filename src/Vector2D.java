@@ -231,6 +231,34 @@ public class Vector2D {
 		this.isPlayerVector = isPlayerVector;
 	}
 
+	/**
+	 * Points this vector from a new origin at a new destination, the same way
+	 * the source and destination constructor does. Used when a recycled entity
+	 * is fired again.
+	 * 
+	 * @param xOrig
+	 *            the X origin of this vector
+	 * @param yOrig
+	 *            the Y origin of this vector
+	 * @param xDest
+	 *            the X destination of this vector
+	 * @param yDest
+	 *            the Y destination of this vector
+	 * @param speed
+	 *            the magnitude of this vector
+	 */
+	public void reset(double xOrig, double yOrig, double xDest, double yDest,
+			double speed) {
+		this.x = xOrig;
+		this.y = yOrig;
+		this.xDest = xDest;
+		this.yDest = yDest;
+		this.theta = Math.atan2(yDest - yOrig, xDest - xOrig);
+		this.speed = speed;
+		xVel = speed * Math.cos(theta);
+		yVel = speed * Math.sin(theta);
+	}
+
 	/**
 	 * @param speed
 	 *            the speed to set